@@ -259,15 +259,22 @@ public class AuthLoginWindow {
 
             javafx.application.Platform.runLater(() -> {
                 if (success) {
+                    saveSession(serverAddr, client.getSessionToken());
                     ChatWindow chatWindow = new ChatWindow(stage, client);
                     chatWindow.show();
                 } else {
-                    showStatus("Login failed. Check username and password.", true);
+                    String response = client.getLastAuthResponse();
+                    if (response != null && response.startsWith("AUTH_BUSY")) {
+                        showStatus("Server is busy. Please try again in a moment.", true);
+                    } else {
+                        showStatus("Login failed. Check username and password.", true);
+                    }
                     loginButton.setDisable(false);
                 }
             });
         });
         loginThread.setDaemon(true);
+        StartupMetrics.mark(StartupMetrics.LOGIN_STARTED);
         loginThread.start();
     }
 
@@ -296,27 +303,108 @@ public class AuthLoginWindow {
         );
     }
 
+    /**
+     * Reconnect with the saved session token instead of asking for the password
+     */
+    private void tryResumeSession() {
+        Properties props = loadConfig();
+        String token = props.getProperty("session.token");
+        String serverAddr = props.getProperty("session.server");
+        if (token == null || serverAddr == null || !serverAddr.equals(serverField.getText().trim())) {
+            return;
+        }
+
+        String[] parts = serverAddr.split(":");
+        if (parts.length != 2) {
+            return;
+        }
+        String host = parts[0];
+        int port;
+        try {
+            port = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        loginButton.setDisable(true);
+        showStatus("Resuming session...", false);
+
+        Thread resumeThread = new Thread(() -> {
+            Client client = new Client();
+            boolean success = client.resumeSession(host, port, token);
+
+            javafx.application.Platform.runLater(() -> {
+                if (success) {
+                    saveSession(serverAddr, client.getSessionToken());
+                    ChatWindow chatWindow = new ChatWindow(stage, client);
+                    chatWindow.show();
+                } else {
+                    if ("SESSION_INVALID".equals(client.getLastAuthResponse())) {
+                        saveSession(null, null);
+                    }
+                    showStatus("", false);
+                    loginButton.setDisable(false);
+                }
+            });
+        });
+        resumeThread.setDaemon(true);
+        StartupMetrics.mark(StartupMetrics.LOGIN_STARTED);
+        resumeThread.start();
+    }
+
     private void saveLastServer(String server) {
-        Properties props = new Properties();
+        Properties props = loadConfig();
         props.setProperty("last.server", server);
-        try (OutputStream os = new FileOutputStream(CONFIG_FILE)) {
-            props.store(os, "NEXO Client Configuration");
-        } catch (IOException e) {
-            System.err.println("Error saving config: " + e.getMessage());
-        }
+        storeConfig(props);
     }
 
     private String loadLastServer() {
+        return loadConfig().getProperty("last.server", "localhost:8080");
+    }
+
+    /**
+     * Remember (or forget, when token is null) the session token for a server
+     */
+    private static void saveSession(String server, String token) {
+        Properties props = loadConfig();
+        if (token != null) {
+            props.setProperty("session.server", server);
+            props.setProperty("session.token", token);
+        } else {
+            props.remove("session.server");
+            props.remove("session.token");
+        }
+        storeConfig(props);
+    }
+
+    /**
+     * Drop the saved session token (explicit logout)
+     */
+    static void forgetSession() {
+        saveSession(null, null);
+    }
+
+    private static Properties loadConfig() {
         Properties props = new Properties();
         try (InputStream is = new FileInputStream(CONFIG_FILE)) {
             props.load(is);
-            return props.getProperty("last.server", "localhost:8080");
         } catch (IOException e) {
-            return "localhost:8080";
+            // No config yet
+        }
+        return props;
+    }
+
+    private static void storeConfig(Properties props) {
+        try (OutputStream os = new FileOutputStream(CONFIG_FILE)) {
+            props.store(os, "NEXO Client Configuration");
+        } catch (IOException e) {
+            System.err.println("Error saving config: " + e.getMessage());
         }
     }
 
     public void show() {
         stage.show();
+        StartupMetrics.markOnNextFrame(stage.getScene(), StartupMetrics.LOGIN_FIRST_FRAME);
+        tryResumeSession();
     }
 }
@@ -0,0 +1,52 @@
+package com.reseau.client;
+
+/**
+ * ChatLoadTest - Floods the global chat to load a client's FX thread
+ * Connects as its own user and sends global messages at a steady rate (0: as
+ * fast as it can). Run it against a server with a client logged in, and read
+ * that client's "DEBUG: UiUpdateDispatcher" lines; start the client again with
+ * -Dnexo.ui.direct=true to compare with one Platform.runLater per message.
+ *
+ * Usage (after mvn compile):
+ *   java -cp target/classes com.reseau.client.ChatLoadTest [count] [rate] [host:port]
+ * Defaults: 3000 messages at 500/s to localhost:8080.
+ */
+public class ChatLoadTest {
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog";
+    private static final long DRAIN_MS = 2000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        String host = "localhost";
+        int port = 8080;
+        if (args.length > 2) {
+            host = args[2].substring(0, args[2].lastIndexOf(':'));
+            port = Integer.parseInt(args[2].substring(args[2].lastIndexOf(':') + 1));
+        }
+
+        Client client = new Client();
+        if (!client.connect(host, port, "loadtest" + System.currentTimeMillis() % 10000)) {
+            System.err.println("WARNING: Could not connect to " + host + ":" + port);
+            return;
+        }
+
+        long start = System.nanoTime();
+        long next = start;
+        for (int i = 0; i < count; i++) {
+            client.sendMessage("all", "load " + i + " " + TEXT);
+            if (rate > 0) {
+                next += 1_000_000_000L / rate;
+                long delay = next - System.nanoTime();
+                if (delay > 0) {
+                    Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+                }
+            }
+        }
+        System.out.printf("Sent %d messages in %.1f s%n", count, (System.nanoTime() - start) / 1e9);
+
+        // Let the last messages reach the server before the socket closes
+        Thread.sleep(DRAIN_MS);
+        client.disconnect();
+    }
+}
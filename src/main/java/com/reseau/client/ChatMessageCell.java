@@ -0,0 +1,137 @@
+package com.reseau.client;
+
+import javafx.css.PseudoClass;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+/**
+ * ChatMessageCell - Recycled cell for the global and private chat ListViews
+ * The node tree is built once per cell; updateItem only swaps text, a style
+ * class and which parts are visible, so the scene graph stays the size of the
+ * viewport no matter how many messages the list holds. All styling comes
+ * from nexo.css, hover included.
+ */
+public class ChatMessageCell extends ListCell<ChatMessageItem> {
+    private static final PseudoClass NOTICE = PseudoClass.getPseudoClass("notice");
+
+    // Chat message: [avatar or hover time] [header / body]
+    private final HBox messageRow = new HBox(16);
+    private final Label avatar = new Label();
+    private final Label hoverTime = new Label();
+    private final HBox header = new HBox(8);
+    private final Label usernameLabel = new Label();
+    private final Label timestampLabel = new Label();
+    private final Label body = new Label();
+
+    // System and notice lines
+    private final HBox systemRow = new HBox();
+    private final Label systemLabel = new Label();
+
+    private String nameStyleClass;
+
+    public ChatMessageCell() {
+        getStyleClass().add("chat-cell");
+        // Let the ListView width drive wrapping instead of the text width
+        setPrefWidth(0);
+
+        avatar.setMinSize(40, 40);
+        avatar.setMaxSize(40, 40);
+        avatar.setAlignment(Pos.CENTER);
+        avatar.getStyleClass().add("message-avatar");
+
+        hoverTime.setMinWidth(40);
+        hoverTime.setMaxWidth(40);
+        hoverTime.setAlignment(Pos.CENTER_RIGHT);
+        hoverTime.getStyleClass().add("hover-time");
+
+        header.setAlignment(Pos.CENTER_LEFT);
+        usernameLabel.getStyleClass().add("message-username");
+        timestampLabel.getStyleClass().add("message-time");
+        header.getChildren().addAll(usernameLabel, timestampLabel);
+
+        body.setWrapText(true);
+        body.getStyleClass().add("message-body");
+
+        VBox content = new VBox(4, header, body);
+        HBox.setHgrow(content, Priority.ALWAYS);
+        content.setMinWidth(0);
+        body.maxWidthProperty().bind(widthProperty().subtract(140));
+
+        messageRow.getChildren().addAll(avatar, content);
+        messageRow.getStyleClass().add("message-row");
+
+        systemLabel.setWrapText(true);
+        systemLabel.getStyleClass().add("system-message");
+        systemLabel.maxWidthProperty().bind(widthProperty().subtract(40));
+        systemRow.getChildren().add(systemLabel);
+    }
+
+    @Override
+    protected void updateItem(ChatMessageItem item, boolean empty) {
+        super.updateItem(item, empty);
+
+        if (empty || item == null) {
+            setGraphic(null);
+            return;
+        }
+
+        switch (item.getKind()) {
+            case SYSTEM:
+                systemLabel.setText(item.getText());
+                systemLabel.pseudoClassStateChanged(NOTICE, false);
+                systemRow.setAlignment(Pos.CENTER);
+                systemRow.setPadding(new Insets(8, 0, 8, 0));
+                setGraphic(systemRow);
+                break;
+
+            case NOTICE:
+                systemLabel.setText(item.getText());
+                systemLabel.pseudoClassStateChanged(NOTICE, true);
+                systemRow.setAlignment(Pos.CENTER_LEFT);
+                systemRow.setPadding(Insets.EMPTY);
+                setGraphic(systemRow);
+                break;
+
+            default:
+                body.setText(item.getText());
+                if (item.isGrouped()) {
+                    // Continuation of the previous block: time on hover, no header
+                    hoverTime.setText(item.getTime());
+                    messageRow.getChildren().set(0, hoverTime);
+                    header.setVisible(false);
+                    header.setManaged(false);
+                    messageRow.setPadding(new Insets(0, 48, 0, 0));
+                } else {
+                    avatar.setText(item.getAvatar());
+                    usernameLabel.setText(item.getSender());
+                    setNameStyleClass(item.getNameStyleClass());
+                    timestampLabel.setText("Today at " + item.getTime());
+                    messageRow.getChildren().set(0, avatar);
+                    header.setVisible(true);
+                    header.setManaged(true);
+                    messageRow.setPadding(new Insets(4, 48, 4, 0));
+                }
+                setGraphic(messageRow);
+                break;
+        }
+    }
+
+    /**
+     * Swap the username color class; a no-op when the recycled cell already has it
+     */
+    private void setNameStyleClass(String styleClass) {
+        if (styleClass.equals(nameStyleClass)) {
+            return;
+        }
+        if (nameStyleClass != null) {
+            usernameLabel.getStyleClass().remove(nameStyleClass);
+        }
+        usernameLabel.getStyleClass().add(styleClass);
+        nameStyleClass = styleClass;
+    }
+}
@@ -0,0 +1,58 @@
+package com.reseau.client;
+
+/**
+ * ChatMessageItem - Immutable row of the global and private chat lists
+ * Holds only what a ChatMessageCell needs to render; the nodes themselves
+ * are recycled by the ListView.
+ */
+public class ChatMessageItem {
+
+    public enum Kind {
+        SYSTEM,     // Centered channel notice (welcome text)
+        NOTICE,     // Server line shown in italics
+        MESSAGE     // Chat message from a user
+    }
+
+    private final Kind kind;
+    private final String sender;
+    private final String text;
+    private final String time;
+    private final String avatar;
+    private final String nameStyleClass;   // user-color-* class of the sender
+    private final boolean grouped;
+
+    private ChatMessageItem(Kind kind, String sender, String text, String time,
+                            String avatar, String nameStyleClass, boolean grouped) {
+        this.kind = kind;
+        this.sender = sender;
+        this.text = text;
+        this.time = time;
+        this.avatar = avatar;
+        this.nameStyleClass = nameStyleClass;
+        this.grouped = grouped;
+    }
+
+    public static ChatMessageItem system(String text) {
+        return new ChatMessageItem(Kind.SYSTEM, null, text, null, null, null, false);
+    }
+
+    public static ChatMessageItem notice(String text) {
+        return new ChatMessageItem(Kind.NOTICE, null, text, null, null, null, false);
+    }
+
+    /**
+     * Chat message; grouped messages continue the previous sender's block
+     */
+    public static ChatMessageItem message(String sender, String text, String time,
+                                          String avatar, String nameStyleClass, boolean grouped) {
+        return new ChatMessageItem(Kind.MESSAGE, sender, text, time, avatar, nameStyleClass, grouped);
+    }
+
+    public Kind getKind() { return kind; }
+    public String getSender() { return sender; }
+    public String getText() { return text; }
+    public String getTime() { return time; }
+    public String getAvatar() { return avatar; }
+    public String getNameStyleClass() { return nameStyleClass; }
+    public boolean isGrouped() { return grouped; }
+}
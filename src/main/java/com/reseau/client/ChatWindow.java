@@ -1,24 +1,37 @@
 package com.reseau.client;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
+import com.reseau.common.CallRoom;
 import com.reseau.common.UserInfo;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.css.PseudoClass;
+import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Tooltip;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
@@ -26,13 +39,21 @@ import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.shape.Circle;
+import javafx.stage.Popup;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 /**
  * ChatWindow - Main chat interface
  */
 public class ChatWindow {
     private static final int MAX_MESSAGES = 500;
+    private static final int MAX_LIST_MESSAGES = 50_000; // rows in a virtualized message list
+    private static final int LIST_TRIM_BATCH = 1_000;
+    private static final int MAX_INDEXED_MESSAGES = 20_000;
+    private static final int MAX_SEARCH_RESULTS = 100;
+    private static final long SEARCH_BUDGET_MS = 10;
+    private static final Duration SEARCH_DEBOUNCE = Duration.millis(150);
 
     private Stage stage;
     private Client client;
@@ -43,15 +64,16 @@ public class ChatWindow {
     private TextArea messageDisplay;
     private TextField messageInput;
     private Button sendButton;
-    private VBox userListContainer;
-    private Map<String, Label> userLabels;
+    private ListView<UserInfo> userListView;
+    // Sidebar model: PresenceDelta events only touch the rows that changed
+    private final ObservableList<UserInfo> users = FXCollections.observableArrayList();
+    private final FilteredList<UserInfo> visibleUsers = new FilteredList<>(users);
     private int messageCount = 0;
     private VideoCallWindow videoCallWindow;
     
     // Multi-panel view system
     private BorderPane mainContent;
     private VBox chatView;
-    private VBox profileView;
     private String currentView = "chat";
     private Button chatNavButton;
     private Button profileNavButton;
@@ -59,8 +81,10 @@ public class ChatWindow {
     
     // Private chat system (Discord-style)
     private String currentPrivateChatUser = null;
-    private VBox privateMessagesContainer;
-    private ScrollPane privateMessagesScrollPane;
+    // Same model and cells as the global list; cleared when another conversation opens
+    private final ObservableList<ChatMessageItem> privateMessages = FXCollections.observableArrayList();
+    private final List<ChatMessageItem> pendingPrivateItems = new ArrayList<>(); // added once per pulse
+    private ListView<ChatMessageItem> privateMessagesList;
     private TextField privateMessageInput;
     private int privateMessageCount = 0;
     private String lastPrivateMessageSender = "";
@@ -68,12 +92,20 @@ public class ChatWindow {
     private VBox dmListContainer;
     
     // Store private message history per user
-    private Map<String, List<PrivateMessageData>> privateMessageHistory = new HashMap<>();
+    private Map<String, Deque<PrivateMessageData>> privateMessageHistory = new HashMap<>();
     
     // Friend system
     private Set<String> friendsList = new HashSet<>();
     private List<PendingFriendRequest> pendingFriendRequests = new ArrayList<>();
     private Map<String, Boolean> friendshipCache = new HashMap<>(); // username -> isFriend
+    private Map<String, ClientEvent.Profile> profileCache = new HashMap<>(); // username -> prefetched profile
+    
+    // Client-side search over known contacts and received messages (FX thread only)
+    private final SearchIndex<String> contactIndex = new SearchIndex<>();
+    private final SearchIndex<ClientEvent.ChatMessage> messageIndex = new SearchIndex<>();
+    private final Deque<ClientEvent.ChatMessage> indexedMessages = new ArrayDeque<>();
+    private Popup searchPopup;
+    private ListView<SearchIndex.Hit<ClientEvent.ChatMessage>> searchResults;
     
     // Helper class for pending friend requests
     private static class PendingFriendRequest {
@@ -101,62 +133,55 @@ public class ChatWindow {
         }
     }
     
-    // Discord-like colors
-    private static final String DISCORD_BG_MAIN = "#313338";
-    private static final String DISCORD_BG_SIDE = "#1e1f22";
-    private static final String DISCORD_BG_NAVBAR = "#111214";
-    private static final String DISCORD_BG_HOVER = "#2e3035";
-    private static final String DISCORD_TEXT_NORMAL = "#dbdee1";
-    private static final String DISCORD_TEXT_MUTED = "#949ba4";
-    private static final String DISCORD_BRAND = "#5865f2";
-    private static final String DISCORD_ONLINE = "#23a55a";
+    // Theme (Discord-like palette) shared by the chat and video call windows
+    static final String STYLESHEET = ChatWindow.class.getResource("nexo.css").toExternalForm();
+    static final PseudoClass SELECTED = PseudoClass.getPseudoClass("selected");
+    private static final int USER_COLOR_COUNT = 11;
 
     public ChatWindow(Stage stage, Client client) {
         this.stage = stage;
         this.client = client;
-        this.userLabels = new HashMap<>();
         // ✅ Charger la configuration
         ClientConfig config = ClientConfig.getInstance();
         config.printConfig();
         this.serverHost = config.getServerHost();
         this.videoPort = config.getVideoPort();
         this.audioPort = config.getAudioPort();
+        uiDispatcher.addPulseHook(this::flushGlobalItems);
+        uiDispatcher.addPulseHook(this::flushPrivateItems);
         setupUI();
         setupMessageListener();
 
-        // Request initial user list
-        Platform.runLater(() -> {
-            try {
-                Thread.sleep(500); // Wait for connection to stabilize
-                client.refreshUserList();
-                client.requestFriendsList(); // Request friends list
-                client.requestPendingRequests(); // Request pending friend requests
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        });
+        // Load initial state; each reply is applied when it actually arrives
+        client.refreshUserList();
+        client.fetchFriends()
+              .thenAccept(friends -> Platform.runLater(() -> applyFriendsList(friends)))
+              .exceptionally(e -> logCallFailure("friends list", e));
+        client.fetchPendingRequests()
+              .thenAccept(requests -> Platform.runLater(() -> requests.forEach(this::onFriendEvent)))
+              .exceptionally(e -> logCallFailure("pending requests", e));
+    }
+
+    private Void logCallFailure(String what, Throwable e) {
+        System.err.println("Failed to load " + what + ": " + e);
+        return null;
     }
 
     private void setupUI() {
         BorderPane root = new BorderPane();
-        root.setStyle("-fx-background-color: #f5f7fa;");
+        root.getStyleClass().add("app-root");
 
         // Modern top bar with gradient
         HBox topBar = new HBox(15);
         topBar.setPadding(new Insets(15, 20, 15, 20));
         topBar.setAlignment(Pos.CENTER_LEFT);
-        topBar.setStyle(
-                "-fx-background-color: linear-gradient(to right, #667eea, #764ba2); " +
-                        "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.15), 5, 0, 0, 2);");
+        topBar.getStyleClass().add("top-bar");
 
         Label iconLabel = new Label("💬");
-        iconLabel.setStyle("-fx-font-size: 24px; -fx-text-fill: white;");
+        iconLabel.getStyleClass().add("top-bar-icon");
 
         Label titleLabel = new Label("NEXO - " + client.getUsername());
-        titleLabel.setStyle(
-                "-fx-font-size: 20px; " +
-                        "-fx-font-weight: bold; " +
-                        "-fx-text-fill: white;");
+        titleLabel.getStyleClass().add("top-bar-title");
 
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
@@ -172,33 +197,17 @@ public class ChatWindow {
         settingsNavButton.setOnAction(e -> switchView("settings"));
 
         Button videoCallButton = createNavButton("📹", "Video Call", false);
-        videoCallButton.setStyle(
-                "-fx-background-color: rgba(255,255,255,0.25); " +
-                        "-fx-text-fill: white; " +
-                        "-fx-font-size: 13px; " +
-                        "-fx-font-weight: bold; " +
-                        "-fx-background-radius: 15px; " +
-                        "-fx-padding: 8px 20px; " +
-                        "-fx-cursor: hand;");
-        videoCallButton.setOnAction(e -> startVideoCall());
-
-        Label usernameLabel = new Label(client.getUsername());
-        usernameLabel.setStyle(
-                "-fx-font-size: 13px; " +
-                        "-fx-font-weight: 500; " +
-                        "-fx-text-fill: white; " +
-                        "-fx-background-color: rgba(255,255,255,0.2); " +
-                        "-fx-background-radius: 15px; " +
-                        "-fx-padding: 5px 15px;");
+        videoCallButton.getStyleClass().add("video-call-button");
+        videoCallButton.setOnAction(e -> startVideoCall(CallRoom.GENERAL));
 
         topBar.getChildren().addAll(iconLabel, titleLabel, spacer, chatNavButton, profileNavButton, settingsNavButton, videoCallButton);
 
         // Main content area with multi-panel support
         mainContent = new BorderPane();
         
-        // Build different views
+        // Only the default view is built up front; profile, settings and
+        // private chats are built when first navigated to
         chatView = buildChatView();
-        profileView = buildProfileView();
         
         // Show chat view by default
         mainContent.setCenter(chatView);
@@ -208,6 +217,7 @@ public class ChatWindow {
         root.setCenter(mainContent);
 
         Scene scene = new Scene(root, 1000, 600);
+        scene.getStylesheets().add(STYLESHEET);
         stage.setScene(scene);
         stage.setTitle("NEXO - " + client.getUsername());
         stage.setMinWidth(800);
@@ -224,17 +234,8 @@ public class ChatWindow {
      */
     private Button createNavButton(String icon, String text, boolean active) {
         Button button = new Button(icon + " " + text);
-        String activeStyle = "-fx-background-color: rgba(255,255,255,0.3); ";
-        String inactiveStyle = "-fx-background-color: rgba(255,255,255,0.15); ";
-        
-        button.setStyle(
-            (active ? activeStyle : inactiveStyle) +
-            "-fx-text-fill: white; " +
-            "-fx-font-size: 13px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-background-radius: 15px; " +
-            "-fx-padding: 8px 18px; " +
-            "-fx-cursor: hand;");
+        button.getStyleClass().add("nav-button");
+        button.pseudoClassStateChanged(SELECTED, active);
         
         return button;
     }
@@ -255,7 +256,8 @@ public class ChatWindow {
                 break;
             case "profile":
                 currentPrivateChatUser = null;
-                mainContent.setCenter(profileView);
+                // Rebuilt on each visit so the stats are current
+                mainContent.setCenter(buildProfileView());
                 break;
             case "settings":
                 currentPrivateChatUser = null;
@@ -282,17 +284,20 @@ public class ChatWindow {
         // Add to DM contacts if not already there
         if (!dmContacts.contains(username)) {
             dmContacts.add(username);
+            indexContact(username);
         }
         
         // Reset message state for new conversation
         lastPrivateMessageSender = "";
         privateMessageCount = 0;
+        privateMessages.clear();
+        pendingPrivateItems.clear();
         
         // Build and show the private chat view
         mainContent.setCenter(buildPrivateChatView(username));
         
-        // Load stored messages after view is built
-        Platform.runLater(() -> loadStoredPrivateMessages(username));
+        // Stored messages join the welcome lines in the same batch
+        loadStoredPrivateMessages(username);
         
         // Update nav buttons
         updateNavButtonStyles();
@@ -303,7 +308,7 @@ public class ChatWindow {
      */
     private HBox buildPrivateChatView(String username) {
         HBox container = new HBox();
-        container.setStyle("-fx-background-color: " + DISCORD_BG_MAIN + ";");
+        container.getStyleClass().add("discord-view");
         
         // ========== LEFT NAVBAR (Icons) ==========
         VBox navbar = buildDiscordNavbar();
@@ -330,7 +335,7 @@ public class ChatWindow {
         navbar.setMaxWidth(72);
         navbar.setAlignment(Pos.TOP_CENTER);
         navbar.setPadding(new Insets(12, 0, 12, 0));
-        navbar.setStyle("-fx-background-color: " + DISCORD_BG_NAVBAR + ";");
+        navbar.getStyleClass().add("discord-navbar");
         
         // Home button - returns to global chat
         Button homeBtn = createDiscordNavButton("🏠", "Home (Global Chat)", false);
@@ -343,7 +348,7 @@ public class ChatWindow {
         Region separator = new Region();
         separator.setPrefHeight(2);
         separator.setMaxWidth(32);
-        separator.setStyle("-fx-background-color: " + DISCORD_BG_HOVER + "; -fx-background-radius: 1;");
+        separator.getStyleClass().add("discord-separator");
         VBox.setMargin(separator, new Insets(4, 0, 4, 0));
         
         // Spacer
@@ -367,38 +372,10 @@ public class ChatWindow {
         btn.setMinSize(48, 48);
         btn.setMaxSize(48, 48);
         
-        String bgColor = active ? DISCORD_BRAND : DISCORD_BG_MAIN;
-        String radius = active ? "16" : "24";
-        
-        btn.setStyle(
-            "-fx-background-color: " + bgColor + "; " +
-            "-fx-background-radius: " + radius + "; " +
-            "-fx-font-size: 20px; " +
-            "-fx-cursor: hand; " +
-            "-fx-text-fill: white;"
-        );
-        
+        btn.getStyleClass().add("discord-nav-button");
+        btn.pseudoClassStateChanged(SELECTED, active);
         btn.setTooltip(new Tooltip(tooltip));
         
-        // Hover effects
-        final String finalBgColor = bgColor;
-        final String finalRadius = radius;
-        btn.setOnMouseEntered(e -> btn.setStyle(
-            "-fx-background-color: " + DISCORD_BRAND + "; " +
-            "-fx-background-radius: 16; " +
-            "-fx-font-size: 20px; " +
-            "-fx-cursor: hand; " +
-            "-fx-text-fill: white;"
-        ));
-        
-        btn.setOnMouseExited(e -> btn.setStyle(
-            "-fx-background-color: " + finalBgColor + "; " +
-            "-fx-background-radius: " + finalRadius + "; " +
-            "-fx-font-size: 20px; " +
-            "-fx-cursor: hand; " +
-            "-fx-text-fill: white;"
-        ));
-        
         return btn;
     }
     
@@ -409,28 +386,24 @@ public class ChatWindow {
         VBox panel = new VBox(8);
         panel.setAlignment(Pos.CENTER);
         panel.setPadding(new Insets(10));
-        panel.setStyle("-fx-background-color: #232428;");
+        panel.getStyleClass().add("user-control-panel");
         panel.setPrefWidth(72);
         
         // Mini avatar with status dot
         StackPane avatarStack = new StackPane();
         
         Label avatar = new Label(getAvatarEmoji(client.getUsername()));
-        avatar.setStyle("-fx-font-size: 24px;");
+        avatar.getStyleClass().add("mini-avatar");
         
         Circle statusDot = new Circle(6);
-        statusDot.setStyle("-fx-fill: " + DISCORD_ONLINE + "; -fx-stroke: #232428; -fx-stroke-width: 2;");
+        statusDot.getStyleClass().add("status-dot");
         StackPane.setAlignment(statusDot, Pos.BOTTOM_RIGHT);
         
         avatarStack.getChildren().addAll(avatar, statusDot);
         
         // Settings icon
         Button settingsBtn = new Button("⚙️");
-        settingsBtn.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-font-size: 16px; " +
-            "-fx-cursor: hand;"
-        );
+        settingsBtn.getStyleClass().add("control-icon");
         settingsBtn.setTooltip(new Tooltip("Settings"));
         settingsBtn.setOnAction(e -> switchView("settings"));
         
@@ -446,7 +419,7 @@ public class ChatWindow {
         VBox sidebar = new VBox();
         sidebar.setPrefWidth(240);
         sidebar.setMinWidth(240);
-        sidebar.setStyle("-fx-background-color: " + DISCORD_BG_SIDE + ";");
+        sidebar.getStyleClass().add("discord-sidebar");
         
         // Search bar
         HBox searchContainer = new HBox();
@@ -455,21 +428,11 @@ public class ChatWindow {
         TextField searchField = new TextField();
         searchField.setPromptText("Find or start a conversation");
         searchField.setPrefHeight(30);
-        searchField.setStyle(
-            "-fx-background-color: " + DISCORD_BG_NAVBAR + "; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-prompt-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-background-radius: 4; " +
-            "-fx-border-width: 0; " +
-            "-fx-font-size: 13px; " +
-            "-fx-padding: 5 10;"
-        );
+        searchField.getStyleClass().add("sidebar-search");
         HBox.setHgrow(searchField, Priority.ALWAYS);
         
         // Add listener to filter DM contacts in real-time
-        searchField.textProperty().addListener((obs, oldVal, newVal) -> {
-            filterDmList(newVal.toLowerCase().trim());
-        });
+        onSearchInput(searchField, this::filterDmList);
         
         searchContainer.getChildren().add(searchField);
         
@@ -479,22 +442,13 @@ public class ChatWindow {
         dmHeader.setAlignment(Pos.CENTER_LEFT);
         
         Label dmTitle = new Label("DIRECT MESSAGES");
-        dmTitle.setStyle(
-            "-fx-font-size: 11px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + ";"
-        );
+        dmTitle.getStyleClass().add("section-title");
         
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
         
         Button addDmBtn = new Button("+");
-        addDmBtn.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-font-size: 16px; " +
-            "-fx-cursor: hand;"
-        );
+        addDmBtn.getStyleClass().addAll("icon-button", "large");
         addDmBtn.setTooltip(new Tooltip("Create DM"));
         
         dmHeader.getChildren().addAll(dmTitle, spacer, addDmBtn);
@@ -515,11 +469,7 @@ public class ChatWindow {
         
         ScrollPane dmScroll = new ScrollPane(dmListContainer);
         dmScroll.setFitToWidth(true);
-        dmScroll.setStyle(
-            "-fx-background: " + DISCORD_BG_SIDE + "; " +
-            "-fx-background-color: " + DISCORD_BG_SIDE + "; " +
-            "-fx-border-width: 0;"
-        );
+        dmScroll.getStyleClass().add("sidebar-scroll");
         VBox.setVgrow(dmScroll, Priority.ALWAYS);
         
         sidebar.getChildren().addAll(searchContainer, dmHeader, dmScroll);
@@ -535,12 +485,9 @@ public class ChatWindow {
         entry.setPadding(new Insets(8, 10, 8, 10));
         entry.setAlignment(Pos.CENTER_LEFT);
         
-        String bgColor = active ? DISCORD_BG_HOVER : "transparent";
-        entry.setStyle(
-            "-fx-background-color: " + bgColor + "; " +
-            "-fx-background-radius: 4; " +
-            "-fx-cursor: hand;"
-        );
+        entry.getStyleClass().add("dm-entry");
+        entry.pseudoClassStateChanged(SELECTED, active);
+        entry.setUserData(username);
         
         // Avatar with status
         StackPane avatarStack = new StackPane();
@@ -548,35 +495,25 @@ public class ChatWindow {
         avatarStack.setMaxSize(32, 32);
         
         Label avatar = new Label(getAvatarEmoji(username));
-        avatar.setStyle("-fx-font-size: 20px;");
+        avatar.getStyleClass().add("dm-avatar");
         
         Circle statusDot = new Circle(5);
-        statusDot.setStyle("-fx-fill: " + DISCORD_ONLINE + "; -fx-stroke: " + DISCORD_BG_SIDE + "; -fx-stroke-width: 2;");
+        statusDot.getStyleClass().add("status-dot");
         StackPane.setAlignment(statusDot, Pos.BOTTOM_RIGHT);
         
         avatarStack.getChildren().addAll(avatar, statusDot);
         
         // Username
         Label nameLabel = new Label(username);
-        nameLabel.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: 500; " +
-            "-fx-text-fill: " + (active ? "#ffffff" : DISCORD_TEXT_NORMAL) + ";"
-        );
+        nameLabel.getStyleClass().add("dm-name");
         
         // Close button
         Region entrySpacer = new Region();
         HBox.setHgrow(entrySpacer, Priority.ALWAYS);
         
+        // Shown while the entry is hovered (see nexo.css)
         Button closeBtn = new Button("✕");
-        closeBtn.setVisible(false);
-        closeBtn.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-font-size: 12px; " +
-            "-fx-cursor: hand; " +
-            "-fx-padding: 2 5;"
-        );
+        closeBtn.getStyleClass().addAll("icon-button", "small", "dm-close");
         
         entry.getChildren().addAll(avatarStack, nameLabel, entrySpacer, closeBtn);
         
@@ -587,29 +524,6 @@ public class ChatWindow {
             }
         });
         
-        // Hover effects
-        entry.setOnMouseEntered(e -> {
-            if (!active) {
-                entry.setStyle(
-                    "-fx-background-color: " + DISCORD_BG_HOVER + "; " +
-                    "-fx-background-radius: 4; " +
-                    "-fx-cursor: hand;"
-                );
-            }
-            closeBtn.setVisible(true);
-        });
-        
-        entry.setOnMouseExited(e -> {
-            if (!active) {
-                entry.setStyle(
-                    "-fx-background-color: transparent; " +
-                    "-fx-background-radius: 4; " +
-                    "-fx-cursor: hand;"
-                );
-            }
-            closeBtn.setVisible(false);
-        });
-        
         dmListContainer.getChildren().add(entry);
     }
     
@@ -618,24 +532,18 @@ public class ChatWindow {
      */
     private BorderPane buildPrivateChatArea(String username) {
         BorderPane chatArea = new BorderPane();
-        chatArea.setStyle("-fx-background-color: " + DISCORD_BG_MAIN + ";");
+        chatArea.getStyleClass().add("chat-area");
         
         // ========== HEADER ==========
         HBox header = buildPrivateChatHeader(username);
         
         // ========== MESSAGES AREA ==========
-        privateMessagesContainer = new VBox(0);
-        privateMessagesContainer.setPadding(new Insets(16, 16, 8, 16));
-        privateMessagesContainer.setStyle("-fx-background-color: " + DISCORD_BG_MAIN + ";");
-        
-        privateMessagesScrollPane = new ScrollPane(privateMessagesContainer);
-        privateMessagesScrollPane.setFitToWidth(true);
-        privateMessagesScrollPane.setStyle(
-            "-fx-background: " + DISCORD_BG_MAIN + "; " +
-            "-fx-background-color: " + DISCORD_BG_MAIN + "; " +
-            "-fx-border-width: 0;"
-        );
-        VBox.setVgrow(privateMessagesScrollPane, Priority.ALWAYS);
+        privateMessagesList = new ListView<>(privateMessages);
+        privateMessagesList.setCellFactory(list -> new ChatMessageCell());
+        privateMessagesList.setFocusTraversable(false);
+        privateMessagesList.setPadding(new Insets(16, 0, 8, 0));
+        privateMessagesList.getStyleClass().add("message-list");
+        VBox.setVgrow(privateMessagesList, Priority.ALWAYS);
         
         // Add welcome message
         addPrivateSystemMessage("🔒 This is the beginning of your direct message history with @" + username);
@@ -645,7 +553,7 @@ public class ChatWindow {
         HBox inputArea = buildPrivateChatInputArea(username);
         
         chatArea.setTop(header);
-        chatArea.setCenter(privateMessagesScrollPane);
+        chatArea.setCenter(privateMessagesList);
         chatArea.setBottom(inputArea);
         
         return chatArea;
@@ -658,31 +566,19 @@ public class ChatWindow {
         HBox header = new HBox(10);
         header.setPadding(new Insets(12, 16, 12, 16));
         header.setAlignment(Pos.CENTER_LEFT);
-        header.setStyle(
-            "-fx-background-color: " + DISCORD_BG_MAIN + "; " +
-            "-fx-border-color: #232428; " +
-            "-fx-border-width: 0 0 1 0;"
-        );
+        header.getStyleClass().add("chat-header");
         
         // @ symbol
         Label atSymbol = new Label("@");
-        atSymbol.setStyle(
-            "-fx-font-size: 18px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + ";"
-        );
+        atSymbol.getStyleClass().add("header-symbol");
         
         // Username
         Label usernameLabel = new Label(username);
-        usernameLabel.setStyle(
-            "-fx-font-size: 16px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-text-fill: #ffffff;"
-        );
+        usernameLabel.getStyleClass().add("header-title");
         
         // Status indicator
         Circle statusDot = new Circle(4);
-        statusDot.setStyle("-fx-fill: " + DISCORD_ONLINE + ";");
+        statusDot.getStyleClass().add("status-dot");
         
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
@@ -690,22 +586,15 @@ public class ChatWindow {
         // Action buttons
         Button voiceCallBtn = createPrivateChatHeaderButton("📞", "Start Voice Call");
         Button videoCallBtn = createPrivateChatHeaderButton("📹", "Start Video Call");
-        videoCallBtn.setOnAction(e -> startVideoCall());
+        videoCallBtn.setOnAction(e -> startVideoCall(CallRoom.direct(client.getUsername(), username)));
         Button pinBtn = createPrivateChatHeaderButton("📌", "Pinned Messages");
         
         // Search input
         TextField searchInput = new TextField();
-        searchInput.setPromptText("Search");
+        searchInput.setPromptText("Search messages");
         searchInput.setPrefWidth(150);
-        searchInput.setStyle(
-            "-fx-background-color: " + DISCORD_BG_SIDE + "; " +
-            "-fx-text-fill: " + DISCORD_TEXT_NORMAL + "; " +
-            "-fx-prompt-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-background-radius: 4; " +
-            "-fx-border-width: 0; " +
-            "-fx-font-size: 12px; " +
-            "-fx-padding: 4 8;"
-        );
+        searchInput.getStyleClass().add("header-search");
+        onSearchInput(searchInput, query -> searchMessages(searchInput, query));
         
         header.getChildren().addAll(
             atSymbol, usernameLabel, statusDot,
@@ -721,29 +610,9 @@ public class ChatWindow {
      */
     private Button createPrivateChatHeaderButton(String icon, String tooltip) {
         Button btn = new Button(icon);
-        btn.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-font-size: 18px; " +
-            "-fx-cursor: hand; " +
-            "-fx-padding: 5;"
-        );
+        btn.getStyleClass().add("header-button");
         btn.setTooltip(new Tooltip(tooltip));
         
-        btn.setOnMouseEntered(e -> btn.setStyle(
-            "-fx-background-color: " + DISCORD_BG_HOVER + "; " +
-            "-fx-background-radius: 4; " +
-            "-fx-font-size: 18px; " +
-            "-fx-cursor: hand; " +
-            "-fx-padding: 5;"
-        ));
-        
-        btn.setOnMouseExited(e -> btn.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-font-size: 18px; " +
-            "-fx-cursor: hand; " +
-            "-fx-padding: 5;"
-        ));
-        
         return btn;
     }
     
@@ -754,40 +623,25 @@ public class ChatWindow {
         HBox inputArea = new HBox(0);
         inputArea.setPadding(new Insets(0, 16, 24, 16));
         inputArea.setAlignment(Pos.CENTER);
-        inputArea.setStyle("-fx-background-color: " + DISCORD_BG_MAIN + ";");
+        inputArea.getStyleClass().add("input-area");
         
         // Input container with rounded corners
         HBox inputContainer = new HBox(8);
         inputContainer.setPadding(new Insets(0, 16, 0, 16));
         inputContainer.setAlignment(Pos.CENTER);
-        inputContainer.setStyle(
-            "-fx-background-color: #383a40; " +
-            "-fx-background-radius: 8;"
-        );
+        inputContainer.getStyleClass().add("input-container");
         HBox.setHgrow(inputContainer, Priority.ALWAYS);
         
         // Add attachment button
         Button attachBtn = new Button("➕");
-        attachBtn.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-font-size: 18px; " +
-            "-fx-cursor: hand; " +
-            "-fx-padding: 8;"
-        );
+        attachBtn.getStyleClass().addAll("input-button", "large");
         attachBtn.setTooltip(new Tooltip("Attach files"));
         
         // Message input
         privateMessageInput = new TextField();
         privateMessageInput.setPromptText("Message @" + username);
         privateMessageInput.setPrefHeight(44);
-        privateMessageInput.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-text-fill: " + DISCORD_TEXT_NORMAL + "; " +
-            "-fx-prompt-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-border-width: 0; " +
-            "-fx-font-size: 14px;"
-        );
+        privateMessageInput.getStyleClass().add("message-input");
         HBox.setHgrow(privateMessageInput, Priority.ALWAYS);
         
         // Emoji & other buttons
@@ -797,14 +651,7 @@ public class ChatWindow {
         
         // Send button
         Button sendBtn = new Button("➤");
-        sendBtn.setStyle(
-            "-fx-background-color: " + DISCORD_BRAND + "; " +
-            "-fx-text-fill: white; " +
-            "-fx-font-size: 14px; " +
-            "-fx-background-radius: 4; " +
-            "-fx-cursor: hand; " +
-            "-fx-padding: 6 12;"
-        );
+        sendBtn.getStyleClass().add("send-button");
         sendBtn.setVisible(false);
         sendBtn.setOnAction(e -> sendPrivateMessage());
         
@@ -828,29 +675,7 @@ public class ChatWindow {
      */
     private Button createPrivateChatInputButton(String text) {
         Button btn = new Button(text);
-        btn.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-font-size: 14px; " +
-            "-fx-cursor: hand; " +
-            "-fx-padding: 8;"
-        );
-        
-        btn.setOnMouseEntered(e -> btn.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-text-fill: " + DISCORD_TEXT_NORMAL + "; " +
-            "-fx-font-size: 14px; " +
-            "-fx-cursor: hand; " +
-            "-fx-padding: 8;"
-        ));
-        
-        btn.setOnMouseExited(e -> btn.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-font-size: 14px; " +
-            "-fx-cursor: hand; " +
-            "-fx-padding: 8;"
-        ));
+        btn.getStyleClass().add("input-button");
         
         return btn;
     }
@@ -873,7 +698,7 @@ public class ChatWindow {
             storePrivateMessage(currentPrivateChatUser, client.getUsername(), message, timestamp, true);
             
             // Display own message
-            addPrivateChatMessage(client.getUsername(), message, true);
+            addPrivateChatMessage(client.getUsername(), message, timestamp, true);
             
             privateMessageInput.clear();
         }
@@ -883,173 +708,49 @@ public class ChatWindow {
      * Add system message to private chat
      */
     private void addPrivateSystemMessage(String text) {
-        Platform.runLater(() -> {
-            Label systemMsg = new Label(text);
-            systemMsg.setStyle(
-                "-fx-font-size: 13px; " +
-                "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-                "-fx-padding: 8 0;"
-            );
-            systemMsg.setWrapText(true);
-            
-            HBox container = new HBox(systemMsg);
-            container.setAlignment(Pos.CENTER);
-            container.setPadding(new Insets(8, 0, 8, 0));
-            
-            privateMessagesContainer.getChildren().add(container);
-            scrollPrivateMessagesToBottom();
-        });
+        appendPrivateItem(ChatMessageItem.system(text));
     }
     
     /**
      * Add chat message to private chat
      */
-    private void addPrivateChatMessage(String sender, String text, boolean isOwnMessage) {
-        Platform.runLater(() -> {
-            boolean shouldGroup = sender.equals(lastPrivateMessageSender);
-            lastPrivateMessageSender = sender;
-            
-            if (shouldGroup) {
-                addGroupedPrivateMessage(text);
-            } else {
-                addNewPrivateMessageBlock(sender, text, isOwnMessage);
-            }
-            
-            privateMessageCount++;
-            scrollPrivateMessagesToBottom();
-        });
+    private void addPrivateChatMessage(String sender, String text, String timestamp, boolean isOwnMessage) {
+        boolean shouldGroup = sender.equals(lastPrivateMessageSender);
+        lastPrivateMessageSender = sender;
+        
+        appendPrivateItem(ChatMessageItem.message(isOwnMessage ? "You" : sender, text, timestamp,
+            getAvatarEmoji(sender), getUserColorClass(sender, isOwnMessage), shouldGroup));
+        privateMessageCount++;
     }
     
     /**
-     * Add new message block with avatar
+     * Queue a row for the open conversation; rows are added in one batch per pulse
      */
-    private void addNewPrivateMessageBlock(String sender, String text, boolean isOwnMessage) {
-        HBox messageBlock = new HBox(16);
-        messageBlock.setPadding(new Insets(4, 48, 4, 0));
-        messageBlock.setStyle("-fx-background-radius: 4;");
-        
-        // Hover effect
-        messageBlock.setOnMouseEntered(e -> messageBlock.setStyle(
-            "-fx-background-color: " + DISCORD_BG_HOVER + "; -fx-background-radius: 4;"
-        ));
-        messageBlock.setOnMouseExited(e -> messageBlock.setStyle(
-            "-fx-background-color: transparent; -fx-background-radius: 4;"
-        ));
-        
-        // Avatar
-        Label avatar = new Label(getAvatarEmoji(sender));
-        avatar.setMinSize(40, 40);
-        avatar.setMaxSize(40, 40);
-        avatar.setStyle(
-            "-fx-font-size: 24px; " +
-            "-fx-background-color: " + DISCORD_BG_SIDE + "; " +
-            "-fx-background-radius: 20; " +
-            "-fx-alignment: center;"
-        );
-        avatar.setAlignment(Pos.CENTER);
-        
-        // Content wrapper
-        VBox contentWrapper = new VBox(4);
-        HBox.setHgrow(contentWrapper, Priority.ALWAYS);
-        
-        // Header
-        HBox msgHeader = new HBox(8);
-        msgHeader.setAlignment(Pos.CENTER_LEFT);
-        
-        Label usernameLabel = new Label(isOwnMessage ? "You" : sender);
-        usernameLabel.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-text-fill: " + (isOwnMessage ? "#ffffff" : getRandomUserColor(sender)) + ";"
-        );
-        
-        String timestamp = java.time.LocalTime.now().format(
-            java.time.format.DateTimeFormatter.ofPattern("HH:mm")
-        );
-        Label timestampLabel = new Label("Today at " + timestamp);
-        timestampLabel.setStyle(
-            "-fx-font-size: 11px; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + ";"
-        );
-        
-        msgHeader.getChildren().addAll(usernameLabel, timestampLabel);
-        
-        // Message body
-        Label messageBody = new Label(text);
-        messageBody.setWrapText(true);
-        messageBody.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-text-fill: " + DISCORD_TEXT_NORMAL + "; " +
-            "-fx-line-spacing: 2;"
-        );
-        
-        contentWrapper.getChildren().addAll(msgHeader, messageBody);
-        messageBlock.getChildren().addAll(avatar, contentWrapper);
-        
-        privateMessagesContainer.getChildren().add(messageBlock);
+    private void appendPrivateItem(ChatMessageItem item) {
+        pendingPrivateItems.add(item);
+        uiDispatcher.requestPulse();
     }
     
     /**
-     * Add grouped message (same sender)
+     * Pulse hook: one list change, one trim and one scroll for the whole batch
      */
-    private void addGroupedPrivateMessage(String text) {
-        HBox messageBlock = new HBox(16);
-        messageBlock.setPadding(new Insets(0, 48, 0, 0));
-        
-        String timestamp = java.time.LocalTime.now().format(
-            java.time.format.DateTimeFormatter.ofPattern("HH:mm")
-        );
-        
-        Label timestampHover = new Label(timestamp);
-        timestampHover.setMinWidth(40);
-        timestampHover.setMaxWidth(40);
-        timestampHover.setVisible(false);
-        timestampHover.setStyle(
-            "-fx-font-size: 10px; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-alignment: center-right; " +
-            "-fx-padding: 0 5 0 0;"
-        );
-        timestampHover.setAlignment(Pos.CENTER_RIGHT);
-        
-        Label messageBody = new Label(text);
-        messageBody.setWrapText(true);
-        messageBody.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-text-fill: " + DISCORD_TEXT_NORMAL + "; " +
-            "-fx-line-spacing: 2;"
-        );
-        HBox.setHgrow(messageBody, Priority.ALWAYS);
-        
-        messageBlock.getChildren().addAll(timestampHover, messageBody);
-        
-        messageBlock.setOnMouseEntered(e -> {
-            messageBlock.setStyle("-fx-background-color: " + DISCORD_BG_HOVER + "; -fx-background-radius: 4;");
-            timestampHover.setVisible(true);
-        });
-        messageBlock.setOnMouseExited(e -> {
-            messageBlock.setStyle("-fx-background-color: transparent;");
-            timestampHover.setVisible(false);
-        });
-        
-        HBox wrapper = new HBox();
-        Region spacer = new Region();
-        spacer.setMinWidth(56);
-        wrapper.getChildren().addAll(spacer, messageBlock);
-        HBox.setHgrow(messageBlock, Priority.ALWAYS);
-        
-        privateMessagesContainer.getChildren().add(wrapper);
+    private void flushPrivateItems() {
+        if (pendingPrivateItems.isEmpty()) {
+            return;
+        }
+        privateMessages.addAll(pendingPrivateItems);
+        pendingPrivateItems.clear();
+        trimMessages(privateMessages);
+        scrollPrivateMessagesToBottom();
     }
     
     /**
      * Scroll private messages to bottom
      */
     private void scrollPrivateMessagesToBottom() {
-        Platform.runLater(() -> {
-            if (privateMessagesScrollPane != null) {
-                privateMessagesScrollPane.setVvalue(1.0);
-            }
-        });
+        if (privateMessagesList != null && !privateMessages.isEmpty()) {
+            privateMessagesList.scrollTo(privateMessages.size() - 1);
+        }
     }
     
     /**
@@ -1062,36 +763,22 @@ public class ChatWindow {
     }
     
     /**
-     * Get random color for username
+     * Style class of a username's color (user-color-0 .. 10 in nexo.css)
      */
-    private String getRandomUserColor(String username) {
-        String[] colors = {
-            "#e91e63", "#9c27b0", "#673ab7", "#3f51b5",
-            "#2196f3", "#00bcd4", "#009688", "#4caf50",
-            "#ff9800", "#ff5722", "#f44336"
-        };
-        int index = Math.abs(username.hashCode()) % colors.length;
-        return colors[index];
+    private String getUserColorClass(String username, boolean isOwnMessage) {
+        if (isOwnMessage) {
+            return "user-color-own";
+        }
+        return "user-color-" + Math.abs(username.hashCode()) % USER_COLOR_COUNT;
     }
     
     /**
      * Update navigation button active states
      */
     private void updateNavButtonStyles() {
-        chatNavButton.setStyle(createNavButtonStyle(currentView.equals("chat")));
-        profileNavButton.setStyle(createNavButtonStyle(currentView.equals("profile")));
-        settingsNavButton.setStyle(createNavButtonStyle(currentView.equals("settings")));
-    }
-    
-    private String createNavButtonStyle(boolean active) {
-        String bgColor = active ? "rgba(255,255,255,0.3)" : "rgba(255,255,255,0.15)";
-        return "-fx-background-color: " + bgColor + "; " +
-               "-fx-text-fill: white; " +
-               "-fx-font-size: 13px; " +
-               "-fx-font-weight: bold; " +
-               "-fx-background-radius: 15px; " +
-               "-fx-padding: 8px 18px; " +
-               "-fx-cursor: hand;";
+        chatNavButton.pseudoClassStateChanged(SELECTED, currentView.equals("chat"));
+        profileNavButton.pseudoClassStateChanged(SELECTED, currentView.equals("profile"));
+        settingsNavButton.pseudoClassStateChanged(SELECTED, currentView.equals("settings"));
     }
     
     /**
@@ -1099,7 +786,7 @@ public class ChatWindow {
      */
     private VBox buildChatView() {
         HBox mainLayout = new HBox();
-        mainLayout.setStyle("-fx-background-color: " + DISCORD_BG_MAIN + ";");
+        mainLayout.getStyleClass().add("discord-view");
         
         // ========== LEFT NAVBAR (Icons) ==========
         VBox navbar = buildGlobalChatNavbar();
@@ -1130,7 +817,7 @@ public class ChatWindow {
         navbar.setMaxWidth(72);
         navbar.setAlignment(Pos.TOP_CENTER);
         navbar.setPadding(new Insets(12, 0, 12, 0));
-        navbar.setStyle("-fx-background-color: " + DISCORD_BG_NAVBAR + ";");
+        navbar.getStyleClass().add("discord-navbar");
         
         // Home button (active - global chat)
         Button homeBtn = createDiscordNavButton("🏠", "General Chat", true);
@@ -1145,12 +832,12 @@ public class ChatWindow {
         Region separator = new Region();
         separator.setPrefHeight(2);
         separator.setMaxWidth(32);
-        separator.setStyle("-fx-background-color: " + DISCORD_BG_HOVER + "; -fx-background-radius: 1;");
+        separator.getStyleClass().add("discord-separator");
         VBox.setMargin(separator, new Insets(4, 0, 4, 0));
         
         // Video call button
         Button videoBtn = createDiscordNavButton("📹", "Video Call", false);
-        videoBtn.setOnAction(e -> startVideoCall());
+        videoBtn.setOnAction(e -> startVideoCall(CallRoom.GENERAL));
         
         // Spacer
         Region spacer = new Region();
@@ -1171,20 +858,16 @@ public class ChatWindow {
         VBox sidebar = new VBox();
         sidebar.setPrefWidth(240);
         sidebar.setMinWidth(240);
-        sidebar.setStyle("-fx-background-color: " + DISCORD_BG_SIDE + ";");
+        sidebar.getStyleClass().add("discord-sidebar");
         
         // Server/Channel header
         HBox headerBox = new HBox();
         headerBox.setPadding(new Insets(15));
         headerBox.setAlignment(Pos.CENTER_LEFT);
-        headerBox.setStyle("-fx-background-color: " + DISCORD_BG_SIDE + "; -fx-border-color: #232428; -fx-border-width: 0 0 1 0;");
+        headerBox.getStyleClass().add("sidebar-header");
         
         Label serverName = new Label("📡 NEXO Server");
-        serverName.setStyle(
-            "-fx-font-size: 15px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-text-fill: #ffffff;"
-        );
+        serverName.getStyleClass().add("server-name");
         headerBox.getChildren().add(serverName);
         
         // Channel section
@@ -1195,7 +878,7 @@ public class ChatWindow {
         HBox channelHeader = new HBox();
         channelHeader.setPadding(new Insets(5, 10, 5, 5));
         Label channelTitle = new Label("TEXT CHANNELS");
-        channelTitle.setStyle("-fx-font-size: 11px; -fx-font-weight: bold; -fx-text-fill: " + DISCORD_TEXT_MUTED + ";");
+        channelTitle.getStyleClass().add("section-title");
         channelHeader.getChildren().add(channelTitle);
         
         // General channel (active)
@@ -1210,21 +893,11 @@ public class ChatWindow {
         TextField userSearchField = new TextField();
         userSearchField.setPromptText("Search users...");
         userSearchField.setPrefHeight(28);
-        userSearchField.setStyle(
-            "-fx-background-color: " + DISCORD_BG_NAVBAR + "; " +
-            "-fx-text-fill: " + DISCORD_TEXT_NORMAL + "; " +
-            "-fx-prompt-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-background-radius: 4; " +
-            "-fx-border-width: 0; " +
-            "-fx-font-size: 12px; " +
-            "-fx-padding: 5 10;"
-        );
+        userSearchField.getStyleClass().add("sidebar-search");
         HBox.setHgrow(userSearchField, Priority.ALWAYS);
         
         // Add listener to filter users in real-time
-        userSearchField.textProperty().addListener((obs, oldVal, newVal) -> {
-            filterGlobalUserList(newVal.toLowerCase().trim());
-        });
+        onSearchInput(userSearchField, this::filterGlobalUserList);
         
         searchContainer.getChildren().add(userSearchField);
         
@@ -1234,32 +907,27 @@ public class ChatWindow {
         usersHeader.setAlignment(Pos.CENTER_LEFT);
         
         Label usersTitle = new Label("ONLINE USERS");
-        usersTitle.setStyle("-fx-font-size: 11px; -fx-font-weight: bold; -fx-text-fill: " + DISCORD_TEXT_MUTED + ";");
+        usersTitle.getStyleClass().add("section-title");
         
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
         
         Button refreshBtn = new Button("🔄");
-        refreshBtn.setStyle("-fx-background-color: transparent; -fx-text-fill: " + DISCORD_TEXT_MUTED + "; -fx-font-size: 12px; -fx-cursor: hand;");
+        refreshBtn.getStyleClass().addAll("icon-button", "small");
         refreshBtn.setTooltip(new Tooltip("Refresh user list"));
         refreshBtn.setOnAction(e -> requestUserListUpdate());
         
         usersHeader.getChildren().addAll(usersTitle, spacer, refreshBtn);
         
-        // User list container
-        userListContainer = new VBox(2);
-        userListContainer.setPadding(new Insets(5, 8, 5, 8));
-        
-        ScrollPane userScroll = new ScrollPane(userListContainer);
-        userScroll.setFitToWidth(true);
-        userScroll.setStyle(
-            "-fx-background: " + DISCORD_BG_SIDE + "; " +
-            "-fx-background-color: " + DISCORD_BG_SIDE + "; " +
-            "-fx-border-width: 0;"
-        );
-        VBox.setVgrow(userScroll, Priority.ALWAYS);
+        // User list - virtualized, rows are recycled UserListCells
+        userListView = new ListView<>(visibleUsers);
+        userListView.setCellFactory(list -> new UserListCell(this::onUserSelected, this::onUserOpened));
+        userListView.setFocusTraversable(false);
+        userListView.setPadding(new Insets(5, 8, 5, 8));
+        userListView.getStyleClass().add("user-list");
+        VBox.setVgrow(userListView, Priority.ALWAYS);
         
-        sidebar.getChildren().addAll(headerBox, channelSection, searchContainer, usersHeader, userScroll);
+        sidebar.getChildren().addAll(headerBox, channelSection, searchContainer, usersHeader, userListView);
         
         return sidebar;
     }
@@ -1272,29 +940,14 @@ public class ChatWindow {
         entry.setPadding(new Insets(6, 10, 6, 10));
         entry.setAlignment(Pos.CENTER_LEFT);
         
-        String bgColor = active ? DISCORD_BG_HOVER : "transparent";
-        entry.setStyle(
-            "-fx-background-color: " + bgColor + "; " +
-            "-fx-background-radius: 4; " +
-            "-fx-cursor: hand;"
-        );
+        entry.getStyleClass().add("channel-entry");
+        entry.pseudoClassStateChanged(SELECTED, active);
         
         Label channelName = new Label(name);
-        channelName.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: " + (active ? "bold" : "normal") + "; " +
-            "-fx-text-fill: " + (active ? "#ffffff" : DISCORD_TEXT_MUTED) + ";"
-        );
+        channelName.getStyleClass().add("channel-name");
         
         entry.getChildren().add(channelName);
         
-        entry.setOnMouseEntered(e -> {
-            if (!active) entry.setStyle("-fx-background-color: " + DISCORD_BG_HOVER + "; -fx-background-radius: 4; -fx-cursor: hand;");
-        });
-        entry.setOnMouseExited(e -> {
-            if (!active) entry.setStyle("-fx-background-color: transparent; -fx-background-radius: 4; -fx-cursor: hand;");
-        });
-        
         return entry;
     }
     
@@ -1303,23 +956,19 @@ public class ChatWindow {
      */
     private BorderPane buildGlobalChatArea() {
         BorderPane chatArea = new BorderPane();
-        chatArea.setStyle("-fx-background-color: " + DISCORD_BG_MAIN + ";");
+        chatArea.getStyleClass().add("chat-area");
         
         // ========== HEADER ==========
         HBox header = new HBox(10);
         header.setPadding(new Insets(12, 16, 12, 16));
         header.setAlignment(Pos.CENTER_LEFT);
-        header.setStyle(
-            "-fx-background-color: " + DISCORD_BG_MAIN + "; " +
-            "-fx-border-color: #232428; " +
-            "-fx-border-width: 0 0 1 0;"
-        );
+        header.getStyleClass().add("chat-header");
         
         Label hashSymbol = new Label("#");
-        hashSymbol.setStyle("-fx-font-size: 22px; -fx-font-weight: bold; -fx-text-fill: " + DISCORD_TEXT_MUTED + ";");
+        hashSymbol.getStyleClass().addAll("header-symbol", "large");
         
         Label channelLabel = new Label("general");
-        channelLabel.setStyle("-fx-font-size: 16px; -fx-font-weight: bold; -fx-text-fill: #ffffff;");
+        channelLabel.getStyleClass().add("header-title");
         
         Region headerSpacer = new Region();
         HBox.setHgrow(headerSpacer, Priority.ALWAYS);
@@ -1329,33 +978,21 @@ public class ChatWindow {
         Button membersBtn = createPrivateChatHeaderButton("👥", "Member List");
         
         TextField searchInput = new TextField();
-        searchInput.setPromptText("Search");
+        searchInput.setPromptText("Search messages");
         searchInput.setPrefWidth(150);
-        searchInput.setStyle(
-            "-fx-background-color: " + DISCORD_BG_SIDE + "; " +
-            "-fx-text-fill: " + DISCORD_TEXT_NORMAL + "; " +
-            "-fx-prompt-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-background-radius: 4; " +
-            "-fx-border-width: 0; " +
-            "-fx-font-size: 12px; " +
-            "-fx-padding: 4 8;"
-        );
+        searchInput.getStyleClass().add("header-search");
+        onSearchInput(searchInput, query -> searchMessages(searchInput, query));
         
         header.getChildren().addAll(hashSymbol, channelLabel, headerSpacer, pinBtn, membersBtn, searchInput);
         
         // ========== MESSAGES AREA ==========
-        globalMessagesContainer = new VBox(0);
-        globalMessagesContainer.setPadding(new Insets(16, 16, 8, 16));
-        globalMessagesContainer.setStyle("-fx-background-color: " + DISCORD_BG_MAIN + ";");
-        
-        globalMessagesScrollPane = new ScrollPane(globalMessagesContainer);
-        globalMessagesScrollPane.setFitToWidth(true);
-        globalMessagesScrollPane.setStyle(
-            "-fx-background: " + DISCORD_BG_MAIN + "; " +
-            "-fx-background-color: " + DISCORD_BG_MAIN + "; " +
-            "-fx-border-width: 0;"
-        );
-        VBox.setVgrow(globalMessagesScrollPane, Priority.ALWAYS);
+        // Virtualized: only the visible rows have nodes, cells are recycled
+        globalMessagesList = new ListView<>(globalMessages);
+        globalMessagesList.setCellFactory(list -> new ChatMessageCell());
+        globalMessagesList.setFocusTraversable(false);
+        globalMessagesList.setPadding(new Insets(16, 0, 8, 0));
+        globalMessagesList.getStyleClass().add("message-list");
+        VBox.setVgrow(globalMessagesList, Priority.ALWAYS);
         
         // Add welcome message
         Platform.runLater(() -> {
@@ -1367,33 +1004,21 @@ public class ChatWindow {
         HBox inputArea = new HBox(0);
         inputArea.setPadding(new Insets(0, 16, 24, 16));
         inputArea.setAlignment(Pos.CENTER);
-        inputArea.setStyle("-fx-background-color: " + DISCORD_BG_MAIN + ";");
+        inputArea.getStyleClass().add("input-area");
         
         HBox inputContainer = new HBox(8);
         inputContainer.setPadding(new Insets(0, 16, 0, 16));
         inputContainer.setAlignment(Pos.CENTER);
-        inputContainer.setStyle("-fx-background-color: #383a40; -fx-background-radius: 8;");
+        inputContainer.getStyleClass().add("input-container");
         HBox.setHgrow(inputContainer, Priority.ALWAYS);
         
         Button attachBtn = new Button("➕");
-        attachBtn.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-font-size: 18px; " +
-            "-fx-cursor: hand; " +
-            "-fx-padding: 8;"
-        );
+        attachBtn.getStyleClass().addAll("input-button", "large");
         
         messageInput = new TextField();
         messageInput.setPromptText("Message #general");
         messageInput.setPrefHeight(44);
-        messageInput.setStyle(
-            "-fx-background-color: transparent; " +
-            "-fx-text-fill: " + DISCORD_TEXT_NORMAL + "; " +
-            "-fx-prompt-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-border-width: 0; " +
-            "-fx-font-size: 14px;"
-        );
+        messageInput.getStyleClass().add("message-input");
         HBox.setHgrow(messageInput, Priority.ALWAYS);
         
         Button gifBtn = createPrivateChatInputButton("GIF");
@@ -1401,14 +1026,7 @@ public class ChatWindow {
         Button emojiBtn = createPrivateChatInputButton("😊");
         
         sendButton = new Button("➤");
-        sendButton.setStyle(
-            "-fx-background-color: " + DISCORD_BRAND + "; " +
-            "-fx-text-fill: white; " +
-            "-fx-font-size: 14px; " +
-            "-fx-background-radius: 4; " +
-            "-fx-cursor: hand; " +
-            "-fx-padding: 6 12;"
-        );
+        sendButton.getStyleClass().add("send-button");
         sendButton.setVisible(false);
         sendButton.setOnAction(e -> sendMessage());
         
@@ -1422,209 +1040,128 @@ public class ChatWindow {
         inputArea.getChildren().add(inputContainer);
         
         chatArea.setTop(header);
-        chatArea.setCenter(globalMessagesScrollPane);
+        chatArea.setCenter(globalMessagesList);
         chatArea.setBottom(inputArea);
         
         return chatArea;
     }
     
-    // Global chat message containers
-    private VBox globalMessagesContainer;
-    private ScrollPane globalMessagesScrollPane;
+    // Global chat: lightweight model rendered by a virtualized ListView
+    private final ObservableList<ChatMessageItem> globalMessages = FXCollections.observableArrayList();
+    private final List<ChatMessageItem> pendingGlobalItems = new ArrayList<>(); // added once per pulse
+    private ListView<ChatMessageItem> globalMessagesList;
     private String lastGlobalMessageSender = "";
     private int globalMessageCount = 0;
     
+    // Batches incoming lines and list changes into one FX update per pulse
+    private final UiUpdateDispatcher uiDispatcher = new UiUpdateDispatcher();
+    
     /**
      * Add system message to global chat
      */
     private void addGlobalSystemMessage(String text) {
-        Platform.runLater(() -> {
-            Label systemMsg = new Label(text);
-            systemMsg.setStyle(
-                "-fx-font-size: 13px; " +
-                "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-                "-fx-padding: 8 0;"
-            );
-            systemMsg.setWrapText(true);
-            
-            HBox container = new HBox(systemMsg);
-            container.setAlignment(Pos.CENTER);
-            container.setPadding(new Insets(8, 0, 8, 0));
-            
-            globalMessagesContainer.getChildren().add(container);
-            scrollGlobalMessagesToBottom();
-        });
+        appendGlobalItem(ChatMessageItem.system(text));
     }
     
     /**
      * Add chat message to global chat (Discord style)
      */
-    private void addGlobalChatMessage(String sender, String text) {
-        Platform.runLater(() -> {
-            boolean shouldGroup = sender.equals(lastGlobalMessageSender);
-            lastGlobalMessageSender = sender;
-            
-            if (shouldGroup) {
-                addGroupedGlobalMessage(text);
-            } else {
-                addNewGlobalMessageBlock(sender, text);
-            }
-            
-            globalMessageCount++;
-            
-            // Limit messages
-            if (globalMessageCount > MAX_MESSAGES && globalMessagesContainer.getChildren().size() > 0) {
-                globalMessagesContainer.getChildren().remove(0);
-            }
-            
-            scrollGlobalMessagesToBottom();
-        });
+    private void addGlobalChatMessage(String sender, String text, String timestamp) {
+        boolean shouldGroup = sender.equals(lastGlobalMessageSender);
+        lastGlobalMessageSender = sender;
+        
+        boolean isOwnMessage = sender.equals(client.getUsername());
+        appendGlobalItem(ChatMessageItem.message(sender, text, timestamp, getAvatarEmoji(sender),
+            getUserColorClass(sender, isOwnMessage), shouldGroup));
+        globalMessageCount++;
     }
     
     /**
-     * Add new message block with avatar
+     * Queue a row for the global list; rows are added in one batch per pulse
      */
-    private void addNewGlobalMessageBlock(String sender, String text) {
-        HBox messageBlock = new HBox(16);
-        messageBlock.setPadding(new Insets(4, 48, 4, 0));
-        messageBlock.setStyle("-fx-background-radius: 4;");
-        
-        messageBlock.setOnMouseEntered(e -> messageBlock.setStyle(
-            "-fx-background-color: " + DISCORD_BG_HOVER + "; -fx-background-radius: 4;"
-        ));
-        messageBlock.setOnMouseExited(e -> messageBlock.setStyle(
-            "-fx-background-color: transparent; -fx-background-radius: 4;"
-        ));
-        
-        // Avatar
-        Label avatar = new Label(getAvatarEmoji(sender));
-        avatar.setMinSize(40, 40);
-        avatar.setMaxSize(40, 40);
-        avatar.setStyle(
-            "-fx-font-size: 24px; " +
-            "-fx-background-color: " + DISCORD_BG_SIDE + "; " +
-            "-fx-background-radius: 20; " +
-            "-fx-alignment: center;"
-        );
-        avatar.setAlignment(Pos.CENTER);
-        
-        // Content wrapper
-        VBox contentWrapper = new VBox(4);
-        HBox.setHgrow(contentWrapper, Priority.ALWAYS);
-        
-        // Header
-        HBox msgHeader = new HBox(8);
-        msgHeader.setAlignment(Pos.CENTER_LEFT);
-        
-        boolean isOwnMessage = sender.equals(client.getUsername());
-        Label usernameLabel = new Label(sender);
-        usernameLabel.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-text-fill: " + (isOwnMessage ? "#ffffff" : getRandomUserColor(sender)) + ";"
-        );
-        
-        String timestamp = java.time.LocalTime.now().format(
-            java.time.format.DateTimeFormatter.ofPattern("HH:mm")
-        );
-        Label timestampLabel = new Label("Today at " + timestamp);
-        timestampLabel.setStyle("-fx-font-size: 11px; -fx-text-fill: " + DISCORD_TEXT_MUTED + ";");
-        
-        msgHeader.getChildren().addAll(usernameLabel, timestampLabel);
-        
-        // Message body
-        Label messageBody = new Label(text);
-        messageBody.setWrapText(true);
-        messageBody.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-text-fill: " + DISCORD_TEXT_NORMAL + "; " +
-            "-fx-line-spacing: 2;"
-        );
-        
-        contentWrapper.getChildren().addAll(msgHeader, messageBody);
-        messageBlock.getChildren().addAll(avatar, contentWrapper);
-        
-        globalMessagesContainer.getChildren().add(messageBlock);
+    private void appendGlobalItem(ChatMessageItem item) {
+        pendingGlobalItems.add(item);
+        uiDispatcher.requestPulse();
     }
     
     /**
-     * Add grouped message (same sender)
+     * Pulse hook: one list change, one trim and one scroll for the whole batch
      */
-    private void addGroupedGlobalMessage(String text) {
-        HBox messageBlock = new HBox(16);
-        messageBlock.setPadding(new Insets(0, 48, 0, 0));
-        
-        String timestamp = java.time.LocalTime.now().format(
-            java.time.format.DateTimeFormatter.ofPattern("HH:mm")
-        );
-        
-        Label timestampHover = new Label(timestamp);
-        timestampHover.setMinWidth(40);
-        timestampHover.setMaxWidth(40);
-        timestampHover.setVisible(false);
-        timestampHover.setStyle(
-            "-fx-font-size: 10px; " +
-            "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-            "-fx-alignment: center-right; " +
-            "-fx-padding: 0 5 0 0;"
-        );
-        timestampHover.setAlignment(Pos.CENTER_RIGHT);
-        
-        Label messageBody = new Label(text);
-        messageBody.setWrapText(true);
-        messageBody.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-text-fill: " + DISCORD_TEXT_NORMAL + "; " +
-            "-fx-line-spacing: 2;"
-        );
-        HBox.setHgrow(messageBody, Priority.ALWAYS);
-        
-        messageBlock.getChildren().addAll(timestampHover, messageBody);
-        
-        messageBlock.setOnMouseEntered(e -> {
-            messageBlock.setStyle("-fx-background-color: " + DISCORD_BG_HOVER + "; -fx-background-radius: 4;");
-            timestampHover.setVisible(true);
-        });
-        messageBlock.setOnMouseExited(e -> {
-            messageBlock.setStyle("-fx-background-color: transparent;");
-            timestampHover.setVisible(false);
-        });
-        
-        HBox wrapper = new HBox();
-        Region spacer = new Region();
-        spacer.setMinWidth(56);
-        wrapper.getChildren().addAll(spacer, messageBlock);
-        HBox.setHgrow(messageBlock, Priority.ALWAYS);
-        
-        globalMessagesContainer.getChildren().add(wrapper);
+    private void flushGlobalItems() {
+        if (pendingGlobalItems.isEmpty()) {
+            return;
+        }
+        globalMessages.addAll(pendingGlobalItems);
+        pendingGlobalItems.clear();
+        trimMessages(globalMessages);
+        scrollGlobalMessagesToBottom();
+    }
+    
+    /**
+     * Past MAX_LIST_MESSAGES, drop the oldest rows in one change of at least LIST_TRIM_BATCH
+     */
+    private static void trimMessages(ObservableList<ChatMessageItem> messages) {
+        if (messages.size() > MAX_LIST_MESSAGES) {
+            int excess = messages.size() - MAX_LIST_MESSAGES;
+            messages.remove(0, Math.max(excess, LIST_TRIM_BATCH));
+        }
     }
     
     /**
      * Scroll global messages to bottom
      */
     private void scrollGlobalMessagesToBottom() {
-        Platform.runLater(() -> {
-            if (globalMessagesScrollPane != null) {
-                globalMessagesScrollPane.setVvalue(1.0);
-            }
-        });
+        if (globalMessagesList != null && !globalMessages.isEmpty()) {
+            globalMessagesList.scrollTo(globalMessages.size() - 1);
+        }
     }
 
     private void setupMessageListener() {
+        // Show the local cache first; RESUME only fetched what is newer
+        List<ClientEvent.ChatMessage> cached = client.getCachedHistory();
+        if (!cached.isEmpty()) {
+            System.out.println("DEBUG: Replaying " + cached.size() + " cached messages");
+            uiDispatcher.post(() -> cached.forEach(this::onChatMessage));
+        }
+        
+        // Lines are decoded on the network thread; handlers run on the FX thread in dispatcher batches
+        ClientEventBus events = client.getEvents();
+        events.subscribe(ClientEvent.ChatMessage.class, uiDispatcher::post, this::onChatMessage);
+        events.subscribe(ClientEvent.PresenceDelta.class, uiDispatcher::post, this::onPresenceDelta);
+        events.subscribe(ClientEvent.FriendEvent.class, uiDispatcher::post, this::onFriendEvent);
+        events.subscribe(ClientEvent.FriendsList.class, uiDispatcher::post, e -> applyFriendsList(e.friends));
+        events.subscribe(ClientEvent.FriendshipStatuses.class, uiDispatcher::post, e -> friendshipCache.putAll(e.statuses));
+        events.subscribe(ClientEvent.Profiles.class, uiDispatcher::post, e -> profileCache.putAll(e.profiles));
+        events.subscribe(ClientEvent.Notice.class, uiDispatcher::post, e -> {
+            // System message - display in Discord style
+            appendGlobalItem(ChatMessageItem.notice(e.text));
+            messageCount++;
+        });
+        
         client.setMessageListener(new Client.MessageListener() {
-            @Override
-            public void onMessageReceived(String message) {
-                Platform.runLater(() -> displayMessage(message));
-            }
-
             @Override
             public void onConnectionLost() {
                 Platform.runLater(() -> {
-                    displayMessage("Connection lost!");
+                    appendGlobalItem(ChatMessageItem.notice("Connection lost!"));
                     messageInput.setDisable(true);
                     sendButton.setDisable(true);
                 });
             }
+
+            @Override
+            public void onReconnecting(int attempt, long delayMs) {
+                // A blip that the first attempt fixes stays invisible
+                if (attempt == 2) {
+                    Platform.runLater(() -> showTemporaryMessage("🔄 Connection lost, reconnecting..."));
+                }
+            }
+
+            @Override
+            public void onReconnected(int attempts) {
+                if (attempts > 1) {
+                    Platform.runLater(() -> showTemporaryMessage("✅ Reconnected"));
+                }
+            }
         });
     }
 
@@ -1637,135 +1174,43 @@ public class ChatWindow {
         }
     }
 
-    private void displayMessage(String message) {
-        // Handle USER_LIST updates
-        if (message.startsWith("USER_LIST")) {
-            System.out.println("DEBUG: Received USER_LIST, calling updateUserList()");
-            updateUserList(message);
-            return;
-        }
-        
-        // Handle message history
-        if (message.startsWith("HISTORY ")) {
-            displayHistoryMessage(message);
-            return;
-        }
-        
-        // Handle friend request notifications
-        if (message.startsWith("FRIEND_REQUEST_RECEIVED ")) {
-            handleFriendRequestReceived(message);
-            return;
-        }
-        
-        if (message.startsWith("FRIEND_REQUEST_SENT")) {
-            Platform.runLater(() -> showTemporaryMessage("✅ Friend request sent!"));
-            return;
-        }
+    /**
+     * Live, history or cached chat message; runs on the FX thread inside a dispatcher batch
+     */
+    private void onChatMessage(ClientEvent.ChatMessage msg) {
+        indexMessage(msg);
         
-        if (message.startsWith("FRIEND_REQUEST_FAILED")) {
-            // Parse the failure reason
-            String[] parts = message.split(" ", 3);
-            if (parts.length >= 3) {
-                String reason = parts[2];
-                Platform.runLater(() -> showTemporaryMessage("❌ " + reason));
-            } else {
-                Platform.runLater(() -> showTemporaryMessage("❌ Friend request failed"));
-            }
+        if (msg.isGlobal()) {
+            // Global message - display in Discord-style chat
+            addGlobalChatMessage(msg.sender, msg.text, msg.time);
+            messageCount++;
             return;
         }
         
-        if (message.startsWith("FRIEND_ACCEPTED ")) {
-            handleFriendAccepted(message);
-            return;
-        }
+        // Private message - determine the other user
+        String otherUser = msg.sender.equals(client.getUsername()) ? msg.recipient : msg.sender;
+        boolean isOwnMessage = msg.sender.equals(client.getUsername());
         
-        if (message.startsWith("FRIEND_REJECTED")) {
-            Platform.runLater(() -> showTemporaryMessage("Friend request was rejected"));
-            return;
-        }
+        // ✅ Store in history (for both sent and received messages)
+        storePrivateMessage(otherUser, msg.sender, msg.text, msg.time, isOwnMessage);
         
-        if (message.startsWith("FRIENDSHIP_STATUS ")) {
-            handleFriendshipStatus(message);
-            return;
+        // Add to DM contacts if not there
+        if (!dmContacts.contains(otherUser)) {
+            dmContacts.add(otherUser);
+            indexContact(otherUser);
         }
         
-        if (message.startsWith("PENDING_REQUEST ")) {
-            handlePendingRequest(message);
+        // History is only stored; our own messages were displayed when sent
+        if (msg.fromHistory || isOwnMessage) {
             return;
         }
         
-        if (message.startsWith("FRIENDS_LIST ")) {
-            handleFriendsList(message);
-            return;
-        }
-
-        // Parse message format: MESSAGE <sender> <recipient> <text>
-        if (message.startsWith("MESSAGE ")) {
-            String[] parts = message.split(" ", 4);
-            if (parts.length >= 4) {
-                String sender = parts[1];
-                String recipient = parts[2];
-                String text = parts[3];
-                
-                String timestamp = java.time.LocalTime.now().format(
-                        java.time.format.DateTimeFormatter.ofPattern("HH:mm"));
-                
-                // Check if this is a private message
-                if (!recipient.equals("all")) {
-                    // Private message - determine the other user
-                    String otherUser = sender.equals(client.getUsername()) ? recipient : sender;
-                    boolean isOwnMessage = sender.equals(client.getUsername());
-                    
-                    // ✅ Store in history (for both sent and received messages)
-                    storePrivateMessage(otherUser, sender, text, timestamp, isOwnMessage);
-                    
-                    // Skip displaying if it's our own message (already displayed when sent)
-                    if (isOwnMessage) {
-                        return;
-                    }
-                    
-                    // Add to DM contacts if not there
-                    if (!dmContacts.contains(otherUser)) {
-                        dmContacts.add(otherUser);
-                    }
-                    
-                    // If private chat with this user is open, display it
-                    if (currentPrivateChatUser != null && currentPrivateChatUser.equals(otherUser)) {
-                        Platform.runLater(() -> addPrivateChatMessage(sender, text, false));
-                    } else {
-                        // Show notification for new private message
-                        Platform.runLater(() -> showTemporaryMessage("🔔 New message from " + sender));
-                    }
-                    return;
-                }
-                
-                // Global message - display in Discord-style chat
-                // Limit message history to prevent memory issues
-                if (globalMessagesContainer != null && globalMessagesContainer.getChildren().size() >= MAX_MESSAGES) {
-                    globalMessagesContainer.getChildren().remove(0);
-                }
-                
-                // Add Discord-style message
-                Platform.runLater(() -> addGlobalChatMessage(sender, text));
-                messageCount++;
-            }
+        // If private chat with this user is open, display it
+        if (currentPrivateChatUser != null && currentPrivateChatUser.equals(otherUser)) {
+            addPrivateChatMessage(msg.sender, msg.text, msg.time, false);
         } else {
-            // System message - display in Discord style
-            Platform.runLater(() -> {
-                if (globalMessagesContainer != null) {
-                    // System message styling
-                    Label systemMsg = new Label(message);
-                    systemMsg.setWrapText(true);
-                    systemMsg.setStyle(
-                        "-fx-text-fill: " + DISCORD_TEXT_MUTED + "; " +
-                        "-fx-font-size: 12px; " +
-                        "-fx-font-style: italic; " +
-                        "-fx-padding: 5 15;");
-                    globalMessagesContainer.getChildren().add(systemMsg);
-                    scrollGlobalMessagesToBottom();
-                }
-            });
-            messageCount++;
+            // Show notification for new private message
+            showTemporaryMessage("🔔 New message from " + msg.sender);
         }
     }
     
@@ -1773,13 +1218,12 @@ public class ChatWindow {
      * Store a private message in history
      */
     private void storePrivateMessage(String otherUser, String sender, String text, String timestamp, boolean isOwnMessage) {
-        privateMessageHistory.computeIfAbsent(otherUser, k -> new ArrayList<>())
-            .add(new PrivateMessageData(sender, text, timestamp, isOwnMessage));
+        Deque<PrivateMessageData> history = privateMessageHistory.computeIfAbsent(otherUser, k -> new ArrayDeque<>());
+        history.addLast(new PrivateMessageData(sender, text, timestamp, isOwnMessage));
         
         // Limit history size
-        List<PrivateMessageData> history = privateMessageHistory.get(otherUser);
         if (history.size() > MAX_MESSAGES) {
-            history.remove(0);
+            history.removeFirst();
         }
     }
     
@@ -1787,53 +1231,57 @@ public class ChatWindow {
      * Load stored messages when opening a private chat
      */
     private void loadStoredPrivateMessages(String username) {
-        List<PrivateMessageData> history = privateMessageHistory.get(username);
+        Deque<PrivateMessageData> history = privateMessageHistory.get(username);
         if (history != null && !history.isEmpty()) {
             for (PrivateMessageData msg : history) {
-                addPrivateChatMessage(msg.sender, msg.text, msg.isOwnMessage);
+                addPrivateChatMessage(msg.sender, msg.text, msg.timestamp, msg.isOwnMessage);
             }
         }
     }
 
-    private void updateUserList(String message) {
-        // Format: USER_LIST;user1|device1|ip1|status1;user2|device2|ip2|status2; ...
-        Platform.runLater(() -> {
-            try {
-                System.out.println("DEBUG: Parsing USER_LIST message: " + message);
-                String[] parts = message.split(";");
-                System.out.println("DEBUG: Found " + (parts.length - 1) + " user entries");
-
-                Map<String, Label> newUserLabels = new HashMap<>();
-                
-                // Skip first part ("USER_LIST")
-                for (int i = 1; i < parts.length; i++) {
-                    String part = parts[i].trim();
-                    if (!part.isEmpty()) {
-                        System.out.println("DEBUG: Parsing user entry: " + part);
-                        UserInfo userInfo = UserInfo.fromString(part);
-                        if (userInfo != null) {
-                            // ✅ Skip our own username from the list
-                            if (!userInfo.getUsername().equals(client.getUsername())) {
-                                Label userLabel = createUserLabel(userInfo);
-                                newUserLabels.put(userInfo.getUsername(), userLabel);
-                                System.out.println("DEBUG: Added user: " + userInfo.getUsername());
-                            }
-                        } else {
-                            System.err.println("DEBUG: Failed to parse user entry: " + part);
-                        }
-                    }
+    /**
+     * Apply a USER_LIST diff computed by the decoder
+     * Departed users go in one removeAll, changed rows are replaced in place,
+     * new users go in one addAll. Unchanged rows are not touched, so the
+     * ListView keeps their cells as they are.
+     */
+    private void onPresenceDelta(ClientEvent.PresenceDelta delta) {
+        if (!delta.removed.isEmpty()) {
+            List<UserInfo> departed = new ArrayList<>(delta.removed.size());
+            for (UserInfo user : users) {
+                if (delta.removed.contains(user.getUsername())) {
+                    departed.add(user);
                 }
-
-                userLabels.clear();
-                userLabels.putAll(newUserLabels);
-                userListContainer.getChildren().setAll(newUserLabels.values());
-                
-                System.out.println("DEBUG: User list updated successfully: " + userLabels.size() + " users");
-            } catch (Exception e) {
-                System.err.println("Error updating user list: " + e.getMessage());
-                e.printStackTrace();
             }
-        });
+            users.removeAll(departed);
+        }
+        
+        if (!delta.changed.isEmpty()) {
+            for (int i = 0; i < users.size(); i++) {
+                UserInfo update = delta.changed.get(users.get(i).getUsername());
+                if (update != null) {
+                    users.set(i, update);
+                }
+            }
+        }
+        
+        if (!delta.added.isEmpty()) {
+            users.addAll(delta.added);
+            
+            // Prefetch so opening a profile needs no round trip
+            List<String> usernames = new ArrayList<>(delta.added.size());
+            for (UserInfo user : delta.added) {
+                usernames.add(user.getUsername());
+                indexContact(user.getUsername());
+            }
+            prefetchProfiles(usernames);
+        }
+        
+        System.out.println("DEBUG: User list updated: " + users.size() + " users (+" + delta.added.size() +
+            " ~" + delta.changed.size() + " -" + delta.removed.size() + ")");
+        
+        // Cached history and the first user list are in: the window is usable
+        StartupMetrics.markOnNextFrame(stage.getScene(), StartupMetrics.CHAT_INTERACTIVE);
     }
 
     /**
@@ -1845,116 +1293,25 @@ public class ChatWindow {
         }
     }
 
-    private Label createUserLabel(UserInfo userInfo) {
-        // Status indicator with Discord colors
-        String statusIcon;
-        String statusColor;
-        switch (userInfo.getStatus()) {
-            case ONLINE:
-                statusIcon = "●"; // Solid circle
-                statusColor = DISCORD_ONLINE; // Green
-                break;
-            case INACTIVE:
-                statusIcon = "●";
-                statusColor = "#f0b232"; // Orange/Yellow
-                break;
-            case OFFLINE:
-                statusIcon = "●";
-                statusColor = DISCORD_TEXT_MUTED; // Gray
-                break;
-            default:
-                statusIcon = "●";
-                statusColor = DISCORD_TEXT_MUTED;
-        }
-
-        // Device icon
-        String deviceIcon = getDeviceIcon(userInfo.getDevice());
-
-        VBox userBox = new VBox(2);
-
-        HBox mainLine = new HBox(8);
-        mainLine.setAlignment(Pos.CENTER_LEFT);
-
-        Label statusLabel = new Label(statusIcon);
-        statusLabel.setStyle(
-                "-fx-font-size: 10px; " +
-                "-fx-text-fill: " + statusColor + ";");
-
-        Label nameLabel = new Label(deviceIcon + " " + userInfo.getUsername());
-        nameLabel.setStyle(
-                "-fx-font-size: 14px; " +
-                "-fx-font-weight: 500; " +
-                "-fx-text-fill: " + DISCORD_TEXT_NORMAL + ";");
-
-        mainLine.getChildren().addAll(statusLabel, nameLabel);
-
-        Label ipLabel = new Label("   " + userInfo.getIpAddress());
-        ipLabel.setStyle(
-                "-fx-font-size: 10px; " +
-                "-fx-text-fill: " + DISCORD_TEXT_MUTED + ";");
-
-        userBox.getChildren().addAll(mainLine, ipLabel);
-
-        Label container = new Label();
-        container.setGraphic(userBox);
-        container.setPrefWidth(200);
-        container.setStyle(
-                "-fx-background-color: transparent; " +
-                "-fx-background-radius: 4px; " +
-                "-fx-padding: 6px 8px; " +
-                "-fx-cursor: hand;");
-        
-        // Click to show user profile (with friend request option)
-        final String username = userInfo.getUsername();
-        container.setOnMouseClicked(e -> {
-            if (e.getClickCount() == 1) {
-                // Single click - show profile
-                System.out.println("Showing profile for: " + username);
-                showUserProfile(username);
-            } else if (e.getClickCount() == 2) {
-                // Double click - open private chat (only if friends)
-                if (isFriend(username)) {
-                    System.out.println("Opening private chat with friend: " + username);
-                    openPrivateChat(username);
-                } else {
-                    showTemporaryMessage("⚠️ You must be friends to send messages!");
-                }
-            }
-        });
-        
-        // Hover effect with Discord dark theme
-        container.setOnMouseEntered(e -> container.setStyle(
-                "-fx-background-color: " + DISCORD_BG_HOVER + "; " +
-                "-fx-background-radius: 4px; " +
-                "-fx-padding: 6px 8px; " +
-                "-fx-cursor: hand;"));
-        container.setOnMouseExited(e -> container.setStyle(
-                "-fx-background-color: transparent; " +
-                "-fx-background-radius: 4px; " +
-                "-fx-padding: 6px 8px; " +
-                "-fx-cursor: hand;"));
-
-        return container;
+    private void onUserSelected(String username) {
+        System.out.println("Showing profile for: " + username);
+        showUserProfile(username);
     }
 
-    private String getDeviceIcon(String device) {
-        if (device == null)
-            return "💻";
-        String lower = device.toLowerCase();
-        if (lower.contains("windows"))
-            return "🪟";
-        if (lower.contains("mac") || lower.contains("darwin"))
-            return "🍎";
-        if (lower.contains("linux"))
-            return "🐧";
-        if (lower.contains("android"))
-            return "📱";
-        if (lower.contains("iphone") || lower.contains("ios"))
-            return "📱";
-        return "💻";
+    private void onUserOpened(String username) {
+        // Double click - open private chat (only if friends)
+        if (isFriend(username)) {
+            System.out.println("Opening private chat with friend: " + username);
+            openPrivateChat(username);
+        } else {
+            showTemporaryMessage("⚠️ You must be friends to send messages!");
+        }
     }
 
-    private void startVideoCall() {
+    /**
+     * Start a call in a room: the general call, or the one of a private chat
+     */
+    private void startVideoCall(String room) {
         // ✓ Vérifier strictement si un appel est déjà en cours
         if (VideoCallManager.getInstance().isCallActive()) {
             VideoCallWindow existingCall = VideoCallManager.getInstance().getActiveCall();
@@ -1979,6 +1336,7 @@ public class ChatWindow {
                 videoPort,
                 audioPort
             );
+            newCallWindow.setSessionToken(client.getSessionToken());
             
             // Essayer de démarrer l'appel via le gestionnaire
             if (VideoCallManager.getInstance().startCall(newCallWindow)) {
@@ -1987,6 +1345,10 @@ public class ChatWindow {
                 // Mettre à jour la référence locale
                 this.videoCallWindow = newCallWindow;
                 
+                // Joined before the media connections so they start in the right room
+                client.joinCallRoom(room);
+                newCallWindow.setOnCallEnded(() -> client.leaveCallRoom(room));
+                
                 // ✅ show() appelle connect() - ne pas appeler deux fois !
                 newCallWindow.show();
                 
@@ -2011,35 +1373,27 @@ public class ChatWindow {
         VBox profileContainer = new VBox(20);
         profileContainer.setPadding(new Insets(40));
         profileContainer.setAlignment(Pos.TOP_CENTER);
-        profileContainer.setStyle("-fx-background-color: white;");
+        profileContainer.getStyleClass().add("panel-view");
         
         // Profile header
         Label profileIcon = new Label("👤");
-        profileIcon.setStyle("-fx-font-size: 80px;");
+        profileIcon.getStyleClass().addAll("panel-icon", "large");
         
         Label usernameLabel = new Label(client.getUsername());
-        usernameLabel.setStyle(
-            "-fx-font-size: 28px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-text-fill: #2c3e50;");
+        usernameLabel.getStyleClass().add("panel-title");
         
         // Get user account info
         VBox infoBox = new VBox(15);
         infoBox.setPadding(new Insets(30));
         infoBox.setMaxWidth(500);
-        infoBox.setStyle(
-            "-fx-background-color: #f8f9fa; " +
-            "-fx-background-radius: 15px; " +
-            "-fx-border-color: #e0e5ec; " +
-            "-fx-border-radius: 15px; " +
-            "-fx-border-width: 2px;");
+        infoBox.getStyleClass().add("panel-card");
         
         infoBox.getChildren().addAll(
             createInfoRow("🆔 Username", client.getUsername()),
             createInfoRow("🌐 Server", "Connected"),
             createInfoRow("📊 Status", "Online"),
             createInfoRow("💬 Messages", String.valueOf(messageCount)),
-            createInfoRow("👥 Online Users", String.valueOf(userLabels.size()))
+            createInfoRow("👥 Online Users", String.valueOf(users.size()))
         );
         
         // Action buttons
@@ -2047,29 +1401,18 @@ public class ChatWindow {
         actionButtons.setAlignment(Pos.CENTER);
         
         Button editProfileBtn = new Button("✏️ Edit Profile");
-        editProfileBtn.setStyle(
-            "-fx-background-color: #667eea; " +
-            "-fx-text-fill: white; " +
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-background-radius: 20px; " +
-            "-fx-padding: 10px 25px; " +
-            "-fx-cursor: hand;");
+        editProfileBtn.getStyleClass().addAll("pill-button", "primary");
         editProfileBtn.setOnAction(e -> {
             // TODO: Implement profile editing
             showTemporaryMessage("Profile editing coming soon!");
         });
         
         Button logoutBtn = new Button("🚪 Logout");
-        logoutBtn.setStyle(
-            "-fx-background-color: #e74c3c; " +
-            "-fx-text-fill: white; " +
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-background-radius: 20px; " +
-            "-fx-padding: 10px 25px; " +
-            "-fx-cursor: hand;");
-        logoutBtn.setOnAction(e -> shutdown());
+        logoutBtn.getStyleClass().addAll("pill-button", "danger");
+        logoutBtn.setOnAction(e -> {
+            AuthLoginWindow.forgetSession();
+            shutdown();
+        });
         
         actionButtons.getChildren().addAll(editProfileBtn, logoutBtn);
         
@@ -2090,26 +1433,18 @@ public class ChatWindow {
         VBox settingsContainer = new VBox(20);
         settingsContainer.setPadding(new Insets(40));
         settingsContainer.setAlignment(Pos.TOP_CENTER);
-        settingsContainer.setStyle("-fx-background-color: white;");
+        settingsContainer.getStyleClass().add("panel-view");
         
         Label settingsIcon = new Label("⚙️");
-        settingsIcon.setStyle("-fx-font-size: 60px;");
+        settingsIcon.getStyleClass().add("panel-icon");
         
         Label titleLabel = new Label("Settings");
-        titleLabel.setStyle(
-            "-fx-font-size: 28px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-text-fill: #2c3e50;");
+        titleLabel.getStyleClass().add("panel-title");
         
         VBox settingsBox = new VBox(15);
         settingsBox.setPadding(new Insets(30));
         settingsBox.setMaxWidth(600);
-        settingsBox.setStyle(
-            "-fx-background-color: #f8f9fa; " +
-            "-fx-background-radius: 15px; " +
-            "-fx-border-color: #e0e5ec; " +
-            "-fx-border-radius: 15px; " +
-            "-fx-border-width: 2px;");
+        settingsBox.getStyleClass().add("panel-card");
         
         settingsBox.getChildren().addAll(
             createSettingRow("🔔 Notifications", "Enabled"),
@@ -2121,10 +1456,7 @@ public class ChatWindow {
         );
         
         Label infoLabel = new Label("Settings customization coming in future updates");
-        infoLabel.setStyle(
-            "-fx-font-size: 12px; " +
-            "-fx-text-fill: #7f8c8d; " +
-            "-fx-font-style: italic;");
+        infoLabel.getStyleClass().add("panel-note");
         
         settingsContainer.getChildren().addAll(
             settingsIcon,
@@ -2144,16 +1476,10 @@ public class ChatWindow {
         row.setAlignment(Pos.CENTER_LEFT);
         
         Label labelText = new Label(label);
-        labelText.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-text-fill: #667eea; " +
-            "-fx-min-width: 150px;");
+        labelText.getStyleClass().add("info-label");
         
         Label valueText = new Label(value);
-        valueText.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-text-fill: #2c3e50;");
+        valueText.getStyleClass().add("info-value");
         
         row.getChildren().addAll(labelText, valueText);
         return row;
@@ -2168,20 +1494,13 @@ public class ChatWindow {
         row.setPadding(new Insets(5));
         
         Label labelText = new Label(label);
-        labelText.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: 500; " +
-            "-fx-text-fill: #2c3e50; " +
-            "-fx-min-width: 200px;");
+        labelText.getStyleClass().add("setting-label");
         
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
         
         Label valueText = new Label(value);
-        valueText.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-text-fill: #667eea; " +
-            "-fx-font-weight: bold;");
+        valueText.getStyleClass().add("setting-value");
         
         row.getChildren().addAll(labelText, spacer, valueText);
         return row;
@@ -2192,16 +1511,11 @@ public class ChatWindow {
      */
     private void showTemporaryMessage(String message) {
         Label tempLabel = new Label(message);
-        tempLabel.setStyle(
-            "-fx-background-color: #667eea; " +
-            "-fx-text-fill: white; " +
-            "-fx-padding: 15px 25px; " +
-            "-fx-background-radius: 10px; " +
-            "-fx-font-size: 14px;");
+        tempLabel.getStyleClass().add("toast");
         
         VBox overlay = new VBox(tempLabel);
         overlay.setAlignment(Pos.CENTER);
-        overlay.setStyle("-fx-background-color: rgba(0, 0, 0, 0.3);");
+        overlay.getStyleClass().addAll("overlay", "light");
         
         BorderPane root = (BorderPane) stage.getScene().getRoot();
         root.setCenter(overlay);
@@ -2220,6 +1534,7 @@ public class ChatWindow {
         new Thread(() -> {
             try {
                 System.out.println("Shutting down chat window...");
+                uiDispatcher.stop();
                 
                 // Close video call if open
                 if (videoCallWindow != null) {
@@ -2255,121 +1570,132 @@ public class ChatWindow {
     }
     
     /**
-     * Display a message from history with formatted timestamp
+     * Filter global chat user list based on search text
      */
-    private void displayHistoryMessage(String message) {
-        // Format: HISTORY <timestamp> <sender> <recipient> <text>
-        String[] parts = message.split(" ", 5);
-        if (parts.length >= 5) {
-            try {
-                String sender = parts[2];
-                String recipient = parts[3];
-                String text = parts[4];
-                
-                // ✅ CORRECTION: Only display global messages in global chat
-                // Private messages should not appear in global chat history
-                if (recipient.equals("all")) {
-                    // Add Discord-style message for history (global chat only)
-                    Platform.runLater(() -> addGlobalChatMessage(sender, text));
-                    messageCount++;
-                } else {
-                    // Private message from history - store it but don't display in global chat
-                    String timestamp = java.time.LocalTime.now().format(
-                        java.time.format.DateTimeFormatter.ofPattern("HH:mm"));
-                    
-                    // Determine the other user
-                    String otherUser = sender.equals(client.getUsername()) ? recipient : sender;
-                    boolean isOwnMessage = sender.equals(client.getUsername());
-                    
-                    // Store in private message history
-                    storePrivateMessage(otherUser, sender, text, timestamp, isOwnMessage);
-                    
-                    // Add to DM contacts if not there
-                    if (!dmContacts.contains(otherUser)) {
-                        dmContacts.add(otherUser);
-                    }
-                }
-                
-            } catch (Exception e) {
-                System.err.println("Failed to parse history message: " + e.getMessage());
-            }
+    private void filterGlobalUserList(String searchText) {
+        Set<String> matches = searchContacts(searchText);
+        // Show all users when search is empty, otherwise only matching users
+        visibleUsers.setPredicate(matches == null ? null : user -> matches.contains(user.getUsername()));
+    }
+    
+    /**
+     * Filter DM contact list based on search text
+     */
+    private void filterDmList(String searchText) {
+        if (dmListContainer == null) return;
+        
+        Set<String> matches = searchContacts(searchText);
+        for (javafx.scene.Node entry : dmListContainer.getChildren()) {
+            boolean visible = matches == null || matches.contains(entry.getUserData());
+            entry.setVisible(visible);
+            entry.setManaged(visible);
         }
     }
     
     /**
-     * Filter global chat user list based on search text
+     * Run a search when the user pauses typing, not on every keystroke
      */
-    private void filterGlobalUserList(String searchText) {
-        Platform.runLater(() -> {
-            userListContainer.getChildren().clear();
-            
-            if (searchText.isEmpty()) {
-                // Show all users when search is empty
-                userListContainer.getChildren().setAll(userLabels.values());
-            } else {
-                // Show only matching users
-                for (Map.Entry<String, Label> entry : userLabels.entrySet()) {
-                    String username = entry.getKey();
-                    if (username.toLowerCase().contains(searchText)) {
-                        userListContainer.getChildren().add(entry.getValue());
-                    }
-                }
+    private void onSearchInput(TextField field, Consumer<String> search) {
+        PauseTransition debounce = new PauseTransition(SEARCH_DEBOUNCE);
+        debounce.setOnFinished(e -> search.accept(field.getText()));
+        field.textProperty().addListener((obs, oldVal, newVal) -> debounce.playFromStart());
+        field.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ESCAPE) {
+                field.clear();
             }
         });
     }
     
+    private void indexContact(String username) {
+        if (!contactIndex.contains(username)) {
+            contactIndex.put(username, username);
+        }
+    }
+    
     /**
-     * Filter DM contact list based on search text
+     * Index a chat message; the oldest ones are dropped past the cap
      */
-    private void filterDmList(String searchText) {
-        if (dmListContainer == null) return;
+    private void indexMessage(ClientEvent.ChatMessage msg) {
+        messageIndex.put(msg, msg.text);
+        indexedMessages.addLast(msg);
+        if (indexedMessages.size() > MAX_INDEXED_MESSAGES) {
+            messageIndex.remove(indexedMessages.removeFirst());
+        }
+    }
+    
+    /**
+     * Usernames matching the query, or null for an empty query (no filter)
+     */
+    private Set<String> searchContacts(String query) {
+        if (query.trim().isEmpty()) {
+            return null;
+        }
+        Set<String> matches = new HashSet<>();
+        for (SearchIndex.Hit<String> hit : contactIndex.search(query, contactIndex.size())) {
+            matches.add(hit.item);
+        }
+        return matches;
+    }
+    
+    /**
+     * Search received messages and show the hits under the search field
+     */
+    private void searchMessages(TextField field, String query) {
+        if (query.trim().isEmpty()) {
+            if (searchPopup != null) {
+                searchPopup.hide();
+            }
+            return;
+        }
         
-        Platform.runLater(() -> {
-            // Store all DM entries temporarily
-            List<javafx.scene.Node> allEntries = new ArrayList<>(dmListContainer.getChildren());
-            dmListContainer.getChildren().clear();
-            
-            if (searchText.isEmpty()) {
-                // Show all DM contacts when search is empty
-                dmListContainer.getChildren().setAll(allEntries);
-            } else {
-                // Filter DM contacts
-                for (javafx.scene.Node node : allEntries) {
-                    if (node instanceof HBox) {
-                        HBox entry = (HBox) node;
-                        // Find the username label (second child after avatar)
-                        if (entry.getChildren().size() >= 2) {
-                            javafx.scene.Node secondChild = entry.getChildren().get(1);
-                            if (secondChild instanceof Label) {
-                                Label nameLabel = (Label) secondChild;
-                                String username = nameLabel.getText();
-                                if (username.toLowerCase().contains(searchText)) {
-                                    dmListContainer.getChildren().add(entry);
-                                }
-                            }
-                        }
-                    }
-                }
+        long start = System.nanoTime();
+        List<SearchIndex.Hit<ClientEvent.ChatMessage>> hits = messageIndex.search(query, MAX_SEARCH_RESULTS);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        if (elapsedMs > SEARCH_BUDGET_MS) {
+            System.err.println("WARNING: Slow search \"" + query + "\": " + elapsedMs + " ms over " +
+                messageIndex.size() + " messages");
+        }
+        
+        if (searchPopup == null) {
+            buildSearchPopup();
+        }
+        searchResults.getItems().setAll(hits);
+        searchResults.setPlaceholder(new Label("No messages match \"" + query.trim() + "\""));
+        searchResults.setPrefHeight(hits.isEmpty() ? 48 : Math.min(hits.size() * 58 + 4, 400));
+        
+        Bounds bounds = field.localToScreen(field.getBoundsInLocal());
+        if (bounds != null) {
+            searchPopup.show(field, bounds.getMaxX() - searchResults.getPrefWidth(), bounds.getMaxY() + 4);
+        }
+    }
+    
+    private void buildSearchPopup() {
+        searchResults = new ListView<>();
+        searchResults.setCellFactory(list -> new SearchResultCell(client.getUsername()));
+        searchResults.setPrefWidth(380);
+        searchResults.getStyleClass().add("search-popup");
+        searchResults.getStylesheets().add(STYLESHEET);
+        searchResults.setOnMouseClicked(e -> {
+            SearchIndex.Hit<ClientEvent.ChatMessage> hit = searchResults.getSelectionModel().getSelectedItem();
+            if (hit != null) {
+                searchPopup.hide();
+                openConversation(hit.item);
             }
         });
+        
+        searchPopup = new Popup();
+        searchPopup.setAutoHide(true);
+        searchPopup.getContent().add(searchResults);
     }
     
     /**
-     * Handle incoming friend request
+     * Go to the conversation a message belongs to
      */
-    private void handleFriendRequestReceived(String message) {
-        // Format: FRIEND_REQUEST_RECEIVED <requestId> <senderUsername>
-        String[] parts = message.split(" ", 3);
-        if (parts.length >= 3) {
-            String requestId = parts[1];
-            String senderUsername = parts[2];
-            
-            PendingFriendRequest request = new PendingFriendRequest(requestId, senderUsername);
-            pendingFriendRequests.add(request);
-            
-            Platform.runLater(() -> {
-                showFriendRequestNotification(senderUsername, requestId);
-            });
+    private void openConversation(ClientEvent.ChatMessage msg) {
+        if (msg.isGlobal()) {
+            switchView("chat");
+        } else {
+            openPrivateChat(msg.sender.equals(client.getUsername()) ? msg.recipient : msg.sender);
         }
     }
     
@@ -2380,21 +1706,17 @@ public class ChatWindow {
         VBox notification = new VBox(15);
         notification.setAlignment(Pos.CENTER);
         notification.setPadding(new Insets(30));
-        notification.setStyle(
-            "-fx-background-color: white; " +
-            "-fx-background-radius: 15px; " +
-            "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.3), 20, 0, 0, 5);"
-        );
+        notification.getStyleClass().add("dialog");
         notification.setMaxWidth(400);
         
         Label icon = new Label("👤");
-        icon.setStyle("-fx-font-size: 48px;");
+        icon.getStyleClass().add("dialog-icon");
         
         Label title = new Label("Friend Request");
-        title.setStyle("-fx-font-size: 20px; -fx-font-weight: bold; -fx-text-fill: #667eea;");
+        title.getStyleClass().add("dialog-title");
         
         Label message = new Label(senderUsername + " wants to be your friend!");
-        message.setStyle("-fx-font-size: 14px; -fx-text-fill: #333;");
+        message.getStyleClass().add("dialog-text");
         message.setWrapText(true);
         message.setAlignment(Pos.CENTER);
         
@@ -2402,15 +1724,7 @@ public class ChatWindow {
         buttons.setAlignment(Pos.CENTER);
         
         Button acceptBtn = new Button("✓ Accept");
-        acceptBtn.setStyle(
-            "-fx-background-color: #23a55a; " +
-            "-fx-text-fill: white; " +
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-padding: 10 25; " +
-            "-fx-background-radius: 8; " +
-            "-fx-cursor: hand;"
-        );
+        acceptBtn.getStyleClass().addAll("dialog-button", "success");
         acceptBtn.setOnAction(e -> {
             client.acceptFriendRequest(requestId);
             pendingFriendRequests.removeIf(r -> r.requestId.equals(requestId));
@@ -2418,15 +1732,7 @@ public class ChatWindow {
         });
         
         Button rejectBtn = new Button("✕ Reject");
-        rejectBtn.setStyle(
-            "-fx-background-color: #ed4245; " +
-            "-fx-text-fill: white; " +
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-padding: 10 25; " +
-            "-fx-background-radius: 8; " +
-            "-fx-cursor: hand;"
-        );
+        rejectBtn.getStyleClass().addAll("dialog-button", "danger");
         rejectBtn.setOnAction(e -> {
             client.rejectFriendRequest(requestId);
             pendingFriendRequests.removeIf(r -> r.requestId.equals(requestId));
@@ -2438,7 +1744,7 @@ public class ChatWindow {
         
         VBox overlay = new VBox(notification);
         overlay.setAlignment(Pos.CENTER);
-        overlay.setStyle("-fx-background-color: rgba(0, 0, 0, 0.5);");
+        overlay.getStyleClass().add("overlay");
         
         BorderPane root = (BorderPane) stage.getScene().getRoot();
         root.setCenter(overlay);
@@ -2450,66 +1756,56 @@ public class ChatWindow {
     }
     
     /**
-     * Handle friend request accepted
-     */
-    private void handleFriendAccepted(String message) {
-        // Format: FRIEND_ACCEPTED <username>
-        String[] parts = message.split(" ", 2);
-        if (parts.length >= 2) {
-            String friendUsername = parts[1];
-            friendsList.add(friendUsername);
-            friendshipCache.put(friendUsername, true);
-            
-            Platform.runLater(() -> {
-                showTemporaryMessage("🎉 You are now friends with " + friendUsername + "!");
-            });
-        }
-    }
-    
-    /**
-     * Handle friendship status response
+     * Fetch friendship status and profiles for the given users in one round trip
      */
-    private void handleFriendshipStatus(String message) {
-        // Format: FRIENDSHIP_STATUS <user1> <user2> <true/false>
-        String[] parts = message.split(" ");
-        if (parts.length >= 4) {
-            String user2 = parts[2];
-            boolean areFriends = Boolean.parseBoolean(parts[3]);
-            friendshipCache.put(user2, areFriends);
+    private void prefetchProfiles(List<String> usernames) {
+        if (client != null && client.isConnected() && !usernames.isEmpty()) {
+            client.checkFriendships(usernames);
+            client.requestProfiles(usernames);
         }
     }
     
     /**
-     * Handle pending friend request
+     * Friend request and friendship notifications
      */
-    private void handlePendingRequest(String message) {
-        // Format: PENDING_REQUEST <requestId> <senderUsername>
-        String[] parts = message.split(" ", 3);
-        if (parts.length >= 3) {
-            String requestId = parts[1];
-            String senderUsername = parts[2];
-            PendingFriendRequest request = new PendingFriendRequest(requestId, senderUsername);
-            if (!pendingFriendRequests.contains(request)) {
-                pendingFriendRequests.add(request);
-            }
+    private void onFriendEvent(ClientEvent.FriendEvent event) {
+        switch (event.type) {
+            case REQUEST_RECEIVED:
+                pendingFriendRequests.add(new PendingFriendRequest(event.requestId, event.username));
+                showFriendRequestNotification(event.username, event.requestId);
+                break;
+            case PENDING_REQUEST:
+                PendingFriendRequest request = new PendingFriendRequest(event.requestId, event.username);
+                if (!pendingFriendRequests.contains(request)) {
+                    pendingFriendRequests.add(request);
+                }
+                break;
+            case REQUEST_SENT:
+                showTemporaryMessage("✅ Friend request sent!");
+                break;
+            case REQUEST_FAILED:
+                showTemporaryMessage(event.reason != null ? "❌ " + event.reason : "❌ Friend request failed");
+                break;
+            case ACCEPTED:
+                friendsList.add(event.username);
+                indexContact(event.username);
+                friendshipCache.put(event.username, true);
+                showTemporaryMessage("🎉 You are now friends with " + event.username + "!");
+                break;
+            case REJECTED:
+                showTemporaryMessage("Friend request was rejected");
+                break;
         }
     }
     
-    /**
-     * Handle friends list response
-     */
-    private void handleFriendsList(String message) {
-        // Format: FRIENDS_LIST <username> <friend1> <friend2> ...
-        String[] parts = message.split(" ");
-        if (parts.length >= 2) {
-            friendsList.clear();
-            for (int i = 2; i < parts.length; i++) {
-                String friend = parts[i];
-                friendsList.add(friend);
-                friendshipCache.put(friend, true);
-            }
-            System.out.println("Updated friends list: " + friendsList);
+    private void applyFriendsList(List<String> friends) {
+        friendsList.clear();
+        for (String friend : friends) {
+            friendsList.add(friend);
+            indexContact(friend);
+            friendshipCache.put(friend, true);
         }
+        System.out.println("Updated friends list: " + friendsList);
     }
     
     /**
@@ -2529,97 +1825,76 @@ public class ChatWindow {
             return;
         }
         
-        // Check friendship status first
-        client.checkFriendship(username);
+        // Friendship and profile were prefetched with the user list
+        ClientEvent.Profile profile = profileCache.get(username);
+        if (profile == null) {
+            prefetchProfiles(Collections.singletonList(username));
+        }
         
-        // Wait a bit for response
-        new Thread(() -> {
-            try {
-                Thread.sleep(200);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            
-            Platform.runLater(() -> {
-                VBox profileDialog = new VBox(20);
-                profileDialog.setAlignment(Pos.CENTER);
-                profileDialog.setPadding(new Insets(30));
-                profileDialog.setStyle(
-                    "-fx-background-color: white; " +
-                    "-fx-background-radius: 15px; " +
-                    "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.3), 20, 0, 0, 5);"
-                );
-                profileDialog.setMaxWidth(350);
-                
-                Label avatar = new Label(getAvatarEmoji(username));
-                avatar.setStyle("-fx-font-size: 64px;");
-                
-                Label nameLabel = new Label(username);
-                nameLabel.setStyle("-fx-font-size: 24px; -fx-font-weight: bold; -fx-text-fill: #333;");
-                
-                HBox buttons = new HBox(10);
-                buttons.setAlignment(Pos.CENTER);
-                
-                if (isFriend(username)) {
-                    // Already friends - show message button
-                    Button messageBtn = new Button("💬 Send Message");
-                    messageBtn.setStyle(
-                        "-fx-background-color: #5865f2; " +
-                        "-fx-text-fill: white; " +
-                        "-fx-font-size: 14px; " +
-                        "-fx-padding: 10 20; " +
-                        "-fx-background-radius: 8; " +
-                        "-fx-cursor: hand;"
-                    );
-                    messageBtn.setOnAction(e -> {
-                        openPrivateChat(username);
-                        closeNotification();
-                    });
-                    buttons.getChildren().add(messageBtn);
-                } else {
-                    // Not friends - show friend request button
-                    Button friendRequestBtn = new Button("➕ Add Friend");
-                    friendRequestBtn.setStyle(
-                        "-fx-background-color: #23a55a; " +
-                        "-fx-text-fill: white; " +
-                        "-fx-font-size: 14px; " +
-                        "-fx-padding: 10 20; " +
-                        "-fx-background-radius: 8; " +
-                        "-fx-cursor: hand;"
-                    );
-                    friendRequestBtn.setOnAction(e -> {
-                        client.sendFriendRequest(username);
-                        closeNotification();
-                        showTemporaryMessage("Friend request sent to " + username);
-                    });
-                    buttons.getChildren().add(friendRequestBtn);
-                }
-                
-                Button closeBtn = new Button("Close");
-                closeBtn.setStyle(
-                    "-fx-background-color: #4f545c; " +
-                    "-fx-text-fill: white; " +
-                    "-fx-font-size: 14px; " +
-                    "-fx-padding: 10 20; " +
-                    "-fx-background-radius: 8; " +
-                    "-fx-cursor: hand;"
-                );
-                closeBtn.setOnAction(e -> closeNotification());
-                buttons.getChildren().add(closeBtn);
-                
-                profileDialog.getChildren().addAll(avatar, nameLabel, buttons);
-                
-                VBox overlay = new VBox(profileDialog);
-                overlay.setAlignment(Pos.CENTER);
-                overlay.setStyle("-fx-background-color: rgba(0, 0, 0, 0.5);");
-                
-                BorderPane root = (BorderPane) stage.getScene().getRoot();
-                root.setCenter(overlay);
+        VBox profileDialog = new VBox(20);
+        profileDialog.setAlignment(Pos.CENTER);
+        profileDialog.setPadding(new Insets(30));
+        profileDialog.getStyleClass().add("dialog");
+        profileDialog.setMaxWidth(350);
+        
+        Label avatar = new Label(getAvatarEmoji(username));
+        avatar.getStyleClass().addAll("dialog-icon", "large");
+        
+        Label nameLabel = new Label(username);
+        nameLabel.getStyleClass().addAll("dialog-title", "dark");
+        
+        VBox details = new VBox(4);
+        details.setAlignment(Pos.CENTER);
+        if (profile != null) {
+            Label fullNameLabel = new Label(profile.fullName);
+            fullNameLabel.getStyleClass().add("dialog-text");
+            Label statsLabel = new Label(profile.friendCount + " friends · " +
+                                         profile.mutualFriends + " mutual");
+            statsLabel.getStyleClass().add("dialog-note");
+            details.getChildren().addAll(fullNameLabel, statsLabel);
+        }
+        
+        HBox buttons = new HBox(10);
+        buttons.setAlignment(Pos.CENTER);
+        
+        if (isFriend(username)) {
+            // Already friends - show message button
+            Button messageBtn = new Button("💬 Send Message");
+            messageBtn.getStyleClass().addAll("dialog-button", "brand");
+            messageBtn.setOnAction(e -> {
+                openPrivateChat(username);
+                closeNotification();
             });
-        }).start();
+            buttons.getChildren().add(messageBtn);
+        } else {
+            // Not friends - show friend request button
+            Button friendRequestBtn = new Button("➕ Add Friend");
+            friendRequestBtn.getStyleClass().addAll("dialog-button", "success");
+            friendRequestBtn.setOnAction(e -> {
+                client.sendFriendRequest(username);
+                closeNotification();
+                showTemporaryMessage("Friend request sent to " + username);
+            });
+            buttons.getChildren().add(friendRequestBtn);
+        }
+        
+        Button closeBtn = new Button("Close");
+        closeBtn.getStyleClass().add("dialog-button");
+        closeBtn.setOnAction(e -> closeNotification());
+        buttons.getChildren().add(closeBtn);
+        
+        profileDialog.getChildren().addAll(avatar, nameLabel, details, buttons);
+        
+        VBox overlay = new VBox(profileDialog);
+        overlay.setAlignment(Pos.CENTER);
+        overlay.getStyleClass().add("overlay");
+        
+        BorderPane root = (BorderPane) stage.getScene().getRoot();
+        root.setCenter(overlay);
     }
 
     public void show() {
         stage.show();
+        StartupMetrics.markOnNextFrame(stage.getScene(), StartupMetrics.CHAT_FIRST_FRAME);
     }
 }
@@ -9,8 +9,19 @@ import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Enumeration;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.List;
 
 /**
@@ -19,20 +30,72 @@ import java.util.List;
  */
 public class Client {
     private static final int HEARTBEAT_INTERVAL = 5000; // 5 seconds
+    private static final int MAX_UNACKED_MESSAGES = 256;
+    private static final int MAX_AUTH_ATTEMPTS = 4;
+    private static final long DEFAULT_CALL_TIMEOUT_MS = 5000;
+    
+    // Reconnect: full-jitter exponential backoff, delay drawn from [0, min(cap, base * 2^attempt)]
+    private static final long RECONNECT_BASE_DELAY_MS = 500;
+    private static final long RECONNECT_MAX_DELAY_MS = 30_000;
+    private static final int MAX_RECONNECT_ATTEMPTS = 12;
+    private static final int MAX_OUTBOX = 256;
+    private static final int MAX_BATCH_USERS = 256; // the server's limit per CHECK_FRIENDSHIPS / GET_PROFILES
     
     private Socket socket;
     private BufferedReader reader;
     private PrintWriter writer;
+    private String host;
+    private int port;
     private String username;
     private volatile boolean connected;
+    private volatile String lastAuthResponse;
+    private volatile String sessionToken;
     private Thread listenerThread;
     private Thread heartbeatThread;
     private MessageListener messageListener;
-    private List<String> messageBuffer = new CopyOnWriteArrayList<>();
+    // Lines are decoded on the listener thread and published as typed events
+    private final ClientEventBus events = new ClientEventBus();
+    // Kept across reconnects so presence deltas stay relative to what the UI shows
+    private ProtocolDecoder decoder;
+    
+    // Commands issued while reconnecting, sent once the session is resumed
+    private final ArrayDeque<String> outbox = new ArrayDeque<>();
+    private volatile boolean reconnecting;
+    private Thread reconnectThread;
+    
+    // Call room joined with JOIN_ROOM, joined again after a reconnect
+    private volatile String callRoom;
+    
+    // Highest server sequence number seen, used by RESUME after a reconnect
+    private volatile long lastSeq = 0;
+    // On-disk cache of this account's messages; its last seq seeds lastSeq at login
+    private LocalMessageCache messageCache;
+    private String messageCacheKey;
+    private volatile boolean receivingHistory;
+    // clientMsgId -> MESSAGE_ID line, kept until the server acknowledges it
+    private final Map<String, String> unackedMessages = new LinkedHashMap<>();
+    
+    // Request id -> call waiting for its RES lines and RES_END
+    private final Map<String, PendingCall> pendingCalls = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong(1);
+    
+    private static class PendingCall {
+        final CompletableFuture<List<String>> future = new CompletableFuture<>();
+        final List<String> lines = new ArrayList<>();
+    }
 
     public interface MessageListener {
-        void onMessageReceived(String message);
+        /**
+         * The connection is gone and could not be resumed; a new login is needed
+         */
         void onConnectionLost();
+        
+        /**
+         * A reconnect attempt will start after delayMs
+         */
+        default void onReconnecting(int attempt, long delayMs) {}
+        
+        default void onReconnected(int attempts) {}
     }
 
     public Client() {
@@ -40,11 +103,67 @@ public class Client {
     }
 
     /**
-     * Connect with authentication (username + password)
+     * Connect with authentication (username + password).
+     * When the server answers AUTH_BUSY the login is retried after the
+     * suggested delay plus random jitter, so clients do not retry in lockstep.
      */
     public boolean connectWithAuth(String host, int port, String username, String password) {
+        for (int attempt = 1; attempt <= MAX_AUTH_ATTEMPTS; attempt++) {
+            String response = tryConnectWithAuth(host, port, username, password);
+            lastAuthResponse = response;
+            
+            if (response == null || !response.startsWith("AUTH_BUSY")) {
+                return response != null && response.startsWith("AUTH_SUCCESS");
+            }
+            
+            long retryMs = 1000;
+            String[] parts = response.split(" ");
+            if (parts.length >= 2) {
+                try {
+                    retryMs = Long.parseLong(parts[1]);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            long delay = retryMs + ThreadLocalRandom.current().nextLong(retryMs + 1) * attempt;
+            System.out.println("Server busy, retrying login in " + delay + " ms");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Reconnect in one round trip with a session token from a previous login.
+     * Returns false (SESSION_INVALID) when the token is expired or was signed
+     * by another server; the caller should then fall back to connectWithAuth.
+     */
+    public boolean resumeSession(String host, int port, String token) {
+        String response = tryHandshake(host, port, "RESUME_SESSION " + token);
+        lastAuthResponse = response;
+        return response != null && response.startsWith("AUTH_SUCCESS");
+    }
+    
+    /**
+     * Single AUTH attempt, returns the server response (null on I/O error or
+     * an AUTH_SUCCESS without a session token)
+     */
+    private String tryConnectWithAuth(String host, int port, String username, String password) {
+        return tryHandshake(host, port, "AUTH " + username + " " + password);
+    }
+    
+    /**
+     * Open the connection, send AUTH or RESUME_SESSION and read the answer.
+     * AUTH_SUCCESS is followed by SESSION_TOKEN <username> <token> <expiresAt>.
+     */
+    private String tryHandshake(String host, int port, String request) {
         try {
             System.out.println("Connecting to " + host + ":" + port);
+            this.host = host;
+            this.port = port;
             
             socket = new Socket();
             socket.connect(new InetSocketAddress(host, port), 5000);
@@ -56,35 +175,47 @@ public class Client {
             writer = new PrintWriter(socket.getOutputStream(), true);
             
             // Send authentication request
-            writer.println("AUTH " + username + " " + password);
+            writer.println(request);
             writer.flush();
             
             socket.setSoTimeout(5000);
             String response = reader.readLine();
+            String[] tokenParts = null;
+            if (response != null && response.startsWith("AUTH_SUCCESS")) {
+                tokenParts = String.valueOf(reader.readLine()).split(" ");
+            }
             socket.setSoTimeout(0);
             
             System.out.println("Auth response: " + response);
             
-            if (response != null && response.startsWith("AUTH_SUCCESS")) {
-                this.username = username;
+            if (tokenParts != null && tokenParts.length >= 3 && tokenParts[0].equals("SESSION_TOKEN")) {
+                this.username = tokenParts[1];
+                this.sessionToken = tokenParts[2];
                 this.connected = true;
                 
+                openMessageCache(host, port);
                 startMessageListener();
                 startHeartbeat();
+                resumeMessages();
                 
-                System.out.println("Authenticated successfully as " + username);
-                return true;
+                System.out.println("Authenticated successfully as " + this.username);
+            } else if (response != null && response.startsWith("AUTH_SUCCESS")) {
+                // Without a session token we cannot resume or reconnect: count it as a failed handshake
+                System.err.println("Authentication failed: no valid SESSION_TOKEN after " + response);
+                closeConnection();
+                return null;
             } else {
                 System.err.println("Authentication failed: " + response);
-                disconnect();
+                closeConnection();
             }
+            return response;
             
         } catch (IOException e) {
             System.err.println("Connection failed: " + e.getMessage());
-            disconnect();
+            closeConnection();
         }
         
-        return false;
+        return null;
     }
 
     /**
@@ -195,35 +326,49 @@ public class Client {
      * Start background thread to listen for incoming messages
      */
     private void startMessageListener() {
+        if (decoder == null || !decoder.getOwnUsername().equals(username)) {
+            decoder = new ProtocolDecoder(username);
+        }
+        Socket listenedSocket = socket;
+        BufferedReader in = reader;
         listenerThread = new Thread(() -> {
             try {
                 String line;
-                while (connected && (line = reader.readLine()) != null) {
+                while (connected && (line = in.readLine()) != null) {
                     System.out.println("Received: " + line);
                     
                     // Skip HISTORY messages during history playback
-                    if (line.startsWith("HISTORY_START") || line.startsWith("HISTORY_END")) {
+                    if (line.startsWith("HISTORY_START")) {
+                        receivingHistory = true;
+                        continue;
+                    }
+                    if (line.startsWith("HISTORY_END")) {
+                        receivingHistory = false;
+                        if (messageCache != null) {
+                            messageCache.flush();
+                        }
                         continue;
                     }
                     
-                    if (messageListener != null) {
-                        messageListener.onMessageReceived(line);
-                    } else {
-                        // Buffer messages until listener is set
-                        System.out.println("DEBUG: Buffering message (listener not set yet): " + line.substring(0, Math.min(50, line.length())));
-                        messageBuffer.add(line);
+                    if (line.startsWith("MESSAGE_ACK ")) {
+                        handleMessageAck(line);
+                        continue;
                     }
-                }
-            } catch (IOException e) {
-                if (connected) {
-                    System.err.println("Connection lost: " + e.getMessage());
-                    if (messageListener != null) {
-                        messageListener.onConnectionLost();
+                    
+                    if (line.startsWith("RES ") || line.startsWith("RES_END ")) {
+                        handleResponse(line);
+                        continue;
                     }
+                    
+                    line = stripSequence(line);
+                    
+                    // Held by the bus until the window subscribes
+                    events.publish(decoder.decode(line));
                 }
-            } finally {
-                // Don't call disconnect here to avoid recursion
-                // The disconnect will be handled by the close request
+                // End of stream: the server closed the connection
+                connectionLost(listenedSocket, "closed by server");
+            } catch (IOException e) {
+                connectionLost(listenedSocket, e.getMessage());
             }
         }, "MessageListener");
         
@@ -281,22 +426,133 @@ public class Client {
     }
 
     /**
-     * Send message to server
+     * Send message to server.
+     * Each message carries a client-generated id so it can be resent safely;
+     * the server stores it once and answers MESSAGE_ACK <id> <seq>.
      */
     public void sendMessage(String recipient, String message) {
-        if (connected && writer != null) {
-            String formatted = "MESSAGE " + username + " " + recipient + " " + message;
-            writer.println(formatted);
+        if ((connected && writer != null) || reconnecting) {
+            String clientMsgId = UUID.randomUUID().toString().replace("-", "");
+            String formatted = "MESSAGE_ID " + clientMsgId + " " + username + " " + recipient + " " + message;
+            synchronized (unackedMessages) {
+                unackedMessages.put(clientMsgId, formatted);
+                if (unackedMessages.size() > MAX_UNACKED_MESSAGES) {
+                    String oldest = unackedMessages.keySet().iterator().next();
+                    unackedMessages.remove(oldest);
+                }
+            }
+            // Queued while reconnecting; a copy resent by resumeMessages is deduplicated by id
+            sendCommand(formatted);
             System.out.println("Sent: " + formatted);
         }
     }
+    
+    /**
+     * Ask the server for the messages missed since lastSeq and resend
+     * anything it has not acknowledged yet
+     */
+    private void resumeMessages() {
+        writer.println("RESUME " + lastSeq);
+        
+        List<String> pending;
+        synchronized (unackedMessages) {
+            pending = new ArrayList<>(unackedMessages.values());
+        }
+        for (String line : pending) {
+            writer.println(line);
+        }
+        if (!pending.isEmpty()) {
+            System.out.println("Resent " + pending.size() + " unacknowledged messages");
+        }
+        
+        String room = callRoom;
+        if (room != null) {
+            writer.println("JOIN_ROOM " + room);
+        }
+    }
+    
+    /**
+     * Handle MESSAGE_ACK <clientMsgId> <seq>
+     */
+    private void handleMessageAck(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length >= 2) {
+            synchronized (unackedMessages) {
+                unackedMessages.remove(parts[1]);
+            }
+        }
+    }
+    
+    /**
+     * Remove the "SEQ <n> " prefix from sequenced lines and remember the
+     * highest sequence number seen
+     */
+    private String stripSequence(String line) {
+        if (!line.startsWith("SEQ ")) {
+            return line;
+        }
+        int end = line.indexOf(' ', 4);
+        if (end < 0) {
+            return line;
+        }
+        long seq;
+        try {
+            seq = Long.parseLong(line.substring(4, end));
+            if (seq > lastSeq) {
+                lastSeq = seq;
+            }
+        } catch (NumberFormatException e) {
+            return line;
+        }
+        String stripped = line.substring(end + 1);
+        
+        LocalMessageCache cache = messageCache;
+        if (cache != null) {
+            cache.append(seq, stripped);
+            // History is flushed once at HISTORY_END
+            if (!receivingHistory) {
+                cache.flush();
+            }
+        }
+        return stripped;
+    }
+    
+    /**
+     * Load the local cache of the logged-in account so RESUME only asks the
+     * server for messages newer than what is already on disk
+     */
+    private void openMessageCache(String host, int port) {
+        String key = username + "@" + host + ":" + port;
+        if (messageCache != null && key.equals(messageCacheKey)) {
+            return; // Reconnect to the same account: already loaded
+        }
+        if (messageCache != null) {
+            messageCache.close();
+        }
+        messageCache = LocalMessageCache.open(username, host, port);
+        messageCacheKey = key;
+        lastSeq = Math.max(lastSeq, messageCache.getLastSeq());
+    }
+    
+    /**
+     * Cached messages, oldest first, to fill the chat at startup
+     */
+    public List<ClientEvent.ChatMessage> getCachedHistory() {
+        List<ClientEvent.ChatMessage> messages = new ArrayList<>();
+        if (messageCache != null) {
+            for (LocalMessageCache.CachedMessage msg : messageCache.getMessages()) {
+                messages.add(new ClientEvent.ChatMessage(msg.sender, msg.recipient, msg.text,
+                    msg.timestamp, ProtocolDecoder.formatTime(msg.timestamp), true));
+            }
+        }
+        return messages;
+    }
 
     /**
      * Request user list refresh from server
      */
     public void refreshUserList() {
-        if (connected && writer != null) {
-            writer.println("REFRESH_USERS");
+        if (sendCommand("REFRESH_USERS")) {
             System.out.println("Requesting user list refresh...");
         }
     }
@@ -305,8 +561,7 @@ public class Client {
      * Send friend request to another user
      */
     public void sendFriendRequest(String targetUsername) {
-        if (connected && writer != null) {
-            writer.println("FRIEND_REQUEST " + username + " " + targetUsername);
+        if (sendCommand("FRIEND_REQUEST " + username + " " + targetUsername)) {
             System.out.println("Sending friend request to: " + targetUsername);
         }
     }
@@ -315,8 +570,7 @@ public class Client {
      * Accept a friend request
      */
     public void acceptFriendRequest(String requestId) {
-        if (connected && writer != null) {
-            writer.println("ACCEPT_FRIEND " + requestId + " " + username);
+        if (sendCommand("ACCEPT_FRIEND " + requestId + " " + username)) {
             System.out.println("Accepting friend request: " + requestId);
         }
     }
@@ -325,8 +579,7 @@ public class Client {
      * Reject a friend request
      */
     public void rejectFriendRequest(String requestId) {
-        if (connected && writer != null) {
-            writer.println("REJECT_FRIEND " + requestId + " " + username);
+        if (sendCommand("REJECT_FRIEND " + requestId + " " + username)) {
             System.out.println("Rejecting friend request: " + requestId);
         }
     }
@@ -335,8 +588,7 @@ public class Client {
      * Request list of friends
      */
     public void requestFriendsList() {
-        if (connected && writer != null) {
-            writer.println("GET_FRIENDS " + username);
+        if (sendCommand("GET_FRIENDS " + username)) {
             System.out.println("Requesting friends list...");
         }
     }
@@ -345,8 +597,7 @@ public class Client {
      * Request pending friend requests
      */
     public void requestPendingRequests() {
-        if (connected && writer != null) {
-            writer.println("GET_PENDING_REQUESTS " + username);
+        if (sendCommand("GET_PENDING_REQUESTS " + username)) {
             System.out.println("Requesting pending friend requests...");
         }
     }
@@ -355,22 +606,341 @@ public class Client {
      * Check friendship status with another user
      */
     public void checkFriendship(String otherUsername) {
-        if (connected && writer != null) {
-            writer.println("CHECK_FRIENDSHIP " + username + " " + otherUsername);
+        if (sendCommand("CHECK_FRIENDSHIP " + username + " " + otherUsername)) {
             System.out.println("Checking friendship with: " + otherUsername);
         }
     }
 
+    /**
+     * Join a call room; the media servers only forward between members of a room
+     */
+    public void joinCallRoom(String room) {
+        callRoom = room;
+        if (sendCommand("JOIN_ROOM " + room)) {
+            System.out.println("Joining call room: " + room);
+        }
+    }
+    
+    /**
+     * Leave a call room, unless another one was joined since
+     */
+    public void leaveCallRoom(String room) {
+        if (room.equals(callRoom)) {
+            callRoom = null;
+            sendCommand("LEAVE_ROOM " + room);
+        }
+    }
+
+    /**
+     * Send a command as a request and collect the lines the server answers.
+     * The future completes with those lines, fails with a TimeoutException
+     * after timeoutMs, and can be cancelled (late replies are then dropped).
+     */
+    public CompletableFuture<List<String>> call(String command, long timeoutMs) {
+        if ((!connected || writer == null) && !reconnecting) {
+            return CompletableFuture.failedFuture(new IOException("Not connected"));
+        }
+        
+        String requestId = Long.toString(nextRequestId.getAndIncrement());
+        PendingCall call = new PendingCall();
+        pendingCalls.put(requestId, call);
+        call.future.whenComplete((lines, error) -> pendingCalls.remove(requestId));
+        
+        sendCommand("REQ " + requestId + " " + command);
+        return call.future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+    
+    public CompletableFuture<List<String>> call(String command) {
+        return call(command, DEFAULT_CALL_TIMEOUT_MS);
+    }
+    
+    /**
+     * Friends of the current user
+     */
+    public CompletableFuture<List<String>> fetchFriends() {
+        return call("GET_FRIENDS " + username).thenApply(lines -> {
+            List<String> friends = new ArrayList<>();
+            for (String line : lines) {
+                // Format: FRIENDS_LIST <username> <friend1> <friend2> ...
+                String[] parts = line.split(" ");
+                if (parts[0].equals("FRIENDS_LIST")) {
+                    friends.addAll(Arrays.asList(parts).subList(Math.min(2, parts.length), parts.length));
+                }
+            }
+            return friends;
+        });
+    }
+    
+    /**
+     * Pending requests received by the current user
+     */
+    public CompletableFuture<List<ClientEvent.FriendEvent>> fetchPendingRequests() {
+        return call("GET_PENDING_REQUESTS " + username).thenApply(lines -> {
+            List<ClientEvent.FriendEvent> requests = new ArrayList<>();
+            for (String line : lines) {
+                ClientEvent.FriendEvent event = ProtocolDecoder.decodeFriendEvent(line);
+                if (event != null && event.type == ClientEvent.FriendEvent.Type.PENDING_REQUEST) {
+                    requests.add(event);
+                }
+            }
+            return requests;
+        });
+    }
+    
+    /**
+     * Friendship status with many users, keyed by username
+     */
+    public CompletableFuture<Map<String, Boolean>> fetchFriendships(Collection<String> otherUsernames) {
+        List<CompletableFuture<List<String>>> calls = new ArrayList<>();
+        for (String batch : userBatches(otherUsernames)) {
+            calls.add(call("CHECK_FRIENDSHIPS " + batch));
+        }
+        return CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<String, Boolean> statuses = new LinkedHashMap<>();
+            for (CompletableFuture<List<String>> batchCall : calls) {
+                for (String line : batchCall.join()) {
+                    // Format: FRIENDSHIP_STATUSES <user1>:<0|1> ...
+                    String[] parts = line.split(" ");
+                    for (int i = 1; i < parts.length; i++) {
+                        int colon = parts[i].lastIndexOf(':');
+                        if (colon > 0) {
+                            statuses.put(parts[i].substring(0, colon), parts[i].endsWith(":1"));
+                        }
+                    }
+                }
+            }
+            return statuses;
+        });
+    }
+    
+    private void handleResponse(String line) {
+        // Format: RES <requestId> <line> | RES_END <requestId>
+        String[] parts = line.split(" ", 3);
+        if (parts.length < 2) {
+            return;
+        }
+        PendingCall call = pendingCalls.get(parts[1]);
+        if (call == null) {
+            return; // Timed out or cancelled
+        }
+        if (parts[0].equals("RES_END")) {
+            call.future.complete(call.lines);
+        } else if (parts.length == 3) {
+            call.lines.add(parts[2]);
+        }
+    }
+    
+    /**
+     * Friendship status with many users in one request (FRIENDSHIP_STATUSES)
+     */
+    public void checkFriendships(Collection<String> otherUsernames) {
+        sendUserBatch("CHECK_FRIENDSHIPS", otherUsernames);
+    }
+    
+    /**
+     * Profile summaries of many users in one request (PROFILES)
+     */
+    public void requestProfiles(Collection<String> usernames) {
+        sendUserBatch("GET_PROFILES", usernames);
+    }
+    
+    private void sendUserBatch(String command, Collection<String> usernames) {
+        for (String batch : userBatches(usernames)) {
+            sendCommand(command + " " + batch);
+        }
+    }
+
+    /**
+     * Usernames joined by spaces, at most MAX_BATCH_USERS per line
+     */
+    private static List<String> userBatches(Collection<String> usernames) {
+        List<String> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>(MAX_BATCH_USERS);
+        for (String name : usernames) {
+            batch.add(name);
+            if (batch.size() == MAX_BATCH_USERS) {
+                batches.add(String.join(" ", batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(String.join(" ", batch));
+        }
+        return batches;
+    }
+
+    /**
+     * Write a command, or queue it while a reconnect is in progress.
+     * The outbox is bounded; past MAX_OUTBOX the oldest command is dropped.
+     * @return false if the client is neither connected nor reconnecting
+     */
+    private boolean sendCommand(String line) {
+        synchronized (outbox) {
+            if (reconnecting) {
+                if (outbox.size() >= MAX_OUTBOX) {
+                    System.err.println("Outbox full, dropping: " + outbox.pollFirst());
+                }
+                outbox.addLast(line);
+                return true;
+            }
+        }
+        if (connected && writer != null) {
+            writer.println(line);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Called by a listener thread when its socket fails or reaches EOF.
+     * With a session token the reconnect supervisor takes over; otherwise
+     * (or after disconnect()) the listener is told the connection is lost.
+     */
+    private void connectionLost(Socket lostSocket, String reason) {
+        if (!connected || lostSocket != socket) {
+            return; // disconnect() was called, or this is an old connection
+        }
+        System.err.println("Connection lost: " + reason);
+        closeConnection();
+        // Replies to calls sent on the old connection will never arrive
+        failPendingCalls();
+        
+        if (sessionToken != null) {
+            startReconnect();
+        } else if (messageListener != null) {
+            messageListener.onConnectionLost();
+        }
+    }
+    
+    private void startReconnect() {
+        synchronized (outbox) {
+            if (reconnecting) {
+                return;
+            }
+            reconnecting = true;
+        }
+        reconnectThread = new Thread(this::reconnectLoop, "ReconnectSupervisor");
+        reconnectThread.setDaemon(true);
+        reconnectThread.start();
+    }
+    
+    /**
+     * Resume the session with jittered exponential backoff.
+     * Full jitter spreads clients that lost the server at the same instant
+     * (e.g. after a switch reboot) over the whole backoff window instead of
+     * having them all log in again together; AUTH_BUSY hints are honoured.
+     */
+    private void reconnectLoop() {
+        long minDelay = 0;
+        for (int attempt = 1; attempt <= MAX_RECONNECT_ATTEMPTS && reconnecting; attempt++) {
+            long ceiling = Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_BASE_DELAY_MS << Math.min(attempt - 1, 16));
+            long delay = Math.max(minDelay, ThreadLocalRandom.current().nextLong(ceiling + 1));
+            minDelay = 0;
+            
+            System.out.println("Reconnecting to " + host + ":" + port + " in " + delay + " ms (attempt " + attempt + ")");
+            if (messageListener != null) {
+                messageListener.onReconnecting(attempt, delay);
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return; // disconnect() stopped the supervisor
+            }
+            if (!reconnecting) {
+                return;
+            }
+            
+            String response = tryHandshake(host, port, "RESUME_SESSION " + sessionToken);
+            if (response != null && response.startsWith("AUTH_SUCCESS")) {
+                flushOutbox();
+                System.out.println("Reconnected after " + attempt + " attempt(s)");
+                if (messageListener != null) {
+                    messageListener.onReconnected(attempt);
+                }
+                return;
+            }
+            if (response != null && response.startsWith("SESSION_INVALID")) {
+                break; // Token expired or server key changed: a new login is needed
+            }
+            if (response != null && response.startsWith("AUTH_BUSY")) {
+                String[] parts = response.split(" ");
+                try {
+                    minDelay = parts.length >= 2 ? Long.parseLong(parts[1]) : RECONNECT_BASE_DELAY_MS;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        
+        synchronized (outbox) {
+            if (!reconnecting) {
+                return; // disconnect() stopped the supervisor
+            }
+            reconnecting = false;
+            outbox.clear();
+        }
+        failPendingCalls();
+        System.err.println("Could not resume the session");
+        if (messageListener != null) {
+            messageListener.onConnectionLost();
+        }
+    }
+    
+    /**
+     * Send what was queued while reconnecting; runs after resumeMessages so
+     * missed messages and unacknowledged sends go first
+     */
+    private void flushOutbox() {
+        synchronized (outbox) {
+            if (!outbox.isEmpty()) {
+                System.out.println("Sending " + outbox.size() + " queued commands");
+            }
+            String line;
+            while ((line = outbox.pollFirst()) != null) {
+                writer.println(line);
+            }
+            reconnecting = false;
+        }
+    }
+
     /**
      * Disconnect from server
      */
     public void disconnect() {
+        // Stop a reconnect in progress
+        synchronized (outbox) {
+            reconnecting = false;
+            outbox.clear();
+        }
+        if (reconnectThread != null && reconnectThread.isAlive() && reconnectThread != Thread.currentThread()) {
+            reconnectThread.interrupt();
+        }
+        closeConnection();
+        failPendingCalls();
+    }
+    
+    /**
+     * Fail calls that can no longer be answered
+     */
+    private void failPendingCalls() {
+        for (PendingCall call : pendingCalls.values()) {
+            call.future.completeExceptionally(new IOException("Disconnected"));
+        }
+    }
+    
+    /**
+     * Close the socket and stop the connection threads
+     */
+    private void closeConnection() {
         if (!connected && socket == null) {
             return; // Already disconnected
         }
         
         connected = false;
         
+        if (messageCache != null) {
+            messageCache.flush();
+        }
+        
         // Stop heartbeat thread
         if (heartbeatThread != null && heartbeatThread.isAlive()) {
             heartbeatThread.interrupt();
@@ -404,17 +974,13 @@ public class Client {
 
     public void setMessageListener(MessageListener listener) {
         this.messageListener = listener;
-        
-        // Deliver any buffered messages
-        if (!messageBuffer.isEmpty()) {
-            System.out.println("DEBUG: Delivering " + messageBuffer.size() + " buffered messages");
-            for (String bufferedMessage : messageBuffer) {
-                if (messageListener != null) {
-                    messageListener.onMessageReceived(bufferedMessage);
-                }
-            }
-            messageBuffer.clear();
-        }
+    }
+    
+    /**
+     * Decoded server events; subscribe per event type
+     */
+    public ClientEventBus getEvents() {
+        return events;
     }
 
     public boolean isConnected() {
@@ -424,4 +990,23 @@ public class Client {
     public String getUsername() {
         return username;
     }
+    
+    /**
+     * Signed session token from the last successful login, used by
+     * resumeSession and the video/audio handshakes
+     */
+    public String getSessionToken() {
+        return sessionToken;
+    }
+    
+    /**
+     * Last response to AUTH (AUTH_SUCCESS, AUTH_FAILED, AUTH_BUSY or null)
+     */
+    public String getLastAuthResponse() {
+        return lastAuthResponse;
+    }
+    
+    public long getLastSeq() {
+        return lastSeq;
+    }
 }
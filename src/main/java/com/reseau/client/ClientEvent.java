@@ -0,0 +1,146 @@
+package com.reseau.client;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.reseau.common.UserInfo;
+
+/**
+ * ClientEvent - Typed, immutable form of a server line
+ * Built by ProtocolDecoder on the network thread, so subscribers on the FX
+ * thread receive parsed values instead of raw strings.
+ */
+public abstract class ClientEvent {
+
+    /**
+     * Global or private chat message, live or from history
+     */
+    public static final class ChatMessage extends ClientEvent {
+        public final String sender;
+        public final String recipient;
+        public final String text;
+        public final long timestamp;
+        public final String time;          // HH:mm, ready to display
+        public final boolean fromHistory;
+
+        public ChatMessage(String sender, String recipient, String text, long timestamp, String time,
+                           boolean fromHistory) {
+            this.sender = sender;
+            this.recipient = recipient;
+            this.text = text;
+            this.timestamp = timestamp;
+            this.time = time;
+            this.fromHistory = fromHistory;
+        }
+
+        public boolean isGlobal() {
+            return "all".equals(recipient);
+        }
+    }
+
+    /**
+     * Difference between two USER_LIST snapshots (own user excluded)
+     */
+    public static final class PresenceDelta extends ClientEvent {
+        public final Set<String> removed;
+        public final Map<String, UserInfo> changed;
+        public final List<UserInfo> added;
+        public final int onlineCount;
+
+        public PresenceDelta(Set<String> removed, Map<String, UserInfo> changed, List<UserInfo> added,
+                             int onlineCount) {
+            this.removed = Collections.unmodifiableSet(removed);
+            this.changed = Collections.unmodifiableMap(changed);
+            this.added = Collections.unmodifiableList(added);
+            this.onlineCount = onlineCount;
+        }
+
+        public boolean isEmpty() {
+            return removed.isEmpty() && changed.isEmpty() && added.isEmpty();
+        }
+    }
+
+    /**
+     * Friend request and friendship notifications
+     */
+    public static final class FriendEvent extends ClientEvent {
+        public enum Type {
+            REQUEST_RECEIVED,   // FRIEND_REQUEST_RECEIVED <requestId> <sender>
+            PENDING_REQUEST,    // PENDING_REQUEST <requestId> <sender>
+            REQUEST_SENT,       // FRIEND_REQUEST_SENT
+            REQUEST_FAILED,     // FRIEND_REQUEST_FAILED <receiver> <reason>
+            ACCEPTED,           // FRIEND_ACCEPTED <username>
+            REJECTED            // FRIEND_REJECTED
+        }
+
+        public final Type type;
+        public final String requestId;
+        public final String username;
+        public final String reason;
+
+        public FriendEvent(Type type, String requestId, String username, String reason) {
+            this.type = type;
+            this.requestId = requestId;
+            this.username = username;
+            this.reason = reason;
+        }
+    }
+
+    /**
+     * Full friends list of the current user
+     */
+    public static final class FriendsList extends ClientEvent {
+        public final List<String> friends;
+
+        public FriendsList(List<String> friends) {
+            this.friends = Collections.unmodifiableList(friends);
+        }
+    }
+
+    /**
+     * Friendship status with one or more users
+     */
+    public static final class FriendshipStatuses extends ClientEvent {
+        public final Map<String, Boolean> statuses;
+
+        public FriendshipStatuses(Map<String, Boolean> statuses) {
+            this.statuses = Collections.unmodifiableMap(statuses);
+        }
+    }
+
+    /**
+     * Profile summaries from GET_PROFILES
+     */
+    public static final class Profiles extends ClientEvent {
+        public final Map<String, Profile> profiles;
+
+        public Profiles(Map<String, Profile> profiles) {
+            this.profiles = Collections.unmodifiableMap(profiles);
+        }
+    }
+
+    public static final class Profile {
+        public final String fullName;
+        public final int friendCount;
+        public final int mutualFriends;
+
+        public Profile(String fullName, int friendCount, int mutualFriends) {
+            this.fullName = fullName;
+            this.friendCount = friendCount;
+            this.mutualFriends = mutualFriends;
+        }
+    }
+
+    /**
+     * Any other server line, shown as-is in the global chat
+     */
+    public static final class Notice extends ClientEvent {
+        public final String text;
+
+        public Notice(String text) {
+            this.text = text;
+        }
+    }
+}
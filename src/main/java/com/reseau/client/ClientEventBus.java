@@ -0,0 +1,75 @@
+package com.reseau.client;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * ClientEventBus - Delivers decoded ClientEvents to typed subscribers
+ * Publishing never blocks: subscribers are read from copy-on-write lists and
+ * each delivery is handed to the subscriber's executor (for the UI that is
+ * UiUpdateDispatcher::post, a lock-free queue drained once per pulse).
+ * Events published before anyone subscribes are held and delivered to the
+ * first subscription of their type, so nothing decoded at login is lost.
+ */
+public class ClientEventBus {
+
+    private static class Subscription<T extends ClientEvent> {
+        final Consumer<T> handler;
+        final Executor executor;
+
+        Subscription(Consumer<T> handler, Executor executor) {
+            this.handler = handler;
+            this.executor = executor;
+        }
+
+        void deliver(ClientEvent event, Class<T> type) {
+            T typed = type.cast(event);
+            executor.execute(() -> handler.accept(typed));
+        }
+    }
+
+    private final Map<Class<?>, List<Subscription<?>>> subscriptions = new ConcurrentHashMap<>();
+    private final Queue<ClientEvent> undelivered = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Receive events of one type on the given executor
+     */
+    public <T extends ClientEvent> void subscribe(Class<T> type, Executor executor, Consumer<T> handler) {
+        Subscription<T> subscription = new Subscription<>(handler, executor);
+        subscriptions.computeIfAbsent(type, k -> new CopyOnWriteArrayList<>()).add(subscription);
+
+        // Hand over what arrived before this type had a subscriber, in order
+        for (ClientEvent event : undelivered) {
+            if (type.isInstance(event) && undelivered.remove(event)) {
+                subscription.deliver(event, type);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void publish(ClientEvent event) {
+        List<Subscription<?>> targets = subscriptions.get(event.getClass());
+        if (targets == null || targets.isEmpty()) {
+            undelivered.add(event);
+            // A subscriber may have registered between the lookup and the add
+            targets = subscriptions.get(event.getClass());
+            if (targets == null || targets.isEmpty() || !undelivered.remove(event)) {
+                return;
+            }
+        }
+        for (Subscription<?> subscription : targets) {
+            ((Subscription<ClientEvent>) subscription).deliver(event, (Class<ClientEvent>) event.getClass());
+        }
+    }
+
+    public void clear() {
+        subscriptions.clear();
+        undelivered.clear();
+    }
+}
@@ -0,0 +1,303 @@
+package com.reseau.client;
+
+import com.reseau.common.ComfortNoise;
+
+/**
+ * JitterBuffer - Playout buffer of one remote audio stream
+ * Frames go in by sequence number as they arrive and come out one per tick
+ * of the speaker clock. A talk-spurt starts playing once it has waited the
+ * target delay, sized from the measured jitter: the RFC 3550 interarrival
+ * jitter, and the peak delay of recent frames over the fastest ones, slowly
+ * forgotten. Within a spurt a missing frame is concealed by repeating the
+ * last one, fading out; a frame that arrives after its turn is dropped as
+ * late. A buffer that has grown well past the target (after a stall, or a
+ * sender clock running fast) is trimmed so latency does not build up.
+ *
+ * Streams without sequence numbers (TCP) are numbered in arrival order,
+ * with timestamps one frame apart within a talk-spurt.
+ * Thread-safe: filled by a network thread, drained by the mixer.
+ */
+public class JitterBuffer {
+    private static final int CAPACITY = 32; // power of two, above MAX_TARGET_FRAMES + TRIM_MARGIN_FRAMES
+    private static final int MIN_TARGET_FRAMES = 2;
+    private static final int MAX_TARGET_FRAMES = 15;
+    private static final int TRIM_MARGIN_FRAMES = 3;
+    private static final int MAX_UNDERRUN_FRAMES = 10; // then the spurt is taken as over
+    private static final int BASE_WINDOW_FRAMES = 250;
+    private static final double PEAK_DECAY = 0.998; // per frame: halves in about 7 s of audio
+    private static final double CONCEAL_FADE = 0.6; // per concealed frame
+    private static final double MIN_CONCEAL_GAIN = 0.02;
+
+    // Queued in place of the comfort noise marker that ends a talk-spurt
+    private static final byte[] END_OF_SPURT = new byte[0];
+
+    private final int frameMs;
+    private final byte[][] frames = new byte[CAPACITY][];
+    private final int[] sequences = new int[CAPACITY];
+    private final byte[] concealment;
+    private int queued;
+
+    private boolean started;
+    private boolean playing;
+    private int nextSequence; // first sequence number not played yet
+    private int waited;
+    private int underrun;
+    private int concealedRun;
+    private byte[] lastPlayed;
+    private int comfortNoiseLevel = ComfortNoise.SILENT;
+
+    private int assignedSequence;
+    private int assignedTimestamp;
+    private boolean assignedSpurtEnded = true;
+
+    private boolean haveTransit;
+    private int lastSequence;
+    private long lastTransit;
+    private long baseTransit = Long.MAX_VALUE;
+    private long windowBase = Long.MAX_VALUE;
+    private int windowFrames;
+    private double jitter;
+    private double peakDelay;
+
+    private long received;
+    private long played;
+    private long lost;
+    private long late;
+    private long concealed;
+    private long trimmed;
+    private long underruns;
+    private long depthSum;
+    private long depthSamples;
+    private int maxDepth;
+
+    public JitterBuffer(int frameBytes, int frameMs) {
+        this.concealment = new byte[frameBytes];
+        this.frameMs = frameMs;
+    }
+
+    /**
+     * Queue a frame of 16-bit PCM numbered by the sender
+     * @param timestamp sender clock in ms
+     * @param arrivalMs local clock in ms
+     */
+    public synchronized void put(int sequence, int timestamp, byte[] pcm, long arrivalMs) {
+        if (pcm.length != concealment.length) {
+            return;
+        }
+        received++;
+        measure(sequence, timestamp, arrivalMs);
+        queue(sequence, pcm);
+    }
+
+    /**
+     * Queue a frame of a stream that arrives in order without numbering
+     */
+    public synchronized void put(byte[] pcm, long arrivalMs) {
+        if (assignedSpurtEnded) {
+            assignedSpurtEnded = false;
+            assignedTimestamp = (int) arrivalMs;
+        } else {
+            assignedTimestamp += frameMs;
+        }
+        put(assignedSequence++, assignedTimestamp, pcm, arrivalMs);
+    }
+
+    /**
+     * The sender's talk-spurt ended with this comfort noise marker
+     */
+    public synchronized void endTalkSpurt(int sequence, int level) {
+        comfortNoiseLevel = level;
+        if (queued == 0 && !playing) {
+            if (!started || sequence - nextSequence >= 0) {
+                started = true;
+                nextSequence = sequence + 1;
+            }
+            return;
+        }
+        queue(sequence, END_OF_SPURT);
+    }
+
+    /**
+     * Comfort noise marker of a stream that arrives in order without numbering
+     */
+    public synchronized void endTalkSpurt(int level) {
+        assignedSpurtEnded = true;
+        endTalkSpurt(assignedSequence++, level);
+    }
+
+    /**
+     * Level to fill silence with when poll() returns null (ComfortNoise.SILENT: none)
+     */
+    public synchronized int getComfortNoiseLevel() {
+        return comfortNoiseLevel;
+    }
+
+    /**
+     * The frame to play for this tick of the speaker clock, null for silence
+     * A concealment frame is only valid until the next call.
+     */
+    public synchronized byte[] poll() {
+        int target = getTargetFrames();
+        if (!playing) {
+            if (queued == 0 || (++waited < target && queued < target)) {
+                return null;
+            }
+            playing = true;
+            waited = 0;
+            underrun = 0;
+            nextSequence = lowestQueued();
+        }
+
+        // Drop the oldest frames rather than keep a delay built up by a burst
+        while (queued > target + TRIM_MARGIN_FRAMES) {
+            int slot = nextSequence & (CAPACITY - 1);
+            if (frames[slot] == END_OF_SPURT && sequences[slot] == nextSequence) {
+                break;
+            }
+            if (frames[slot] != null && sequences[slot] == nextSequence) {
+                frames[slot] = null;
+                queued--;
+                trimmed++;
+            }
+            nextSequence++;
+        }
+
+        depthSum += queued;
+        depthSamples++;
+
+        int slot = nextSequence & (CAPACITY - 1);
+        byte[] frame = frames[slot];
+        if (frame != null && sequences[slot] == nextSequence) {
+            frames[slot] = null;
+            queued--;
+            nextSequence++;
+            if (frame == END_OF_SPURT) {
+                playing = false;
+                return null;
+            }
+            played++;
+            underrun = 0;
+            concealedRun = 0;
+            lastPlayed = frame;
+            return frame;
+        }
+
+        if (queued > 0) {
+            // Later frames are here: this one is lost, or will be late
+            lost++;
+            nextSequence++;
+        } else {
+            // Nothing yet: wait for it, stretching the delay, until the spurt looks over
+            if (underrun++ == 0) {
+                underruns++;
+            }
+            if (underrun > MAX_UNDERRUN_FRAMES) {
+                playing = false;
+                return null;
+            }
+        }
+        return conceal();
+    }
+
+    public synchronized int getTargetFrames() {
+        double delay = Math.max(peakDelay, 3 * jitter);
+        int target = (int) Math.ceil(delay / frameMs) + 1;
+        return Math.max(MIN_TARGET_FRAMES, Math.min(MAX_TARGET_FRAMES, target));
+    }
+
+    public synchronized String getStats() {
+        return String.format("%d received, %d played, %d lost (%d late), %d concealed, %d trimmed, "
+                + "%d underruns, depth avg %.1f max %d target %d frames, jitter %.1f ms",
+            received, played, lost, late, concealed, trimmed, underruns,
+            depthSamples > 0 ? (double) depthSum / depthSamples : 0, maxDepth, getTargetFrames(), jitter);
+    }
+
+    private void queue(int sequence, byte[] frame) {
+        if (!started) {
+            started = true;
+            nextSequence = sequence;
+        }
+        int ahead = sequence - nextSequence;
+        if (ahead < -CAPACITY || ahead >= CAPACITY) {
+            // The stream was renumbered (e.g. it moved to UDP): start over
+            clear();
+            nextSequence = sequence;
+        } else if (ahead < 0) {
+            if (frame != END_OF_SPURT) {
+                late++;
+            }
+            return;
+        }
+        int slot = sequence & (CAPACITY - 1);
+        if (frames[slot] != null) {
+            if (sequences[slot] == sequence) {
+                return;
+            }
+            queued--;
+            trimmed++;
+        }
+        frames[slot] = frame;
+        sequences[slot] = sequence;
+        queued++;
+        maxDepth = Math.max(maxDepth, queued);
+    }
+
+    private void measure(int sequence, int timestamp, long arrivalMs) {
+        long transit = arrivalMs - timestamp;
+        if (haveTransit && sequence == lastSequence + 1) {
+            jitter += (Math.abs(transit - lastTransit) - jitter) / 16;
+        }
+        haveTransit = true;
+        lastSequence = sequence;
+        lastTransit = transit;
+
+        // Fastest transit of the last one or two windows, so clock drift is forgotten
+        windowBase = Math.min(windowBase, transit);
+        baseTransit = Math.min(baseTransit, transit);
+        if (++windowFrames == BASE_WINDOW_FRAMES) {
+            baseTransit = windowBase;
+            windowBase = Long.MAX_VALUE;
+            windowFrames = 0;
+        }
+        peakDelay = Math.max(transit - baseTransit, peakDelay * PEAK_DECAY);
+    }
+
+    private byte[] conceal() {
+        concealed++;
+        if (lastPlayed == null) {
+            return null;
+        }
+        double gain = Math.pow(CONCEAL_FADE, ++concealedRun);
+        if (gain < MIN_CONCEAL_GAIN) {
+            return null;
+        }
+        for (int i = 0; i + 1 < concealment.length; i += 2) {
+            int sample = (short) ((lastPlayed[i + 1] << 8) | (lastPlayed[i] & 0xFF));
+            int faded = (int) (sample * gain);
+            concealment[i] = (byte) faded;
+            concealment[i + 1] = (byte) (faded >> 8);
+        }
+        return concealment;
+    }
+
+    private int lowestQueued() {
+        int lowest = 0;
+        boolean found = false;
+        for (int i = 0; i < CAPACITY; i++) {
+            if (frames[i] != null && (!found || sequences[i] - lowest < 0)) {
+                lowest = sequences[i];
+                found = true;
+            }
+        }
+        return lowest;
+    }
+
+    private void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            frames[i] = null;
+        }
+        queued = 0;
+        playing = false;
+        waited = 0;
+    }
+}
@@ -0,0 +1,281 @@
+package com.reseau.client;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * LocalMessageCache - On-disk message cache of one account on one server
+ * Every sequenced MESSAGE/HISTORY line is appended to an append-only log
+ * framed as [length][crc32][payload]. At login the log is read back into
+ * bounded per-conversation deques, the chat is filled from them and the
+ * highest stored seq becomes the RESUME cursor, so the server only sends
+ * what arrived while the client was away.
+ *
+ * The cursor is derived from the records themselves rather than kept in a
+ * side file, so the two can never disagree after a crash. A torn tail is cut
+ * off on load, and the log is rewritten with only the retained messages once
+ * it has grown well past them.
+ */
+public class LocalMessageCache {
+    private static final String CACHE_DIR = ".nexo_cache";
+    private static final String GLOBAL = "all";
+    private static final int MAX_PER_CONVERSATION = 500;
+    private static final int COMPACT_MIN_RECORDS = 2000;
+
+    /**
+     * One cached chat message
+     */
+    public static class CachedMessage {
+        public final long seq;
+        public final long timestamp;
+        public final String sender;
+        public final String recipient;
+        public final String text;
+
+        CachedMessage(long seq, long timestamp, String sender, String recipient, String text) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.sender = sender;
+            this.recipient = recipient;
+            this.text = text;
+        }
+    }
+
+    private final String account;
+    private final File logFile;
+
+    // conversation ("all" or the other user) -> retained messages, oldest first
+    private final Map<String, ArrayDeque<CachedMessage>> conversations = new HashMap<>();
+    private final Set<Long> retainedSeqs = new HashSet<>();
+    private long lastSeq;
+    private int logRecords;
+    private DataOutputStream out;
+
+    private LocalMessageCache(String account, File logFile) {
+        this.account = account;
+        this.logFile = logFile;
+    }
+
+    /**
+     * Open (or create) the cache of an account on a server and load it
+     */
+    public static LocalMessageCache open(String account, String host, int port) {
+        File dir = new File(CACHE_DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            System.err.println("Could not create message cache directory " + dir.getAbsolutePath());
+        }
+        String name = (account + "@" + host + "_" + port).replaceAll("[^A-Za-z0-9_.@-]", "_");
+        LocalMessageCache cache = new LocalMessageCache(account, new File(dir, name + ".log"));
+
+        long start = System.nanoTime();
+        try {
+            cache.load();
+            if (cache.logRecords > COMPACT_MIN_RECORDS && cache.logRecords > 2 * cache.retainedSeqs.size()) {
+                cache.compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load message cache " + cache.logFile + ": " + e.getMessage());
+        }
+        System.out.printf("DEBUG: Message cache for %s loaded: %d messages, lastSeq %d (%.1f ms)%n",
+            account, cache.retainedSeqs.size(), cache.lastSeq, (System.nanoTime() - start) / 1e6);
+        return cache;
+    }
+
+    /**
+     * Highest sequence number stored; the RESUME cursor
+     */
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Cache a sequenced server line (the part after "SEQ <n> ")
+     * Only MESSAGE and HISTORY lines are kept; duplicates are ignored.
+     * The record reaches the disk on the next flush().
+     */
+    public synchronized void append(long seq, String line) {
+        CachedMessage msg = parse(seq, line);
+        if (msg == null || !retain(msg)) {
+            return;
+        }
+        try {
+            if (out == null) {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+            }
+            writeRecord(out, msg);
+            logRecords++;
+        } catch (IOException e) {
+            System.err.println("Failed to write message cache: " + e.getMessage());
+        }
+    }
+
+    public synchronized void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Failed to flush message cache: " + e.getMessage());
+        }
+    }
+
+    public synchronized void close() {
+        flush();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {}
+            out = null;
+        }
+    }
+
+    /**
+     * Retained messages of all conversations in server order
+     */
+    public synchronized List<CachedMessage> getMessages() {
+        List<CachedMessage> all = new ArrayList<>(retainedSeqs.size());
+        for (ArrayDeque<CachedMessage> conversation : conversations.values()) {
+            all.addAll(conversation);
+        }
+        all.sort(Comparator.comparingLong(m -> m.seq));
+        return all;
+    }
+
+    private CachedMessage parse(long seq, String line) {
+        // MESSAGE <sender> <recipient> <text>  |  HISTORY <timestamp> <sender> <recipient> <text>
+        if (line.startsWith("MESSAGE ")) {
+            String[] parts = line.split(" ", 4);
+            if (parts.length >= 4) {
+                return new CachedMessage(seq, System.currentTimeMillis(), parts[1], parts[2], parts[3]);
+            }
+        } else if (line.startsWith("HISTORY ")) {
+            String[] parts = line.split(" ", 5);
+            if (parts.length >= 5) {
+                try {
+                    return new CachedMessage(seq, Long.parseLong(parts[1]), parts[2], parts[3], parts[4]);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a message to its conversation, evicting the oldest past the cap
+     * @return false if it was already cached
+     */
+    private boolean retain(CachedMessage msg) {
+        String key = GLOBAL.equals(msg.recipient) ? GLOBAL
+            : msg.sender.equals(account) ? msg.recipient : msg.sender;
+        ArrayDeque<CachedMessage> conversation = conversations.computeIfAbsent(key, k -> new ArrayDeque<>());
+        // Older than a full conversation's window: already evicted (or would be at once)
+        if (conversation.size() >= MAX_PER_CONVERSATION && msg.seq < conversation.peekFirst().seq) {
+            return false;
+        }
+        if (!retainedSeqs.add(msg.seq)) {
+            return false;
+        }
+        conversation.addLast(msg);
+        if (conversation.size() > MAX_PER_CONVERSATION) {
+            retainedSeqs.remove(conversation.removeFirst().seq);
+        }
+        if (msg.seq > lastSeq) {
+            lastSeq = msg.seq;
+        }
+        return true;
+    }
+
+    private void load() throws IOException {
+        if (!logFile.exists()) {
+            return;
+        }
+
+        long validLength = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] record;
+                try {
+                    length = in.readInt();
+                    if (length < 0 || length > 1_000_000) {
+                        break;
+                    }
+                    checksum = in.readInt();
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                DataInputStream payload = new DataInputStream(new ByteArrayInputStream(record));
+                retain(new CachedMessage(payload.readLong(), payload.readLong(),
+                    payload.readUTF(), payload.readUTF(), payload.readUTF()));
+                validLength += 8 + length;
+                logRecords++;
+            }
+        }
+
+        if (validLength < logFile.length()) {
+            System.err.println("WARNING: Truncating corrupt tail of " + logFile.getName() + " at byte " + validLength);
+            try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+    }
+
+    /**
+     * Rewrite the log with only the retained messages
+     */
+    private void compact() throws IOException {
+        File tempFile = new File(logFile.getPath() + ".tmp");
+        List<CachedMessage> retained = getMessages();
+        try (DataOutputStream tmp = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            for (CachedMessage msg : retained) {
+                writeRecord(tmp, msg);
+            }
+        }
+        Files.move(tempFile.toPath(), logFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("DEBUG: Compacted message cache " + logFile.getName() + " from " +
+            logRecords + " to " + retained.size() + " records");
+        logRecords = retained.size();
+    }
+
+    private static void writeRecord(DataOutputStream target, CachedMessage msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeLong(msg.seq);
+        payload.writeLong(msg.timestamp);
+        payload.writeUTF(msg.sender);
+        payload.writeUTF(msg.recipient);
+        payload.writeUTF(msg.text);
+        byte[] record = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        target.writeInt(record.length);
+        target.writeInt((int) crc.getValue());
+        target.write(record);
+    }
+}
@@ -0,0 +1,252 @@
+package com.reseau.client;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.reseau.common.UserInfo;
+
+/**
+ * ProtocolDecoder - Turns server lines into ClientEvents on the network thread
+ * Dispatch is a single switch on the command token. USER_LIST snapshots are
+ * diffed against the previous one here, so the UI only applies a
+ * PresenceDelta. One decoder per account, kept across reconnects; not
+ * thread-safe (only the current listener thread uses it).
+ */
+public class ProtocolDecoder {
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("HH:mm").withZone(ZoneId.systemDefault());
+
+    private final String ownUsername;
+    private Map<String, UserInfo> presence = new HashMap<>();
+
+    public ProtocolDecoder(String ownUsername) {
+        this.ownUsername = ownUsername;
+    }
+
+    public String getOwnUsername() {
+        return ownUsername;
+    }
+
+    /**
+     * Decode one line (without its "SEQ <n> " prefix); never returns null
+     */
+    public ClientEvent decode(String line) {
+        int end = 0;
+        while (end < line.length() && line.charAt(end) != ' ' && line.charAt(end) != ';') {
+            end++;
+        }
+
+        try {
+            switch (line.substring(0, end)) {
+                case "MESSAGE":
+                    return decodeMessage(line);
+                case "HISTORY":
+                    return decodeHistory(line);
+                case "USER_LIST":
+                    return decodeUserList(line);
+                case "FRIENDS_LIST":
+                    return decodeFriendsList(line);
+                case "FRIENDSHIP_STATUS":
+                    return decodeFriendshipStatus(line);
+                case "FRIENDSHIP_STATUSES":
+                    return decodeFriendshipStatuses(line);
+                case "PROFILES":
+                    return decodeProfiles(line);
+                default:
+                    ClientEvent.FriendEvent friendEvent = decodeFriendEvent(line);
+                    if (friendEvent != null) {
+                        return friendEvent;
+                    }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Failed to decode server line: " + line + " - " + e.getMessage());
+        }
+        return new ClientEvent.Notice(line);
+    }
+
+    /**
+     * Friend notification lines, or null for anything else
+     */
+    public static ClientEvent.FriendEvent decodeFriendEvent(String line) {
+        String[] parts = line.split(" ", 3);
+        switch (parts[0]) {
+            case "FRIEND_REQUEST_RECEIVED":
+                // Format: FRIEND_REQUEST_RECEIVED <requestId> <senderUsername>
+                return parts.length < 3 ? null
+                    : new ClientEvent.FriendEvent(ClientEvent.FriendEvent.Type.REQUEST_RECEIVED, parts[1], parts[2], null);
+            case "PENDING_REQUEST":
+                // Format: PENDING_REQUEST <requestId> <senderUsername>
+                return parts.length < 3 ? null
+                    : new ClientEvent.FriendEvent(ClientEvent.FriendEvent.Type.PENDING_REQUEST, parts[1], parts[2], null);
+            case "FRIEND_REQUEST_SENT":
+                return new ClientEvent.FriendEvent(ClientEvent.FriendEvent.Type.REQUEST_SENT, null, null, null);
+            case "FRIEND_REQUEST_FAILED":
+                // Format: FRIEND_REQUEST_FAILED <receiver> <reason>
+                return new ClientEvent.FriendEvent(ClientEvent.FriendEvent.Type.REQUEST_FAILED, null,
+                    parts.length >= 2 ? parts[1] : null, parts.length >= 3 ? parts[2] : null);
+            case "FRIEND_ACCEPTED":
+                // Format: FRIEND_ACCEPTED <username>
+                return parts.length < 2 ? null
+                    : new ClientEvent.FriendEvent(ClientEvent.FriendEvent.Type.ACCEPTED, null, parts[1], null);
+            case "FRIEND_REJECTED":
+                return new ClientEvent.FriendEvent(ClientEvent.FriendEvent.Type.REJECTED, null, null, null);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * HH:mm of an epoch millisecond timestamp in the local time zone
+     */
+    public static String formatTime(long timestamp) {
+        return TIME_FORMAT.format(Instant.ofEpochMilli(timestamp));
+    }
+
+    private ClientEvent decodeMessage(String line) {
+        // Format: MESSAGE <sender> <recipient> <text>
+        String[] parts = line.split(" ", 4);
+        if (parts.length < 4) {
+            return new ClientEvent.Notice(line);
+        }
+        long now = System.currentTimeMillis();
+        return new ClientEvent.ChatMessage(parts[1], parts[2], parts[3], now, formatTime(now), false);
+    }
+
+    private ClientEvent decodeHistory(String line) {
+        // Format: HISTORY <timestamp> <sender> <recipient> <text>
+        String[] parts = line.split(" ", 5);
+        if (parts.length < 5) {
+            return new ClientEvent.Notice(line);
+        }
+        long timestamp = Long.parseLong(parts[1]);
+        return new ClientEvent.ChatMessage(parts[2], parts[3], parts[4], timestamp, formatTime(timestamp), true);
+    }
+
+    private ClientEvent decodeUserList(String line) {
+        // Format: USER_LIST;user1|device1|ip1|status1;user2|device2|ip2|status2; ...
+        String[] parts = line.split(";");
+        Map<String, UserInfo> incoming = new LinkedHashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (!part.isEmpty()) {
+                UserInfo userInfo = UserInfo.fromString(part);
+                // ✅ Skip our own username from the list
+                if (userInfo != null && !userInfo.getUsername().equals(ownUsername)) {
+                    incoming.put(userInfo.getUsername(), userInfo);
+                }
+            }
+        }
+
+        Set<String> removed = new HashSet<>();
+        for (String username : presence.keySet()) {
+            if (!incoming.containsKey(username)) {
+                removed.add(username);
+            }
+        }
+        Map<String, UserInfo> changed = new HashMap<>();
+        List<UserInfo> added = new ArrayList<>();
+        for (UserInfo user : incoming.values()) {
+            UserInfo previous = presence.get(user.getUsername());
+            if (previous == null) {
+                added.add(user);
+            } else if (isChanged(previous, user)) {
+                changed.put(user.getUsername(), user);
+            }
+        }
+
+        presence = incoming;
+        return new ClientEvent.PresenceDelta(removed, changed, added, incoming.size());
+    }
+
+    /**
+     * True if a sidebar row would render differently for the new entry
+     */
+    private static boolean isChanged(UserInfo before, UserInfo after) {
+        return before.getStatus() != after.getStatus()
+            || !Objects.equals(before.getDevice(), after.getDevice())
+            || !Objects.equals(before.getIpAddress(), after.getIpAddress());
+    }
+
+    private ClientEvent decodeFriendsList(String line) {
+        // Format: FRIENDS_LIST <username> <friend1> <friend2> ...
+        String[] parts = line.split(" ");
+        return new ClientEvent.FriendsList(new ArrayList<>(
+            Arrays.asList(parts).subList(Math.min(2, parts.length), parts.length)));
+    }
+
+    private ClientEvent decodeFriendshipStatus(String line) {
+        // Format: FRIENDSHIP_STATUS <user1> <user2> <true/false>
+        String[] parts = line.split(" ");
+        Map<String, Boolean> statuses = new HashMap<>();
+        if (parts.length >= 4) {
+            statuses.put(parts[2], Boolean.parseBoolean(parts[3]));
+        }
+        return new ClientEvent.FriendshipStatuses(statuses);
+    }
+
+    private ClientEvent decodeFriendshipStatuses(String line) {
+        // Format: FRIENDSHIP_STATUSES <user1>:<0|1> <user2>:<0|1> ...
+        String[] parts = line.split(" ");
+        Map<String, Boolean> statuses = new HashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            int colon = parts[i].lastIndexOf(':');
+            if (colon > 0) {
+                statuses.put(parts[i].substring(0, colon), parts[i].endsWith(":1"));
+            }
+        }
+        return new ClientEvent.FriendshipStatuses(statuses);
+    }
+
+    private ClientEvent decodeProfiles(String line) {
+        // Format: PROFILES;<user>|<fullName>|<friendCount>|<mutualCount>;...
+        // fullName has '%', ';' and '|' percent-encoded
+        String[] entries = line.split(";");
+        Map<String, ClientEvent.Profile> profiles = new HashMap<>();
+        for (int i = 1; i < entries.length; i++) {
+            String[] fields = entries[i].split("\\|");
+            if (fields.length >= 4) {
+                try {
+                    profiles.put(fields[0], new ClientEvent.Profile(decodeField(fields[1]),
+                        Integer.parseInt(fields[2]), Integer.parseInt(fields[3])));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid profile entry: " + entries[i]);
+                }
+            }
+        }
+        return new ClientEvent.Profiles(profiles);
+    }
+
+    /**
+     * Undo the server's percent-encoding of a PROFILES field
+     */
+    private static String decodeField(String value) {
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        StringBuilder decoded = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length()) {
+                int high = Character.digit(value.charAt(i + 1), 16);
+                int low = Character.digit(value.charAt(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    decoded.append((char) (high * 16 + low));
+                    i += 2;
+                    continue;
+                }
+            }
+            decoded.append(c);
+        }
+        return decoded.toString();
+    }
+}
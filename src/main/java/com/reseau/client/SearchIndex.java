@@ -0,0 +1,376 @@
+package com.reseau.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * SearchIndex - In-memory text index for contacts and cached messages
+ * Each entry is indexed twice: its words in a sorted map for prefix matching
+ * ("al" finds "Alice"), and every 3-character window of its text in trigram
+ * posting lists for substring matching ("lic" finds "Alice"). A query term
+ * of 3+ characters intersects the posting lists of its trigrams and only
+ * verifies the few candidates left; shorter terms use the word prefixes.
+ * All terms of a query must match.
+ *
+ * Candidates are checked newest first and only until enough hits are found,
+ * so a common word costs no more than a rare one. Typing usually extends the
+ * previous query, so a small previous candidate set is reused as is.
+ * Not thread-safe; the chat window uses it from the FX thread only.
+ */
+public class SearchIndex<T> {
+    private static final int TRIGRAM = 3;
+    private static final int MAX_REUSED_CANDIDATES = 4096;
+
+    /**
+     * One search result with the ranges to highlight in its text
+     */
+    public static class Hit<T> {
+        public final T item;
+        public final String text;
+        private final int[] ranges; // start, end, start, end, ... sorted and merged
+
+        Hit(T item, String text, int[] ranges) {
+            this.item = item;
+            this.text = text;
+            this.ranges = ranges;
+        }
+
+        public int getRangeCount() {
+            return ranges.length / 2;
+        }
+
+        public int getRangeStart(int i) {
+            return ranges[2 * i];
+        }
+
+        public int getRangeEnd(int i) {
+            return ranges[2 * i + 1];
+        }
+    }
+
+    private static class Entry<T> {
+        final T item;
+        final String text;
+        final String folded;  // lower-cased, same length as text
+        boolean removed;
+
+        Entry(T item, String text) {
+            this.item = item;
+            this.text = text;
+            this.folded = fold(text);
+        }
+    }
+
+    // Growable list of entry ids, ascending (ids only ever increase)
+    private static class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private final List<Entry<T>> entries = new ArrayList<>(); // by id
+    private final Map<T, Integer> ids = new HashMap<>();
+    private final Map<Long, Postings> trigrams = new HashMap<>();
+    private final NavigableMap<String, Postings> words = new TreeMap<>();
+    private int removedCount;
+
+    // Candidates of the last query, reused when the next one extends it
+    private String lastQuery;
+    private String[] lastTerms;
+    private int[] lastCandidates;
+
+    /**
+     * Index an item under a text; an item already indexed is re-indexed
+     */
+    public void put(T item, String text) {
+        remove(item);
+        int id = entries.size();
+        Entry<T> entry = new Entry<>(item, text);
+        entries.add(entry);
+        ids.put(item, id);
+
+        String folded = entry.folded;
+        for (int i = 0; i + TRIGRAM <= folded.length(); i++) {
+            trigrams.computeIfAbsent(trigramKey(folded, i), k -> new Postings()).add(id);
+        }
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.computeIfAbsent(folded.substring(start, i), k -> new Postings()).add(id);
+                start = -1;
+            }
+        }
+
+        // Keep the last candidate set current instead of dropping it
+        if (lastQuery != null && matchesAll(folded, lastTerms)) {
+            lastCandidates = Arrays.copyOf(lastCandidates, lastCandidates.length + 1);
+            lastCandidates[lastCandidates.length - 1] = id;
+        }
+    }
+
+    /**
+     * Drop an item; its postings are cleaned up lazily
+     */
+    public void remove(T item) {
+        Integer id = ids.remove(item);
+        if (id == null) {
+            return;
+        }
+        // Removed entries are skipped when checked, the last candidate set stays usable
+        entries.get(id).removed = true;
+        removedCount++;
+        if (removedCount > 1000 && removedCount > entries.size() / 2) {
+            rebuild();
+        }
+    }
+
+    public boolean contains(T item) {
+        return ids.containsKey(item);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        ids.clear();
+        trigrams.clear();
+        words.clear();
+        removedCount = 0;
+        lastQuery = null;
+    }
+
+    /**
+     * Entries matching every term of the query, newest first
+     * @param limit maximum number of hits returned
+     */
+    public List<Hit<T>> search(String query, int limit) {
+        String[] terms = fold(query).trim().split("\\s+");
+        if (terms.length == 0 || terms[0].isEmpty()) {
+            return Collections.emptyList();
+        }
+        String normalized = String.join(" ", terms);
+
+        int[] candidates;
+        if (lastQuery != null && normalized.startsWith(lastQuery) && refines(lastTerms, terms)
+                && lastCandidates.length <= MAX_REUSED_CANDIDATES) {
+            candidates = lastCandidates;
+        } else {
+            candidates = candidates(terms);
+        }
+        lastQuery = normalized;
+        lastTerms = terms;
+        lastCandidates = candidates;
+
+        List<Hit<T>> hits = new ArrayList<>(Math.min(limit, candidates.length));
+        for (int i = candidates.length - 1; i >= 0 && hits.size() < limit; i--) {
+            Entry<T> entry = entries.get(candidates[i]);
+            if (!entry.removed && matchesAll(entry.folded, terms)) {
+                hits.add(new Hit<>(entry.item, entry.text, highlight(entry.folded, terms)));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * True if every entry matching the new terms also matched the previous ones
+     * The new query extends the previous text, so only its last previous term
+     * can have grown. Growing from a word prefix (1-2 characters) to a
+     * substring (3+) widens that term, so the previous set is not enough.
+     */
+    private static boolean refines(String[] previous, String[] terms) {
+        int last = previous.length - 1;
+        return previous[last].length() >= TRIGRAM || terms[last].length() < TRIGRAM;
+    }
+
+    /**
+     * Ids that may match: those of the most selective term
+     * A trigram term is rated by its rarest trigram, so only the chosen term
+     * pays for intersecting its posting lists.
+     */
+    private int[] candidates(String[] terms) {
+        int[] best = null;
+        String bestTrigramTerm = null;
+        int bestSize = Integer.MAX_VALUE;
+        for (String term : terms) {
+            if (term.length() >= TRIGRAM) {
+                int size = rarestTrigramSize(term);
+                if (size < bestSize) {
+                    bestSize = size;
+                    bestTrigramTerm = term;
+                    best = null;
+                }
+            } else {
+                int[] ids = prefixCandidates(term);
+                if (ids.length < bestSize) {
+                    bestSize = ids.length;
+                    bestTrigramTerm = null;
+                    best = ids;
+                }
+            }
+            if (bestSize == 0) {
+                return new int[0];
+            }
+        }
+        return best != null ? best : trigramCandidates(bestTrigramTerm);
+    }
+
+    private int rarestTrigramSize(String term) {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i + TRIGRAM <= term.length(); i++) {
+            Postings postings = trigrams.get(trigramKey(term, i));
+            if (postings == null) {
+                return 0;
+            }
+            min = Math.min(min, postings.size);
+        }
+        return min;
+    }
+
+    private int[] trigramCandidates(String term) {
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + TRIGRAM <= term.length(); i++) {
+            Postings postings = trigrams.get(trigramKey(term, i));
+            if (postings == null) {
+                return new int[0];
+            }
+            lists.add(postings);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        int[] result = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        int size = result.length;
+        for (int l = 1; l < lists.size() && size > 0; l++) {
+            Postings other = lists.get(l);
+            int kept = 0;
+            int from = 0;
+            if (other.size > 8 * size) {
+                // Much longer list: binary search from the last position
+                for (int i = 0; i < size && from < other.size; i++) {
+                    int found = Arrays.binarySearch(other.ids, from, other.size, result[i]);
+                    if (found >= 0) {
+                        result[kept++] = result[i];
+                        from = found + 1;
+                    } else {
+                        from = -found - 1;
+                    }
+                }
+            } else {
+                for (int i = 0; i < size; i++) {
+                    while (from < other.size && other.ids[from] < result[i]) {
+                        from++;
+                    }
+                    if (from < other.size && other.ids[from] == result[i]) {
+                        result[kept++] = result[i];
+                    }
+                }
+            }
+            size = kept;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private int[] prefixCandidates(String prefix) {
+        // Union of the posting lists of every word with this prefix, sorted by id
+        BitSet merged = new BitSet(entries.size());
+        for (Postings postings : words.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            for (int i = 0; i < postings.size; i++) {
+                merged.set(postings.ids[i]);
+            }
+        }
+        return merged.stream().toArray();
+    }
+
+    private static boolean matchesAll(String folded, String[] terms) {
+        for (String term : terms) {
+            if (find(folded, term, 0) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Next match of a term: anywhere for 3+ characters, at a word start otherwise
+     */
+    private static int find(String folded, String term, int from) {
+        int index = folded.indexOf(term, from);
+        if (term.length() >= TRIGRAM) {
+            return index;
+        }
+        while (index > 0 && Character.isLetterOrDigit(folded.charAt(index - 1))) {
+            index = folded.indexOf(term, index + 1);
+        }
+        return index;
+    }
+
+    private static int[] highlight(String folded, String[] terms) {
+        List<int[]> ranges = new ArrayList<>();
+        for (String term : terms) {
+            for (int i = find(folded, term, 0); i >= 0; i = find(folded, term, i + term.length())) {
+                ranges.add(new int[] {i, i + term.length()});
+            }
+        }
+        ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        int[] merged = new int[ranges.size() * 2];
+        int size = 0;
+        for (int[] range : ranges) {
+            if (size > 0 && range[0] <= merged[size - 1]) {
+                merged[size - 1] = Math.max(merged[size - 1], range[1]);
+            } else {
+                merged[size++] = range[0];
+                merged[size++] = range[1];
+            }
+        }
+        return Arrays.copyOf(merged, size);
+    }
+
+    private void rebuild() {
+        List<Entry<T>> live = new ArrayList<>();
+        for (Entry<T> entry : entries) {
+            if (!entry.removed) {
+                live.add(entry);
+            }
+        }
+        clear();
+        for (Entry<T> entry : live) {
+            put(entry.item, entry.text);
+        }
+    }
+
+    private static long trigramKey(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /**
+     * Lower-case char by char so offsets stay valid in the original text
+     */
+    private static String fold(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,83 @@
+package com.reseau.client;
+
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+/**
+ * SearchResultCell - One message search hit: where and when, then a snippet
+ * of the text with the matched ranges highlighted (.search-hit in nexo.css)
+ */
+public class SearchResultCell extends ListCell<SearchIndex.Hit<ClientEvent.ChatMessage>> {
+    private static final int SNIPPET_CONTEXT = 30;
+    private static final int SNIPPET_LENGTH = 140;
+
+    private final String ownUsername;
+    private final VBox row = new VBox(2);
+    private final Label origin = new Label();
+    private final TextFlow snippet = new TextFlow();
+
+    public SearchResultCell(String ownUsername) {
+        this.ownUsername = ownUsername;
+        getStyleClass().add("search-result-cell");
+        setPrefWidth(0);
+
+        origin.getStyleClass().add("search-result-origin");
+        snippet.getStyleClass().add("search-result-text");
+        row.getChildren().addAll(origin, snippet);
+    }
+
+    @Override
+    protected void updateItem(SearchIndex.Hit<ClientEvent.ChatMessage> hit, boolean empty) {
+        super.updateItem(hit, empty);
+
+        if (empty || hit == null) {
+            setGraphic(null);
+            return;
+        }
+
+        ClientEvent.ChatMessage msg = hit.item;
+        String conversation = msg.isGlobal() ? "#general"
+            : "@" + (msg.sender.equals(ownUsername) ? msg.recipient : msg.sender);
+        origin.setText(msg.sender + "  ·  " + conversation + "  ·  " + msg.time);
+
+        // Window of the text around the first hit
+        String text = hit.text;
+        int start = hit.getRangeCount() > 0 ? Math.max(0, hit.getRangeStart(0) - SNIPPET_CONTEXT) : 0;
+        int end = Math.min(text.length(), start + SNIPPET_LENGTH);
+
+        snippet.getChildren().clear();
+        if (start > 0) {
+            snippet.getChildren().add(plain("…"));
+        }
+        int pos = start;
+        for (int i = 0; i < hit.getRangeCount() && hit.getRangeStart(i) < end; i++) {
+            int from = Math.max(hit.getRangeStart(i), start);
+            int to = Math.min(hit.getRangeEnd(i), end);
+            if (from > pos) {
+                snippet.getChildren().add(plain(text.substring(pos, from)));
+            }
+            if (to > from) {
+                Text match = plain(text.substring(from, to));
+                match.getStyleClass().add("search-hit");
+                snippet.getChildren().add(match);
+                pos = to;
+            }
+        }
+        if (pos < end) {
+            snippet.getChildren().add(plain(text.substring(pos, end)));
+        }
+        if (end < text.length()) {
+            snippet.getChildren().add(plain("…"));
+        }
+        setGraphic(row);
+    }
+
+    private static Text plain(String s) {
+        Text text = new Text(s);
+        text.getStyleClass().add("search-text");
+        return text;
+    }
+}
@@ -0,0 +1,104 @@
+package com.reseau.client;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+
+/**
+ * StartupMetrics - Client startup timings, measured from JVM start
+ * Phases are marked once each and logged as "STARTUP:" lines:
+ *   login first frame  - first pulse of the login window
+ *   login started      - password submitted or saved session being resumed
+ *   chat first frame   - first pulse of the chat window
+ *   chat interactive   - first pulse after the initial user list is shown
+ *
+ * Time to interactive excludes the time spent typing the password:
+ * login first frame + (chat interactive - login started). As a regression
+ * check, start the client with a saved session and
+ *   -Dnexo.startup.budgetMs=<ms>  warn (exit code 1 with exit) when over budget
+ *   -Dnexo.startup.exit=true      exit once interactive, e.g. from a script
+ */
+public final class StartupMetrics {
+    public static final String LOGIN_FIRST_FRAME = "login first frame";
+    public static final String LOGIN_STARTED = "login started";
+    public static final String CHAT_FIRST_FRAME = "chat first frame";
+    public static final String CHAT_INTERACTIVE = "chat interactive";
+
+    private static final long BUDGET_MS = Long.getLong("nexo.startup.budgetMs", 0);
+    private static final boolean EXIT_WHEN_INTERACTIVE = Boolean.getBoolean("nexo.startup.exit");
+    private static final long JVM_START = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+    private static final Map<String, Long> marks = new LinkedHashMap<>();
+
+    private StartupMetrics() {
+    }
+
+    /**
+     * Record a phase (first call wins)
+     */
+    public static void mark(String phase) {
+        long elapsed = System.currentTimeMillis() - JVM_START;
+        synchronized (marks) {
+            if (marks.putIfAbsent(phase, elapsed) != null) {
+                return;
+            }
+        }
+        System.out.println("STARTUP: " + phase + " at " + elapsed + " ms");
+        if (CHAT_INTERACTIVE.equals(phase)) {
+            report();
+        }
+    }
+
+    /**
+     * Record a phase after the next layout pulse of a scene, i.e. once
+     * what was just built is actually laid out for the first frame
+     */
+    public static void markOnNextFrame(Scene scene, String phase) {
+        synchronized (marks) {
+            if (marks.containsKey(phase)) {
+                return;
+            }
+        }
+        AtomicBoolean done = new AtomicBoolean(false);
+        Runnable[] listener = new Runnable[1];
+        listener[0] = () -> {
+            if (done.compareAndSet(false, true)) {
+                mark(phase);
+                // Not removed during the pulse that is iterating the listeners
+                Platform.runLater(() -> scene.removePostLayoutPulseListener(listener[0]));
+            }
+        };
+        scene.addPostLayoutPulseListener(listener[0]);
+        Platform.requestNextPulse();
+    }
+
+    private static void report() {
+        Long firstFrame;
+        Long loginStarted;
+        Long interactive;
+        synchronized (marks) {
+            firstFrame = marks.get(LOGIN_FIRST_FRAME);
+            loginStarted = marks.get(LOGIN_STARTED);
+            interactive = marks.get(CHAT_INTERACTIVE);
+        }
+        if (firstFrame == null || loginStarted == null || interactive == null) {
+            return;
+        }
+
+        long timeToInteractive = firstFrame + (interactive - loginStarted);
+        System.out.println("STARTUP: time to first frame " + firstFrame + " ms, time to interactive " +
+            timeToInteractive + " ms (login to interactive " + (interactive - loginStarted) + " ms)");
+
+        boolean overBudget = BUDGET_MS > 0 && timeToInteractive > BUDGET_MS;
+        if (overBudget) {
+            System.err.println("WARNING: Startup over budget: " + timeToInteractive + " ms > " + BUDGET_MS + " ms");
+        }
+        if (EXIT_WHEN_INTERACTIVE) {
+            System.exit(overBudget ? 1 : 0);
+        }
+    }
+}
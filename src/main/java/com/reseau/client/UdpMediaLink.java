@@ -0,0 +1,214 @@
+package com.reseau.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.reseau.common.FrameReassembler;
+import com.reseau.common.MediaPacket;
+
+/**
+ * UdpMediaLink - Optional UDP path for the media of a call (-Dnexo.media.udp=true)
+ * After the TCP handshake the client sends a HELLO with its session token to
+ * the same port until the server echoes it. From then on frames go both ways
+ * as MediaPackets, so a lost packet costs one frame instead of stalling the
+ * stream; the TCP connection keeps carrying control records. Without an echo
+ * the call stays on TCP.
+ *
+ * -Dnexo.media.udpLoss=<0..1> drops that share of packets in both directions,
+ * to try calls on a lossy link over loopback.
+ */
+public class UdpMediaLink implements Closeable {
+    public static final boolean ENABLED = Boolean.getBoolean("nexo.media.udp");
+    private static final double SIMULATED_LOSS = Double.parseDouble(System.getProperty("nexo.media.udpLoss", "0"));
+    private static final int HELLO_ATTEMPTS = 10;
+    private static final long HELLO_INTERVAL_MS = 200;
+    private static final int SOCKET_BUFFER = 1024 * 1024;
+
+    /**
+     * Receives the reassembled frames of the other participants
+     */
+    public interface FrameListener {
+        void onFrame(int senderId, int sequence, int timestamp, byte[] frame);
+    }
+
+    private static final FrameReassembler.Buffers<byte[]> ARRAYS = new FrameReassembler.Buffers<>() {
+        @Override
+        public byte[] allocate(int capacity) {
+            return new byte[capacity];
+        }
+
+        @Override
+        public ByteBuffer view(byte[] buffer) {
+            return ByteBuffer.wrap(buffer);
+        }
+
+        @Override
+        public void discard(byte[] buffer) {
+        }
+    };
+
+    private final String name;
+    private final DatagramSocket socket;
+    private final int clientId;
+    private final String sessionToken;
+    private final int maxFrame;
+    private final FrameListener listener;
+    private volatile boolean open = true;
+    private volatile boolean established;
+
+    // Sending side, used by one sender thread
+    private final byte[] sendBuffer = new byte[MediaPacket.MAX_PACKET];
+    private final ByteBuffer sendHeader = ByteBuffer.wrap(sendBuffer);
+    private final DatagramPacket sendPacket = new DatagramPacket(sendBuffer, sendBuffer.length);
+    private int nextSequence;
+
+    // Reassemblers are used by the receive thread only; close() reads their counters
+    private final Map<Integer, FrameReassembler<byte[]>> reassemblers = new ConcurrentHashMap<>();
+    private final AtomicLong packetsDropped = new AtomicLong();
+
+    public UdpMediaLink(String name, String host, int port, int clientId, String sessionToken,
+                        int maxFrame, FrameListener listener) throws IOException {
+        this.name = name;
+        this.clientId = clientId;
+        this.sessionToken = sessionToken;
+        this.maxFrame = maxFrame;
+        this.listener = listener;
+        socket = new DatagramSocket();
+        socket.setReceiveBufferSize(SOCKET_BUFFER);
+        socket.setSendBufferSize(SOCKET_BUFFER);
+        socket.connect(new InetSocketAddress(host, port));
+
+        Thread receiver = new Thread(this::receiveLoop, name + "-udp");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Send HELLO until the server binds this link to the client
+     * @return false if the server never answered; the caller stays on TCP
+     */
+    public boolean establish() throws InterruptedException {
+        byte[] hello = ("TOKEN " + sessionToken).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < HELLO_ATTEMPTS && open && !established; i++) {
+            try {
+                sendFragment(MediaPacket.TYPE_HELLO, 0, 1, 0, 0, hello, 0, hello.length);
+            } catch (IOException e) {
+                return false;
+            }
+            synchronized (this) {
+                if (!established) {
+                    wait(HELLO_INTERVAL_MS);
+                }
+            }
+        }
+        return established;
+    }
+
+    /**
+     * Send one frame, split into as many packets as it needs
+     */
+    public void send(byte[] frame, int length) throws IOException {
+        int count = MediaPacket.fragmentCount(length);
+        if (count > MediaPacket.MAX_FRAGMENTS) {
+            throw new IOException("Frame too large for UDP: " + length + " bytes");
+        }
+        int sequence = nextSequence++;
+        int timestamp = (int) System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            int offset = i * MediaPacket.MAX_PAYLOAD;
+            sendFragment(MediaPacket.TYPE_MEDIA, i, count, sequence, timestamp,
+                frame, offset, Math.min(MediaPacket.MAX_PAYLOAD, length - offset));
+        }
+    }
+
+    private void sendFragment(int type, int index, int count, int sequence, int timestamp,
+                              byte[] data, int offset, int size) throws IOException {
+        if (simulateLoss()) {
+            return;
+        }
+        sendHeader.clear();
+        MediaPacket.putHeader(sendHeader, type, index, count, clientId, sequence, timestamp);
+        System.arraycopy(data, offset, sendBuffer, MediaPacket.HEADER, size);
+        sendPacket.setLength(MediaPacket.HEADER + size);
+        socket.send(sendPacket);
+    }
+
+    private boolean simulateLoss() {
+        if (SIMULATED_LOSS > 0 && ThreadLocalRandom.current().nextDouble() < SIMULATED_LOSS) {
+            packetsDropped.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void receiveLoop() {
+        byte[] buffer = new byte[MediaPacket.MAX_PACKET + 1];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        try {
+            while (open) {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                if (simulateLoss()) {
+                    continue;
+                }
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, packet.getLength());
+                if (!MediaPacket.isValid(data)) {
+                    continue;
+                }
+                if (MediaPacket.getType(data) == MediaPacket.TYPE_HELLO) {
+                    synchronized (this) {
+                        established = true;
+                        notifyAll();
+                    }
+                    continue;
+                }
+                int sender = MediaPacket.getSender(data);
+                FrameReassembler<byte[]> reassembler = reassemblers.computeIfAbsent(sender,
+                    id -> new FrameReassembler<>(ARRAYS, 0, maxFrame));
+                byte[] frame = reassembler.add(data);
+                if (frame != null) {
+                    int length = reassembler.getLastLength();
+                    listener.onFrame(sender, reassembler.getLastSequence(), reassembler.getLastTimestamp(),
+                        frame.length == length ? frame : Arrays.copyOf(frame, length));
+                }
+            }
+        } catch (IOException e) {
+            if (open) {
+                System.err.println(name + " UDP link error: " + e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEstablished() {
+        return established;
+    }
+
+    @Override
+    public void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        socket.close();
+        long completed = 0;
+        long lost = 0;
+        long late = 0;
+        for (FrameReassembler<byte[]> reassembler : reassemblers.values()) {
+            completed += reassembler.getCompleted();
+            lost += reassembler.getLost();
+            late += reassembler.getLate();
+        }
+        System.out.println(name + " UDP link closed: " + completed + " frames received, " + lost + " lost, " +
+            late + " late" + (SIMULATED_LOSS > 0 ? ", " + packetsDropped.get() + " packets dropped by the loss simulator" : ""));
+    }
+}
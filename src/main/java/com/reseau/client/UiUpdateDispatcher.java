@@ -0,0 +1,136 @@
+package com.reseau.client;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+/**
+ * UiUpdateDispatcher - Applies UI updates in batches, once per JavaFX pulse
+ * Network threads post updates into a lock-free queue; an AnimationTimer
+ * drains it on the FX thread and then runs the pulse hooks (list flushes,
+ * scrolling) once for the whole batch. The timer only runs while there is
+ * work, so an idle window does not request pulses.
+ *
+ * FX-thread time is measured per 1000 applied updates and logged. Starting
+ * the client with -Dnexo.ui.direct=true posts every update with its own
+ * Platform.runLater instead, for comparison with the same counters.
+ */
+public class UiUpdateDispatcher {
+    private static final long FRAME_BUDGET_NANOS = 8_000_000; // leave room for layout and render
+    private static final int REPORT_EVERY = 1000;
+
+    private final boolean direct = Boolean.getBoolean("nexo.ui.direct");
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final List<Runnable> pulseHooks = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AnimationTimer timer;
+
+    // Instrumentation, FX thread only
+    private long measuredNanos;
+    private int measuredUpdates;
+    private int measuredPulses;
+
+    public UiUpdateDispatcher() {
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                drain();
+            }
+        };
+    }
+
+    /**
+     * Queue an update from any thread; it runs on the FX thread in the next pulse
+     */
+    public void post(Runnable update) {
+        if (direct) {
+            Platform.runLater(() -> {
+                long start = System.nanoTime();
+                update.run();
+                for (Runnable hook : pulseHooks) {
+                    hook.run();
+                }
+                record(1, System.nanoTime() - start);
+            });
+            return;
+        }
+        pending.add(update);
+        requestPulse();
+    }
+
+    /**
+     * Run a hook after each batch (e.g. flush a list model, scroll once)
+     */
+    public void addPulseHook(Runnable hook) {
+        pulseHooks.add(hook);
+    }
+
+    /**
+     * Make sure the pulse hooks run soon even if nothing was posted
+     */
+    public void requestPulse() {
+        if (scheduled.compareAndSet(false, true)) {
+            Platform.runLater(timer::start);
+        }
+    }
+
+    public void stop() {
+        pending.clear();
+        Platform.runLater(timer::stop);
+    }
+
+    private void drain() {
+        long start = System.nanoTime();
+        int applied = 0;
+
+        Runnable update;
+        while ((update = pending.poll()) != null) {
+            try {
+                update.run();
+            } catch (Exception e) {
+                System.err.println("UI update failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+            applied++;
+            if (System.nanoTime() - start > FRAME_BUDGET_NANOS) {
+                break; // The rest waits for the next pulse
+            }
+        }
+
+        for (Runnable hook : pulseHooks) {
+            hook.run();
+        }
+
+        if (pending.isEmpty()) {
+            timer.stop();
+            scheduled.set(false);
+            // An update may have been posted between the check and the reset
+            if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+                timer.start();
+            }
+        }
+
+        if (applied > 0) {
+            record(applied, System.nanoTime() - start);
+        }
+    }
+
+    private void record(int updates, long nanos) {
+        measuredNanos += nanos;
+        measuredUpdates += updates;
+        measuredPulses++;
+        if (measuredUpdates >= REPORT_EVERY) {
+            System.out.printf("DEBUG: UiUpdateDispatcher (%s) - %d updates in %d FX runs, %.1f ms FX time per 1k%n",
+                direct ? "runLater" : "batched", measuredUpdates, measuredPulses,
+                measuredNanos / 1e6 * 1000.0 / measuredUpdates);
+            measuredNanos = 0;
+            measuredUpdates = 0;
+            measuredPulses = 0;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.reseau.client;
+
+import java.util.function.Consumer;
+
+import com.reseau.common.UserInfo;
+
+import javafx.css.PseudoClass;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+
+/**
+ * UserListCell - Recycled row of the online users sidebar
+ * Single click selects (profile), double click opens (private chat).
+ */
+public class UserListCell extends ListCell<UserInfo> {
+    private static final PseudoClass ONLINE = PseudoClass.getPseudoClass("online");
+    private static final PseudoClass INACTIVE = PseudoClass.getPseudoClass("inactive");
+
+    private final VBox row = new VBox(2);
+    private final Label statusLabel = new Label("●");
+    private final Label nameLabel = new Label();
+    private final Label ipLabel = new Label();
+
+    public UserListCell(Consumer<String> onSelect, Consumer<String> onOpen) {
+        getStyleClass().add("user-cell");
+        setPrefWidth(0);
+
+        statusLabel.getStyleClass().add("user-status");
+        nameLabel.getStyleClass().add("user-name");
+        ipLabel.getStyleClass().add("user-ip");
+
+        HBox mainLine = new HBox(8, statusLabel, nameLabel);
+        mainLine.setAlignment(Pos.CENTER_LEFT);
+        row.getChildren().addAll(mainLine, ipLabel);
+
+        row.getStyleClass().add("user-row");
+        row.setOnMouseClicked(e -> {
+            UserInfo user = getItem();
+            if (user == null) {
+                return;
+            }
+            if (e.getClickCount() == 1) {
+                onSelect.accept(user.getUsername());
+            } else if (e.getClickCount() == 2) {
+                onOpen.accept(user.getUsername());
+            }
+        });
+    }
+
+    @Override
+    protected void updateItem(UserInfo user, boolean empty) {
+        super.updateItem(user, empty);
+
+        if (empty || user == null) {
+            setGraphic(null);
+            return;
+        }
+
+        statusLabel.pseudoClassStateChanged(ONLINE, user.getStatus() == UserInfo.UserStatus.ONLINE);
+        statusLabel.pseudoClassStateChanged(INACTIVE, user.getStatus() == UserInfo.UserStatus.INACTIVE);
+        nameLabel.setText(deviceIcon(user.getDevice()) + " " + user.getUsername());
+        ipLabel.setText("   " + user.getIpAddress());
+        setGraphic(row);
+    }
+
+    private static String deviceIcon(String device) {
+        if (device == null)
+            return "💻";
+        String lower = device.toLowerCase();
+        if (lower.contains("windows"))
+            return "🪟";
+        if (lower.contains("mac") || lower.contains("darwin"))
+            return "🍎";
+        if (lower.contains("linux"))
+            return "🐧";
+        if (lower.contains("android"))
+            return "📱";
+        if (lower.contains("iphone") || lower.contains("ios"))
+            return "📱";
+        return "💻";
+    }
+}
@@ -7,12 +7,15 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -25,6 +28,10 @@ import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 import javax.sound.sampled.TargetDataLine;
 
+import com.reseau.common.AudioCodec;
+import com.reseau.common.AudioCodecs;
+import com.reseau.common.ComfortNoise;
+
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfByte;
@@ -106,18 +113,37 @@ public class VideoCallWindow {
     private final AtomicBoolean muteMic = new AtomicBoolean(false);
     private final AtomicBoolean muteCamera = new AtomicBoolean(false);
     private final AtomicBoolean muteSpeaker = new AtomicBoolean(false);
-    private final Map<Integer, ArrayBlockingQueue<byte[]>> audioBuffers = new ConcurrentHashMap<>();
+    // Playout buffer of each remote sender, drained by the mixer at the speakers' pace
+    private final Map<Integer, JitterBuffer> audioBuffers = new ConcurrentHashMap<>();
+    // Voice activity detection: only talk-spurts are sent (-Dnexo.audio.vad=false sends every frame)
+    private static final boolean VAD_ENABLED = !"false".equals(System.getProperty("nexo.audio.vad"));
+    private static final int COMFORT_NOISE_REFRESH_FRAMES = 50; // 1 s
+    private static final float REMOTE_GAIN = 0.15f;
+
+    // Codec of the audio stream, as answered to the offer in the token frame
+    private volatile AudioCodec audioCodec = AudioCodecs.PCM;
+    private static final int CODEC_REPLY_TIMEOUT_MS = 1000;
+
+    // Media over UDP (-Dnexo.media.udp=true); null while the stream uses its TCP connection
+    private volatile UdpMediaLink videoLink;
+    private volatile UdpMediaLink audioLink;
 
     // Audio constants
     private static final int AUDIO_SAMPLE_RATE = 16000;
     private static final int AUDIO_FRAME_MS = 20;
     private static final int AUDIO_SAMPLES_PER_FRAME = (AUDIO_SAMPLE_RATE * AUDIO_FRAME_MS) / 1000;
     private static final int AUDIO_BYTES_PER_FRAME = AUDIO_SAMPLES_PER_FRAME * 2;
+    private static final int SPEAKER_BUFFER_FRAMES = 5;
 
     private static final int VIDEO_FRAME_DELAY_MS = 33;
     
     // Callback when window is closed
     private Runnable onWindowClosed;
+    // Run once when the call ends, however it ends (hang up, close, connection lost)
+    private final AtomicReference<Runnable> onCallEnded = new AtomicReference<>();
+    
+    // Chat session token presented to the video/audio servers (null = legacy username handshake)
+    private volatile String sessionToken;
 
     public VideoCallWindow(String username, String serverHost, int videoPort, int audioPort) {
         this.username = username;
@@ -130,33 +156,22 @@ public class VideoCallWindow {
 
     private void setupUI() {
         root = new BorderPane();
-        root.setStyle("-fx-background-color: #1a1a2e;");
+        root.getStyleClass().add("call-root");
 
         // Top bar
         HBox topBar = new HBox(15);
         topBar.setPadding(new Insets(15, 20, 15, 20));
         topBar.setAlignment(Pos.CENTER_LEFT);
-        topBar.setStyle(
-            "-fx-background-color: linear-gradient(to right, #667eea, #764ba2); " +
-            "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.15), 5, 0, 0, 2);"
-        );
+        topBar.getStyleClass().add("top-bar");
 
         Label iconLabel = new Label("📹");
-        iconLabel.setStyle("-fx-font-size: 24px;");
+        iconLabel.getStyleClass().add("top-bar-icon");
 
         Label titleLabel = new Label("NEXO Video Call");
-        titleLabel.setStyle(
-            "-fx-font-size: 20px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-text-fill: white;"
-        );
+        titleLabel.getStyleClass().add("top-bar-title");
 
         statusLabel = new Label("Connecting...");
-        statusLabel.setStyle(
-            "-fx-font-size: 14px; " +
-            "-fx-text-fill: rgba(255,255,255,0.8); " +
-            "-fx-padding: 5px 15px;"
-        );
+        statusLabel.getStyleClass().add("call-status");
 
         HBox spacer = new HBox();
         HBox.setHgrow(spacer, Priority.ALWAYS);
@@ -168,7 +183,7 @@ public class VideoCallWindow {
         remoteGrid.setHgap(10);
         remoteGrid.setVgap(10);
         remoteGrid.setPadding(new Insets(15));
-        remoteGrid.setStyle("-fx-background-color: #1a1a2e;");
+        remoteGrid.getStyleClass().add("call-grid");
         remoteGrid.setPrefColumns(2);
 
         // Local video preview (bottom right corner)
@@ -176,16 +191,10 @@ public class VideoCallWindow {
         localView.setFitWidth(200);
         localView.setFitHeight(150);
         localView.setPreserveRatio(true);
-        localView.setStyle("-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.5), 10, 0, 0, 0);");
+        localView.getStyleClass().add("local-video");
 
         StackPane localViewContainer = new StackPane(localView);
-        localViewContainer.setStyle(
-            "-fx-background-color: #2a2a4e; " +
-            "-fx-background-radius: 10; " +
-            "-fx-border-color: #667eea; " +
-            "-fx-border-radius: 10; " +
-            "-fx-border-width: 2;"
-        );
+        localViewContainer.getStyleClass().add("local-video-frame");
         localViewContainer.setPadding(new Insets(5));
         localViewContainer.setMaxWidth(210);
         localViewContainer.setMaxHeight(160);
@@ -200,7 +209,7 @@ public class VideoCallWindow {
         HBox controlBar = new HBox(20);
         controlBar.setPadding(new Insets(15, 20, 15, 20));
         controlBar.setAlignment(Pos.CENTER);
-        controlBar.setStyle("-fx-background-color: #16213e;");
+        controlBar.getStyleClass().add("call-controls");
 
         muteMicButton = createToggleButton("🎤", "Mute Mic");
         muteMicButton.setOnAction(e -> {
@@ -221,33 +230,7 @@ public class VideoCallWindow {
         });
 
         Button hangupButton = new Button("❌ End Call");
-        hangupButton.setStyle(
-            "-fx-background-color: #e74c3c; " +
-            "-fx-text-fill: white; " +
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-background-radius: 25px; " +
-            "-fx-padding: 10px 25px; " +
-            "-fx-cursor: hand;"
-        );
-        hangupButton.setOnMouseEntered(e -> hangupButton.setStyle(
-            "-fx-background-color: #c0392b; " +
-            "-fx-text-fill: white; " +
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-background-radius: 25px; " +
-            "-fx-padding: 10px 25px; " +
-            "-fx-cursor: hand;"
-        ));
-        hangupButton.setOnMouseExited(e -> hangupButton.setStyle(
-            "-fx-background-color: #e74c3c; " +
-            "-fx-text-fill: white; " +
-            "-fx-font-size: 14px; " +
-            "-fx-font-weight: bold; " +
-            "-fx-background-radius: 25px; " +
-            "-fx-padding: 10px 25px; " +
-            "-fx-cursor: hand;"
-        ));
+        hangupButton.getStyleClass().add("hangup-button");
         hangupButton.setOnAction(e -> disconnect());
 
         controlBar.getChildren().addAll(muteMicButton, muteCameraButton, muteSpeakerButton, hangupButton);
@@ -261,6 +244,7 @@ public class VideoCallWindow {
         root.heightProperty().addListener((obs, oldV, newV) -> updateRemoteGridLayout());
 
         Scene scene = new Scene(root, 900, 700);
+        scene.getStylesheets().add(ChatWindow.STYLESHEET);
         stage.setScene(scene);
         stage.setTitle("NEXO Video Call - " + username);
         stage.setMinWidth(600);
@@ -276,59 +260,8 @@ public class VideoCallWindow {
 
     private ToggleButton createToggleButton(String emoji, String text) {
         ToggleButton btn = new ToggleButton(emoji + " " + text);
-        btn.setStyle(
-            "-fx-background-color: #2a2a4e; " +
-            "-fx-text-fill: white; " +
-            "-fx-font-size: 13px; " +
-            "-fx-background-radius: 25px; " +
-            "-fx-padding: 10px 20px; " +
-            "-fx-cursor: hand;"
-        );
-        btn.setOnMouseEntered(e -> {
-            if (!btn.isSelected()) {
-                btn.setStyle(
-                    "-fx-background-color: #3a3a6e; " +
-                    "-fx-text-fill: white; " +
-                    "-fx-font-size: 13px; " +
-                    "-fx-background-radius: 25px; " +
-                    "-fx-padding: 10px 20px; " +
-                    "-fx-cursor: hand;"
-                );
-            }
-        });
-        btn.setOnMouseExited(e -> {
-            if (!btn.isSelected()) {
-                btn.setStyle(
-                    "-fx-background-color: #2a2a4e; " +
-                    "-fx-text-fill: white; " +
-                    "-fx-font-size: 13px; " +
-                    "-fx-background-radius: 25px; " +
-                    "-fx-padding: 10px 20px; " +
-                    "-fx-cursor: hand;"
-                );
-            }
-        });
-        btn.selectedProperty().addListener((obs, old, newVal) -> {
-            if (newVal) {
-                btn.setStyle(
-                    "-fx-background-color: #e74c3c; " +
-                    "-fx-text-fill: white; " +
-                    "-fx-font-size: 13px; " +
-                    "-fx-background-radius: 25px; " +
-                    "-fx-padding: 10px 20px; " +
-                    "-fx-cursor: hand;"
-                );
-            } else {
-                btn.setStyle(
-                    "-fx-background-color: #2a2a4e; " +
-                    "-fx-text-fill: white; " +
-                    "-fx-font-size: 13px; " +
-                    "-fx-background-radius: 25px; " +
-                    "-fx-padding: 10px 20px; " +
-                    "-fx-cursor: hand;"
-                );
-            }
-        });
+        // Red while selected (muted), see .call-toggle:selected in nexo.css
+        btn.getStyleClass().add("call-toggle");
         return btn;
     }
 
@@ -356,16 +289,21 @@ public class VideoCallWindow {
 
             this.socket = s;
             
-            // Send username
-            byte[] usernameBytes = username.getBytes("UTF-8");
+            // Send session token (or username for servers without token support)
+            String handshake = sessionToken != null ? "TOKEN " + sessionToken : username;
+            byte[] usernameBytes = handshake.getBytes("UTF-8");
             out.writeInt(usernameBytes.length);
             out.write(usernameBytes);
             out.flush();
             
             // Receive client ID
             myClientId = in.readInt();
-            
-            Platform.runLater(() -> statusLabel.setText("Connected (ID: " + myClientId + ")"));
+
+            videoLink = openMediaLink("Video", host, port, myClientId, 50_000_000,
+                (sender, sequence, timestamp, frame) ->
+                    scheduleRemoteTileUpdate(sender, new Image(new ByteArrayInputStream(frame))));
+            String transport = videoLink != null ? ", UDP" : "";
+            Platform.runLater(() -> statusLabel.setText("Connected (ID: " + myClientId + transport + ")"));
 
             senderThread = new Thread(() -> runVideoSender(out), "video-sender");
             senderThread.setDaemon(true);
@@ -471,6 +409,16 @@ public class VideoCallWindow {
                 continue;
             }
 
+            UdpMediaLink link = videoLink;
+            if (link != null) {
+                try {
+                    link.send(bytes, bytes.length);
+                } catch (IOException e) {
+                    break;
+                }
+                continue;
+            }
+
             synchronized (out) {
                 try {
                     out.writeInt(bytes.length);
@@ -483,16 +431,40 @@ public class VideoCallWindow {
         }
     }
 
+    /**
+     * Move a stream's media to UDP when enabled and the server answers; null keeps it on TCP
+     */
+    private UdpMediaLink openMediaLink(String name, String host, int port, int clientId, int maxFrame,
+                                       UdpMediaLink.FrameListener listener) {
+        if (!UdpMediaLink.ENABLED || sessionToken == null) {
+            return null;
+        }
+        UdpMediaLink link = null;
+        try {
+            link = new UdpMediaLink(name, host, port, clientId, sessionToken, maxFrame, listener);
+            if (link.establish()) {
+                System.out.println(name + " media over UDP to " + host + ":" + port);
+                return link;
+            }
+            System.err.println("WARNING: " + name + " server did not answer over UDP, staying on TCP");
+        } catch (IOException e) {
+            System.err.println("WARNING: " + name + " UDP link unavailable, staying on TCP: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (link != null) {
+            link.close();
+        }
+        return null;
+    }
+
     private void scheduleRemoteTileUpdate(int senderId, Image image) {
         RemoteTileState state = remoteTiles.computeIfAbsent(senderId, id -> {
             ImageView view = new ImageView();
             view.setPreserveRatio(true);
             view.setSmooth(true);
             view.setCache(true);
-            view.setStyle(
-                "-fx-background-color: #2a2a4e; " +
-                "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.3), 10, 0, 0, 0);"
-            );
+            view.getStyleClass().add("remote-video");
 
             RemoteTileState created = new RemoteTileState(view);
             created.lastSeenNanos = System.nanoTime();
@@ -581,8 +553,24 @@ public class VideoCallWindow {
         running = false;
         audioRunning = false;
 
+        Runnable ended = onCallEnded.getAndSet(null);
+        if (ended != null) {
+            ended.run();
+        }
+
         stopTileReaper();
 
+        UdpMediaLink link = videoLink;
+        videoLink = null;
+        if (link != null) {
+            link.close();
+        }
+        link = audioLink;
+        audioLink = null;
+        if (link != null) {
+            link.close();
+        }
+
         Platform.runLater(() -> {
             if (remoteGrid != null) {
                 remoteGrid.getChildren().clear();
@@ -628,6 +616,9 @@ public class VideoCallWindow {
             audioMixerThread.interrupt();
         }
 
+        for (Map.Entry<Integer, JitterBuffer> entry : audioBuffers.entrySet()) {
+            System.out.println("Audio jitter buffer " + entry.getKey() + ": " + entry.getValue().getStats());
+        }
         audioBuffers.clear();
     }
 
@@ -689,6 +680,19 @@ public class VideoCallWindow {
             this.audioSocket = s;
 
             final int myAudioId = in.readInt();
+            audioCodec = AudioCodecs.PCM;
+
+            // First frame authenticates this audio connection and offers our codecs
+            if (sessionToken != null) {
+                byte[] tokenBytes = ("TOKEN " + sessionToken + AudioCodecs.OFFER_PREFIX + AudioCodecs.offer())
+                    .getBytes("UTF-8");
+                out.writeInt(tokenBytes.length);
+                out.write(tokenBytes);
+                out.flush();
+                audioCodec = awaitCodecReply(s, in, myAudioId);
+            }
+
+            audioLink = openMediaLink("Audio", host, port, myAudioId, 2_000_000, this::queueRemoteAudio);
 
             audioMixerThread = new Thread(this::runAudioMixer, "audio-mixer");
             audioMixerThread.setDaemon(true);
@@ -719,10 +723,7 @@ public class VideoCallWindow {
                     continue;
                 }
 
-                attenuatePcm16le(bytes, 0.15f);
-
-                ArrayBlockingQueue<byte[]> q = audioBuffers.computeIfAbsent(senderId, k -> new ArrayBlockingQueue<>(8));
-                q.offer(bytes);
+                queueRemoteAudio(senderId, bytes);
             }
         } catch (IOException ignored) {
         } finally {
@@ -730,6 +731,112 @@ public class VideoCallWindow {
         }
     }
 
+    /**
+     * Read up to the server's answer to our codec offer, playing the PCM audio before it
+     */
+    private AudioCodec awaitCodecReply(Socket s, DataInputStream in, int myAudioId) throws IOException {
+        s.setSoTimeout(CODEC_REPLY_TIMEOUT_MS);
+        try {
+            while (true) {
+                int senderId = in.readInt();
+                int len = in.readInt();
+                if (len <= 0 || len > 2_000_000) {
+                    throw new IOException("Invalid audio record length " + len);
+                }
+                byte[] bytes = new byte[len];
+                in.readFully(bytes);
+                if (senderId == 0 && isCodecReply(bytes)) {
+                    String name = new String(bytes, StandardCharsets.UTF_8).substring(AudioCodecs.REPLY_PREFIX.length());
+                    AudioCodec codec = AudioCodecs.get(name);
+                    System.out.println("Audio codec: " + name);
+                    return codec != null ? codec : AudioCodecs.PCM;
+                }
+                if (senderId != myAudioId) {
+                    queueRemoteAudio(senderId, bytes);
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            System.err.println("WARNING: Audio server did not answer the codec offer, sending PCM");
+            return AudioCodecs.PCM;
+        } finally {
+            s.setSoTimeout(0);
+        }
+    }
+
+    private static boolean isCodecReply(byte[] bytes) {
+        byte[] prefix = AudioCodecs.REPLY_PREFIX.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= prefix.length || bytes.length > 64) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queue a frame received on the TCP connection, where frames arrive in order
+     */
+    private void queueRemoteAudio(int senderId, byte[] frame) {
+        JitterBuffer buffer = jitterBuffer(senderId);
+        if (ComfortNoise.isMarker(frame.length)) {
+            buffer.endTalkSpurt(frame[0] & 0xFF);
+            return;
+        }
+        byte[] bytes = remotePcm(frame);
+        if (bytes != null) {
+            buffer.put(bytes, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Queue a frame received over UDP, numbered and timestamped by its sender
+     */
+    private void queueRemoteAudio(int senderId, int sequence, int timestamp, byte[] frame) {
+        JitterBuffer buffer = jitterBuffer(senderId);
+        if (ComfortNoise.isMarker(frame.length)) {
+            buffer.endTalkSpurt(sequence, frame[0] & 0xFF);
+            return;
+        }
+        byte[] bytes = remotePcm(frame);
+        if (bytes != null) {
+            buffer.put(sequence, timestamp, bytes, System.currentTimeMillis());
+        }
+    }
+
+    private JitterBuffer jitterBuffer(int senderId) {
+        return audioBuffers.computeIfAbsent(senderId, k -> new JitterBuffer(AUDIO_BYTES_PER_FRAME, AUDIO_FRAME_MS));
+    }
+
+    private byte[] remotePcm(byte[] frame) {
+        byte[] bytes = decodeAudio(frame);
+        if (bytes != null) {
+            attenuatePcm16le(bytes, REMOTE_GAIN);
+        }
+        return bytes;
+    }
+
+    /**
+     * A received frame as 16-bit PCM, null if it is not a frame of our codec
+     */
+    private byte[] decodeAudio(byte[] frame) {
+        AudioCodec codec = audioCodec;
+        if (codec == AudioCodecs.PCM) {
+            return frame;
+        }
+        int count = codec.decodedSamples(frame.length);
+        if (count != AUDIO_SAMPLES_PER_FRAME) {
+            return null;
+        }
+        int[] samples = new int[count];
+        codec.decode(ByteBuffer.wrap(frame), 0, frame.length, samples);
+        byte[] pcm = new byte[AUDIO_BYTES_PER_FRAME];
+        AudioCodecs.PCM.encode(samples, count, ByteBuffer.wrap(pcm), 0);
+        return pcm;
+    }
+
     private void attenuatePcm16le(byte[] pcm, float gain) {
         if (gain >= 0.999f) {
             return;
@@ -764,6 +871,12 @@ public class VideoCallWindow {
         }
 
         byte[] buf = new byte[AUDIO_BYTES_PER_FRAME];
+        int[] samples = new int[AUDIO_SAMPLES_PER_FRAME];
+        byte[] encoded = new byte[AUDIO_BYTES_PER_FRAME];
+        byte[] marker = new byte[ComfortNoise.LENGTH];
+        VoiceActivityDetector vad = new VoiceActivityDetector();
+        boolean talking = false;
+        int silentFrames = 0;
 
         try {
             while (audioRunning && audioSocket != null && !audioSocket.isClosed()) {
@@ -786,22 +899,58 @@ public class VideoCallWindow {
                     }
                 }
 
-                if (muteMic.get()) {
-                    for (int i = 0; i < buf.length; i++) {
-                        buf[i] = 0;
+                boolean muted = muteMic.get();
+                if (muted) {
+                    vad.skip();
+                }
+                if (muted || (VAD_ENABLED && !vad.process(buf, buf.length))) {
+                    silentFrames++;
+                    // End of the talk-spurt: tell receivers what to fill the silence with,
+                    // and refresh that now and then in case the marker was lost or the room changed
+                    if (talking || (!muted && silentFrames % COMFORT_NOISE_REFRESH_FRAMES == 0)) {
+                        talking = false;
+                        silentFrames = 0;
+                        marker[0] = (byte) (muted ? ComfortNoise.SILENT : vad.getNoiseLevel());
+                        sendAudioFrame(out, marker, marker.length);
                     }
+                    continue;
                 }
-
-                synchronized (out) {
-                    out.writeInt(buf.length);
-                    out.write(buf, 0, buf.length);
-                    out.flush();
+                talking = true;
+
+                byte[] payload = buf;
+                int length = buf.length;
+                AudioCodec codec = audioCodec;
+                if (codec != AudioCodecs.PCM) {
+                    length = codec.encodedLength(samples.length);
+                    if (encoded.length < length) {
+                        encoded = new byte[length];
+                    }
+                    AudioCodecs.PCM.decode(ByteBuffer.wrap(buf), 0, buf.length, samples);
+                    codec.encode(samples, samples.length, ByteBuffer.wrap(encoded), 0);
+                    payload = encoded;
                 }
+                sendAudioFrame(out, payload, length);
             }
         } catch (IOException ignored) {
         } finally {
             mic.stop();
             mic.close();
+            if (VAD_ENABLED) {
+                System.out.println("Audio VAD: " + vad.getStats());
+            }
+        }
+    }
+
+    private void sendAudioFrame(DataOutputStream out, byte[] payload, int length) throws IOException {
+        UdpMediaLink link = audioLink;
+        if (link != null) {
+            link.send(payload, length);
+            return;
+        }
+        synchronized (out) {
+            out.writeInt(length);
+            out.write(payload, 0, length);
+            out.flush();
         }
     }
 
@@ -812,7 +961,8 @@ public class VideoCallWindow {
         SourceDataLine speakers;
         try {
             speakers = (SourceDataLine) AudioSystem.getLine(info);
-            speakers.open(fmt);
+            // A short line buffer: each write then waits for the speakers, which clock the mix
+            speakers.open(fmt, AUDIO_BYTES_PER_FRAME * SPEAKER_BUFFER_FRAMES);
             speakers.start();
         } catch (LineUnavailableException e) {
             System.err.println("Speakers unavailable: " + e.getMessage());
@@ -838,9 +988,15 @@ public class VideoCallWindow {
 
                 boolean any = false;
                 int activeStreams = 0;
-                for (ArrayBlockingQueue<byte[]> q : audioBuffers.values()) {
-                    byte[] frame = q.poll();
+                for (JitterBuffer buffer : audioBuffers.values()) {
+                    byte[] frame = buffer.poll();
                     if (frame == null) {
+                        // Between talk-spurts: silence, or the sender's background noise
+                        int level = buffer.getComfortNoiseLevel();
+                        if (level < ComfortNoise.SILENT) {
+                            addComfortNoise(mix, ComfortNoise.amplitude(level) * REMOTE_GAIN);
+                            any = true;
+                        }
                         continue;
                     }
 
@@ -893,6 +1049,13 @@ public class VideoCallWindow {
         }
     }
 
+    private static void addComfortNoise(int[] mix, double amplitude) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < mix.length; i++) {
+            mix[i] += (int) (random.nextGaussian() * amplitude);
+        }
+    }
+
     /**
      * Show the video call window and start the connection
      * This is the main entry point - call this once to start the call
@@ -906,7 +1069,15 @@ public class VideoCallWindow {
         return stage;
     }
     
+    public void setSessionToken(String sessionToken) {
+        this.sessionToken = sessionToken;
+    }
+    
     public void setOnWindowClosed(Runnable callback) {
         this.onWindowClosed = callback;
     }
+    
+    public void setOnCallEnded(Runnable callback) {
+        this.onCallEnded.set(callback);
+    }
 }
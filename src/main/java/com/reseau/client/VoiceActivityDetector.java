@@ -0,0 +1,104 @@
+package com.reseau.client;
+
+import com.reseau.common.ComfortNoise;
+
+/**
+ * VoiceActivityDetector - Decides which mic frames are worth sending
+ * A frame is speech when its energy stands clear of the background noise
+ * floor, or, for fricatives ("s", "f"), when it is only a little louder but
+ * crosses zero often. The floor follows quiet frames quickly and loud ones
+ * very slowly, so it adapts to a room without learning the speaker's voice.
+ * After speech, frames keep being sent for a hangover period so that word
+ * endings and short pauses are not cut.
+ * Not thread-safe: used by the capture thread.
+ */
+public class VoiceActivityDetector {
+    private static final int HANGOVER_FRAMES = 10; // 200 ms of 20 ms frames
+    private static final double VOICED_MARGIN = 4.0; // 6 dB above the floor
+    private static final double UNVOICED_MARGIN = 2.0; // 3 dB above the floor
+    private static final double UNVOICED_CROSSINGS = 0.3; // zero crossings per sample
+    private static final double MIN_SPEECH_POWER = 10_000; // about -50 dBov
+    private static final double MIN_FLOOR = 100;
+
+    private double noiseFloor = MIN_SPEECH_POWER;
+    private int hangover;
+
+    private long frames;
+    private long speechFrames;
+    private long sentFrames;
+    private long talkSpurts;
+    private boolean talking;
+
+    /**
+     * Classify one frame of 16-bit little-endian PCM
+     * @return true if the frame should be sent: speech, or within the hangover after it
+     */
+    public boolean process(byte[] pcm, int length) {
+        int samples = length / 2;
+        if (samples == 0) {
+            return false;
+        }
+        double power = 0;
+        int crossings = 0;
+        int previous = 0;
+        for (int i = 0; i < samples; i++) {
+            int sample = (short) ((pcm[2 * i + 1] << 8) | (pcm[2 * i] & 0xFF));
+            power += (double) sample * sample;
+            if (i > 0 && (sample >= 0) != (previous >= 0)) {
+                crossings++;
+            }
+            previous = sample;
+        }
+        power /= samples;
+        double crossingRate = crossings / (double) samples;
+
+        boolean speech = power > MIN_SPEECH_POWER
+            && (power > noiseFloor * VOICED_MARGIN
+                || (power > noiseFloor * UNVOICED_MARGIN && crossingRate > UNVOICED_CROSSINGS));
+
+        if (power < noiseFloor) {
+            noiseFloor += (power - noiseFloor) * 0.3;
+        } else {
+            noiseFloor += (power - noiseFloor) * (speech ? 0.0005 : 0.02);
+        }
+        noiseFloor = Math.max(MIN_FLOOR, noiseFloor);
+
+        frames++;
+        if (speech) {
+            speechFrames++;
+            hangover = HANGOVER_FRAMES;
+        } else if (hangover > 0) {
+            hangover--;
+        } else {
+            talking = false;
+            return false;
+        }
+        if (!talking) {
+            talking = true;
+            talkSpurts++;
+        }
+        sentFrames++;
+        return true;
+    }
+
+    /**
+     * The frame was not sent (e.g. muted mic): end the talk-spurt at once
+     */
+    public void skip() {
+        frames++;
+        hangover = 0;
+        talking = false;
+    }
+
+    /**
+     * Comfort noise level of the current background
+     */
+    public int getNoiseLevel() {
+        return ComfortNoise.level(noiseFloor);
+    }
+
+    public String getStats() {
+        return String.format("%d frames, %d speech, %d sent (%.0f%%) in %d talk-spurts",
+            frames, speechFrames, sentFrames, frames > 0 ? 100.0 * sentFrames / frames : 0, talkSpurts);
+    }
+}
@@ -0,0 +1,38 @@
+package com.reseau.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * AudioCodec - Encodes call audio frames (16-bit samples) for the network
+ * Every frame is encoded on its own, so a lost frame never breaks the next
+ * one and the server can decode any frame it receives. Implementations are
+ * stateless and shared; buffers are read and written at absolute offsets.
+ * Register new codecs in AudioCodecs.
+ */
+public interface AudioCodec {
+
+    /**
+     * Name used in the handshake, e.g. "ulaw"
+     */
+    String getName();
+
+    /**
+     * Bytes a frame of that many samples encodes to
+     */
+    int encodedLength(int samples);
+
+    /**
+     * Samples in an encoded frame of that many bytes, -1 if it cannot be one
+     */
+    int decodedSamples(int length);
+
+    /**
+     * Encode samples[0..count), clamped to 16 bits, at out[offset]
+     */
+    void encode(int[] samples, int count, ByteBuffer out, int offset);
+
+    /**
+     * Decode length bytes at in[offset] into samples
+     */
+    void decode(ByteBuffer in, int offset, int length, int[] samples);
+}
@@ -0,0 +1,75 @@
+package com.reseau.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AudioCodecs - The audio codecs known to this side, and their negotiation
+ * The client's first audio frame offers codecs in order of preference:
+ * "TOKEN <sessionToken> CODECS adpcm,ulaw,pcm". The server picks the first
+ * one it knows and answers with a "CODEC <name>" record from sender 0; the
+ * client then sends and receives frames in that codec. Clients that offer
+ * nothing keep raw PCM. More codecs plug in with register().
+ *
+ * -Dnexo.audio.codecs=<names> sets the client's offer (default adpcm,ulaw,pcm).
+ */
+public final class AudioCodecs {
+    public static final String OFFER_PREFIX = " CODECS ";
+    public static final String REPLY_PREFIX = "CODEC ";
+
+    public static final AudioCodec PCM = new PcmCodec();
+    public static final AudioCodec ULAW = new UlawCodec();
+    public static final AudioCodec ADPCM = new ImaAdpcmCodec();
+
+    private static final Map<String, AudioCodec> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        register(PCM);
+        register(ULAW);
+        register(ADPCM);
+    }
+
+    private AudioCodecs() {
+    }
+
+    public static void register(AudioCodec codec) {
+        CODECS.put(codec.getName(), codec);
+    }
+
+    /**
+     * The codec with that name, null if unknown
+     */
+    public static AudioCodec get(String name) {
+        return CODECS.get(name);
+    }
+
+    /**
+     * Codecs this client offers, preferred first
+     */
+    public static String offer() {
+        List<String> names = new ArrayList<>();
+        for (String name : System.getProperty("nexo.audio.codecs", "adpcm,ulaw,pcm").split(",")) {
+            if (CODECS.containsKey(name.trim())) {
+                names.add(name.trim());
+            }
+        }
+        return names.isEmpty() ? PCM.getName() : String.join(",", names);
+    }
+
+    /**
+     * First codec of the offer known here, PCM if none
+     */
+    public static AudioCodec choose(String offer) {
+        if (offer != null) {
+            for (String name : offer.split(",")) {
+                AudioCodec codec = CODECS.get(name.trim());
+                if (codec != null) {
+                    return codec;
+                }
+            }
+        }
+        return PCM;
+    }
+}
@@ -0,0 +1,44 @@
+package com.reseau.common;
+
+/**
+ * CallRoom - Names of video call rooms, shared by client and server
+ * "general" is the open call of the global channel; "dm:<user1>:<user2>"
+ * (usernames sorted) is the call of a private conversation.
+ */
+public final class CallRoom {
+    public static final String GENERAL = "general";
+
+    private static final String DIRECT_PREFIX = "dm:";
+    private static final int MAX_NAME_LENGTH = 128;
+
+    private CallRoom() {
+    }
+
+    /**
+     * Room of the private conversation between two users
+     */
+    public static String direct(String user1, String user2) {
+        return user1.compareTo(user2) <= 0
+            ? DIRECT_PREFIX + user1 + ":" + user2
+            : DIRECT_PREFIX + user2 + ":" + user1;
+    }
+
+    /**
+     * True if the user may join this room: the general room, or a private
+     * conversation room of which the user is one of the two members
+     */
+    public static boolean mayJoin(String username, String room) {
+        if (room == null || room.length() > MAX_NAME_LENGTH || username == null) {
+            return false;
+        }
+        if (room.equals(GENERAL)) {
+            return true;
+        }
+        if (!room.startsWith(DIRECT_PREFIX)) {
+            return false;
+        }
+        String members = room.substring(DIRECT_PREFIX.length());
+        return members.startsWith(username + ":") && members.length() > username.length() + 1
+            || members.endsWith(":" + username) && members.length() > username.length() + 1;
+    }
+}
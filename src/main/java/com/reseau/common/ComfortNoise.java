@@ -0,0 +1,45 @@
+package com.reseau.common;
+
+/**
+ * ComfortNoise - Marker sent by a client when its talk-spurt ends
+ * Between talk-spurts a client sends nothing. The marker tells receivers how
+ * loud the sender's background was, so they can play matching noise rather
+ * than dead silence. It is one byte, the level in -dBov (0 is full scale,
+ * 127 digital silence), as in RFC 3389. Markers are never transcoded or
+ * mixed: the server forwards them as they are, and a mixer treats them as
+ * silence.
+ */
+public final class ComfortNoise {
+    public static final int LENGTH = 1;
+    public static final int SILENT = 127;
+
+    private static final double FULL_SCALE_POWER = 32768.0 * 32768.0;
+
+    private ComfortNoise() {
+    }
+
+    public static boolean isMarker(int frameLength) {
+        return frameLength == LENGTH;
+    }
+
+    /**
+     * Level of a background with that mean square (16-bit samples)
+     */
+    public static int level(double meanSquare) {
+        if (meanSquare <= 0) {
+            return SILENT;
+        }
+        long level = Math.round(-10 * Math.log10(meanSquare / FULL_SCALE_POWER));
+        return (int) Math.max(0, Math.min(SILENT, level));
+    }
+
+    /**
+     * RMS amplitude of the noise to play for a level, 0 when silent
+     */
+    public static double amplitude(int level) {
+        if (level >= SILENT) {
+            return 0;
+        }
+        return Math.sqrt(FULL_SCALE_POWER * Math.pow(10, -level / 10.0));
+    }
+}
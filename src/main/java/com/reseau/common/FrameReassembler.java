@@ -0,0 +1,167 @@
+package com.reseau.common;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * FrameReassembler - Rebuilds the frames of one sender from MediaPackets
+ * Fragments may arrive in any order. One frame is assembled at a time: a
+ * fragment of a newer frame drops the incomplete one (counted lost), and
+ * fragments of older frames are late and ignored. Frames whose sequence
+ * numbers were skipped entirely also count as lost.
+ *
+ * The buffer type is left to the caller (byte arrays on the client, pooled
+ * frames on the server); payload is written after `headroom` bytes.
+ * Not thread-safe.
+ */
+public class FrameReassembler<B> {
+
+    /**
+     * Where frames are assembled
+     */
+    public interface Buffers<B> {
+        B allocate(int capacity);
+
+        ByteBuffer view(B buffer);
+
+        void discard(B buffer);
+    }
+
+    private final Buffers<B> buffers;
+    private final int headroom;
+    private final int maxLength;
+
+    private B current;
+    private ByteBuffer view;
+    private final BitSet fragments = new BitSet();
+    private int count;
+    private int received;
+    private int length;
+    private int sequence;
+    private int timestamp;
+
+    private boolean started;
+    private int highestSequence;
+    private int lastSequence;
+    private int lastTimestamp;
+    private int lastLength;
+
+    private long completed;
+    private long lost;
+    private long late;
+
+    public FrameReassembler(Buffers<B> buffers, int headroom, int maxLength) {
+        this.buffers = buffers;
+        this.headroom = headroom;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Add one valid MEDIA packet (position 0 to limit)
+     * @return the completed frame, its view holding headroom + payload from
+     *         position 0; the caller owns it. Null while incomplete.
+     */
+    public B add(ByteBuffer packet) {
+        int seq = MediaPacket.getSequence(packet);
+        if (current != null && seq != sequence) {
+            if (seq - sequence < 0) {
+                late++;
+                return null;
+            }
+            buffers.discard(current);
+            current = null;
+            lost++;
+        }
+
+        if (current == null) {
+            if (started && seq - highestSequence <= 0) {
+                late++;
+                return null;
+            }
+            int fragmentCount = MediaPacket.getFragmentCount(packet);
+            if ((long) fragmentCount * MediaPacket.MAX_PAYLOAD > maxLength + MediaPacket.MAX_PAYLOAD) {
+                return null;
+            }
+            if (started) {
+                lost += seq - highestSequence - 1;
+            }
+            started = true;
+            highestSequence = seq;
+            sequence = seq;
+            timestamp = MediaPacket.getTimestamp(packet);
+            count = fragmentCount;
+            received = 0;
+            length = -1;
+            fragments.clear();
+            current = buffers.allocate(headroom + count * MediaPacket.MAX_PAYLOAD);
+            view = buffers.view(current);
+        }
+
+        int index = MediaPacket.getFragmentIndex(packet);
+        int size = packet.limit() - MediaPacket.HEADER;
+        boolean last = index == count - 1;
+        if (index >= count || fragments.get(index) || (!last && size != MediaPacket.MAX_PAYLOAD)) {
+            return null;
+        }
+        fragments.set(index);
+        view.put(headroom + index * MediaPacket.MAX_PAYLOAD, packet, MediaPacket.HEADER, size);
+        if (last) {
+            length = index * MediaPacket.MAX_PAYLOAD + size;
+        }
+        if (++received < count) {
+            return null;
+        }
+
+        B done = current;
+        current = null;
+        view.position(0).limit(headroom + length);
+        lastSequence = sequence;
+        lastTimestamp = timestamp;
+        lastLength = length;
+        completed++;
+        return done;
+    }
+
+    /**
+     * Sequence number of the last completed frame
+     */
+    public int getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Sender timestamp of the last completed frame
+     */
+    public int getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Payload length of the last completed frame
+     */
+    public int getLastLength() {
+        return lastLength;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getLost() {
+        return lost;
+    }
+
+    public long getLate() {
+        return late;
+    }
+
+    /**
+     * Drop the frame being assembled, e.g. when the sender leaves
+     */
+    public void reset() {
+        if (current != null) {
+            buffers.discard(current);
+            current = null;
+        }
+    }
+}
@@ -31,6 +31,17 @@ public class FriendRequest implements Serializable {
         this.sentAt = LocalDateTime.now();
     }
     
+    /**
+     * Rebuild a pending request from persisted data
+     */
+    public FriendRequest(String requestId, String senderUsername, String receiverUsername, LocalDateTime sentAt) {
+        this.requestId = requestId;
+        this.senderUsername = senderUsername;
+        this.receiverUsername = receiverUsername;
+        this.status = FriendRequestStatus.PENDING;
+        this.sentAt = sentAt;
+    }
+    
     private String generateRequestId(String sender, String receiver) {
         return sender + "_to_" + receiver + "_" + System.currentTimeMillis();
     }
@@ -0,0 +1,148 @@
+package com.reseau.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ImaAdpcmCodec - IMA ADPCM, 4 bits per sample (about a quarter of PCM)
+ * Each frame is a block as in IMA ADPCM WAV files: a 4-byte header with the
+ * first sample (16-bit little-endian) and the starting step index, then one
+ * nibble per following sample, low nibble first. The step index is guessed
+ * from the frame's first samples instead of carried over from the previous
+ * frame, so frames decode independently. Sample counts should be even.
+ */
+public final class ImaAdpcmCodec implements AudioCodec {
+    private static final int HEADER = 4;
+    private static final int START_SAMPLES = 8;
+
+    private static final int[] INDEX_TABLE = {
+        -1, -1, -1, -1, 2, 4, 6, 8,
+        -1, -1, -1, -1, 2, 4, 6, 8
+    };
+
+    private static final int[] STEP_TABLE = {
+        7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+        19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+        50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+        130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+        337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+        876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+        2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+        5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+        15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    @Override
+    public String getName() {
+        return "adpcm";
+    }
+
+    @Override
+    public int encodedLength(int samples) {
+        return HEADER + samples / 2;
+    }
+
+    @Override
+    public int decodedSamples(int length) {
+        return length >= HEADER ? (length - HEADER) * 2 : -1;
+    }
+
+    @Override
+    public void encode(int[] samples, int count, ByteBuffer out, int offset) {
+        if (count == 0) {
+            return;
+        }
+        int predictor = clamp(samples[0]);
+        int index = startIndex(samples, count);
+        out.putShort(offset, Short.reverseBytes((short) predictor));
+        out.put(offset + 2, (byte) index);
+        out.put(offset + 3, (byte) 0);
+
+        int position = offset + HEADER;
+        int pending = 0;
+        for (int i = 1; i < count; i++) {
+            int diff = clamp(samples[i]) - predictor;
+            int code = 0;
+            if (diff < 0) {
+                code = 8;
+                diff = -diff;
+            }
+            int step = STEP_TABLE[index];
+            int delta = step >> 3;
+            if (diff >= step) {
+                code |= 4;
+                diff -= step;
+                delta += step;
+            }
+            step >>= 1;
+            if (diff >= step) {
+                code |= 2;
+                diff -= step;
+                delta += step;
+            }
+            step >>= 1;
+            if (diff >= step) {
+                code |= 1;
+                delta += step;
+            }
+            predictor = clamp((code & 8) != 0 ? predictor - delta : predictor + delta);
+            index = Math.max(0, Math.min(STEP_TABLE.length - 1, index + INDEX_TABLE[code]));
+
+            if ((i & 1) == 1) {
+                pending = code;
+            } else {
+                out.put(position++, (byte) (pending | (code << 4)));
+            }
+        }
+        if ((count & 1) == 0) {
+            out.put(position, (byte) pending);
+        }
+    }
+
+    @Override
+    public void decode(ByteBuffer in, int offset, int length, int[] samples) {
+        int count = decodedSamples(length);
+        if (count <= 0) {
+            return;
+        }
+        int predictor = Short.reverseBytes(in.getShort(offset));
+        int index = Math.max(0, Math.min(STEP_TABLE.length - 1, in.get(offset + 2)));
+        samples[0] = predictor;
+        for (int i = 1; i < count; i++) {
+            int packed = in.get(offset + HEADER + (i - 1) / 2);
+            int code = (i & 1) == 1 ? packed & 0x0F : (packed >> 4) & 0x0F;
+            int step = STEP_TABLE[index];
+            int delta = step >> 3;
+            if ((code & 4) != 0) {
+                delta += step;
+            }
+            if ((code & 2) != 0) {
+                delta += step >> 1;
+            }
+            if ((code & 1) != 0) {
+                delta += step >> 2;
+            }
+            predictor = clamp((code & 8) != 0 ? predictor - delta : predictor + delta);
+            index = Math.max(0, Math.min(STEP_TABLE.length - 1, index + INDEX_TABLE[code]));
+            samples[i] = predictor;
+        }
+    }
+
+    /**
+     * Smallest step index whose step covers the largest change among the first samples
+     */
+    private static int startIndex(int[] samples, int count) {
+        int largest = 0;
+        for (int i = 1; i < Math.min(count, START_SAMPLES + 1); i++) {
+            largest = Math.max(largest, Math.abs(clamp(samples[i]) - clamp(samples[i - 1])));
+        }
+        int index = 0;
+        while (index < STEP_TABLE.length - 1 && STEP_TABLE[index] < largest) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int clamp(int sample) {
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+    }
+}
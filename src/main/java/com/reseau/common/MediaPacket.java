@@ -0,0 +1,85 @@
+package com.reseau.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MediaPacket - Datagram layout of the UDP media transport (RTP-like)
+ *
+ *   0  byte   version (1)
+ *   1  byte   type: MEDIA or HELLO
+ *   2  short  fragment index
+ *   4  short  fragment count
+ *   6  short  reserved
+ *   8  int    sender id (the client id given by the TCP handshake)
+ *  12  int    sequence number of the frame, per sender
+ *  16  int    timestamp of the frame in ms, sender clock
+ *  20         payload, at most MAX_PAYLOAD bytes
+ *
+ * A frame larger than MAX_PAYLOAD is split into fragments of MAX_PAYLOAD
+ * bytes (the last one shorter) sharing its sequence number and timestamp.
+ * HELLO carries "TOKEN <sessionToken>" from client to server; the server
+ * echoes an empty HELLO once the address is bound to that client.
+ */
+public final class MediaPacket {
+    public static final int VERSION = 1;
+    public static final int TYPE_MEDIA = 0;
+    public static final int TYPE_HELLO = 1;
+
+    public static final int HEADER = 20;
+    public static final int MAX_PAYLOAD = 1200; // header + payload stays under a 1280-byte MTU
+    public static final int MAX_PACKET = HEADER + MAX_PAYLOAD;
+    public static final int MAX_FRAGMENTS = 0x7FFF;
+
+    private MediaPacket() {
+    }
+
+    public static int fragmentCount(int frameLength) {
+        return Math.max(1, (frameLength + MAX_PAYLOAD - 1) / MAX_PAYLOAD);
+    }
+
+    /**
+     * Write a header at the buffer's position
+     */
+    public static void putHeader(ByteBuffer packet, int type, int index, int count,
+                                 int sender, int sequence, int timestamp) {
+        packet.put((byte) VERSION).put((byte) type)
+            .putShort((short) index).putShort((short) count).putShort((short) 0)
+            .putInt(sender).putInt(sequence).putInt(timestamp);
+    }
+
+    /**
+     * True if the packet (position 0 to limit) has a header of this version
+     */
+    public static boolean isValid(ByteBuffer packet) {
+        if (packet.limit() < HEADER || packet.get(0) != VERSION) {
+            return false;
+        }
+        int count = getFragmentCount(packet);
+        int index = getFragmentIndex(packet);
+        return count > 0 && index >= 0 && index < count && packet.limit() - HEADER <= MAX_PAYLOAD;
+    }
+
+    public static int getType(ByteBuffer packet) {
+        return packet.get(1);
+    }
+
+    public static int getFragmentIndex(ByteBuffer packet) {
+        return packet.getShort(2);
+    }
+
+    public static int getFragmentCount(ByteBuffer packet) {
+        return packet.getShort(4);
+    }
+
+    public static int getSender(ByteBuffer packet) {
+        return packet.getInt(8);
+    }
+
+    public static int getSequence(ByteBuffer packet) {
+        return packet.getInt(12);
+    }
+
+    public static int getTimestamp(ByteBuffer packet) {
+        return packet.getInt(16);
+    }
+}
@@ -0,0 +1,39 @@
+package com.reseau.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PcmCodec - Raw 16-bit little-endian PCM, what older clients send
+ */
+public final class PcmCodec implements AudioCodec {
+
+    @Override
+    public String getName() {
+        return "pcm";
+    }
+
+    @Override
+    public int encodedLength(int samples) {
+        return samples * 2;
+    }
+
+    @Override
+    public int decodedSamples(int length) {
+        return length % 2 == 0 ? length / 2 : -1;
+    }
+
+    @Override
+    public void encode(int[] samples, int count, ByteBuffer out, int offset) {
+        for (int i = 0; i < count; i++) {
+            int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, samples[i]));
+            out.putShort(offset + i * 2, Short.reverseBytes((short) sample));
+        }
+    }
+
+    @Override
+    public void decode(ByteBuffer in, int offset, int length, int[] samples) {
+        for (int i = 0; i < length / 2; i++) {
+            samples[i] = Short.reverseBytes(in.getShort(offset + i * 2));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.reseau.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UlawCodec - G.711 μ-law, one byte per sample (half of PCM)
+ * Logarithmic 8-bit samples: fine steps for quiet sounds, coarse ones for
+ * loud sounds, which suits speech.
+ */
+public final class UlawCodec implements AudioCodec {
+    private static final int BIAS = 0x84;
+    private static final int CLIP = 32635;
+    private static final short[] DECODED = new short[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int u = ~i & 0xFF;
+            int exponent = (u >> 4) & 0x07;
+            int sample = ((((u & 0x0F) << 3) + BIAS) << exponent) - BIAS;
+            DECODED[i] = (short) ((u & 0x80) != 0 ? -sample : sample);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "ulaw";
+    }
+
+    @Override
+    public int encodedLength(int samples) {
+        return samples;
+    }
+
+    @Override
+    public int decodedSamples(int length) {
+        return length;
+    }
+
+    @Override
+    public void encode(int[] samples, int count, ByteBuffer out, int offset) {
+        for (int i = 0; i < count; i++) {
+            out.put(offset + i, encode(samples[i]));
+        }
+    }
+
+    @Override
+    public void decode(ByteBuffer in, int offset, int length, int[] samples) {
+        for (int i = 0; i < length; i++) {
+            samples[i] = DECODED[in.get(offset + i) & 0xFF];
+        }
+    }
+
+    static byte encode(int sample) {
+        int sign = 0;
+        if (sample < 0) {
+            sign = 0x80;
+            sample = -sample;
+        }
+        sample = Math.min(sample, CLIP) + BIAS;
+        int exponent = 31 - Integer.numberOfLeadingZeros(sample) - 7;
+        int mantissa = (sample >> (exponent + 3)) & 0x0F;
+        return (byte) ~(sign | (exponent << 4) | mantissa);
+    }
+}
@@ -61,10 +61,18 @@ public class UserAccount implements Serializable {
         return createdDate;
     }
     
+    public void setCreatedDate(LocalDateTime createdDate) {
+        this.createdDate = createdDate;
+    }
+    
     public LocalDateTime getLastLogin() {
         return lastLogin;
     }
     
+    public void setLastLogin(LocalDateTime lastLogin) {
+        this.lastLogin = lastLogin;
+    }
+    
     public void updateLastLogin() {
         this.lastLogin = LocalDateTime.now();
     }
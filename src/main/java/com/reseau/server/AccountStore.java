@@ -0,0 +1,227 @@
+package com.reseau.server;
+
+import com.reseau.common.UserAccount;
+import java.io.*;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * AccountStore - Persistent user accounts
+ * Keeps accounts in memory, appends every mutation to a journal and
+ * periodically compacts the journal into a snapshot of the whole map.
+ * Registrations are flushed immediately; lastLogin updates are batched.
+ */
+public class AccountStore {
+    private static final long FLUSH_INTERVAL_MS = 2000;
+    private static final int COMPACT_THRESHOLD = 1000; // journal records
+
+    private static final byte RECORD_ACCOUNT = 1;
+    private static final byte RECORD_LAST_LOGIN = 2;
+
+    private final String snapshotPath;
+    private final JournalFile journal;
+    private final Map<String, UserAccount> accounts = new ConcurrentHashMap<>();
+    private final Map<String, LocalDateTime> pendingLogins = new ConcurrentHashMap<>();
+
+    // Mutations share the read lock, compaction takes the write lock
+    private final ReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService flusher;
+
+    public AccountStore(String snapshotPath, String journalPath) {
+        this.snapshotPath = snapshotPath;
+        this.journal = new JournalFile(journalPath);
+        load();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "AccountStoreFlusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushPending,
+            FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public UserAccount get(String username) {
+        return accounts.get(username);
+    }
+
+    public boolean contains(String username) {
+        return accounts.containsKey(username);
+    }
+
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * Add a new account and make it durable before returning
+     * The lock is held until the journal is synced, so that a compaction
+     * cannot snapshot an account that is then rolled back.
+     * @return false if the username is already taken
+     * @throws IOException if the account could not be saved; it is not registered
+     */
+    public boolean register(UserAccount account) throws IOException {
+        compactionLock.readLock().lock();
+        try {
+            if (accounts.putIfAbsent(account.getUsername(), account) != null) {
+                return false;
+            }
+            int failedFlushes = journal.getFailedFlushes();
+            journal.append(out -> writeAccount(out, account));
+            try {
+                journal.flush();
+                if (journal.getFailedFlushes() != failedFlushes) {
+                    throw new IOException("journal flush failed");
+                }
+            } catch (IOException e) {
+                accounts.remove(account.getUsername(), account);
+                throw e;
+            }
+            return true;
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Update lastLogin in memory; the journal write is batched
+     */
+    public void recordLogin(UserAccount account) {
+        account.updateLastLogin();
+        pendingLogins.put(account.getUsername(), account.getLastLogin());
+    }
+
+    /**
+     * Write batched lastLogin updates and compact when the journal grows
+     */
+    private void flushPending() {
+        try {
+            compactionLock.readLock().lock();
+            try {
+                for (String username : pendingLogins.keySet()) {
+                    LocalDateTime lastLogin = pendingLogins.remove(username);
+                    if (lastLogin != null) {
+                        journal.append(out -> {
+                            out.writeByte(RECORD_LAST_LOGIN);
+                            out.writeUTF(username);
+                            out.writeUTF(lastLogin.toString());
+                        });
+                    }
+                }
+            } finally {
+                compactionLock.readLock().unlock();
+            }
+            journal.flush();
+
+            if (journal.getRecordCount() >= COMPACT_THRESHOLD) {
+                compact();
+            }
+        } catch (Exception e) {
+            System.err.println("Error flushing user accounts: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace the snapshot with the current map and drop the old journal
+     */
+    private void compact() throws IOException {
+        Map<String, UserAccount> copy;
+        compactionLock.writeLock().lock();
+        try {
+            journal.rotate();
+            copy = new HashMap<>(accounts);
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+
+        journal.writeSnapshot(snapshotPath, out -> {
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(copy);
+            oos.flush();
+        });
+        System.out.println("User accounts compacted (" + copy.size() + " accounts)");
+    }
+
+    /**
+     * Load the snapshot, then replay the journal on top of it
+     */
+    @SuppressWarnings("unchecked")
+    private void load() {
+        File file = new File(snapshotPath);
+        if (file.exists()) {
+            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                accounts.putAll((Map<String, UserAccount>) ois.readObject());
+            } catch (IOException | ClassNotFoundException e) {
+                System.err.println("Error loading user accounts: " + e.getMessage());
+            }
+        }
+
+        try {
+            journal.replay(this::applyRecord);
+        } catch (IOException e) {
+            System.err.println("Error replaying user account journal: " + e.getMessage());
+        }
+        System.out.println("Loaded " + accounts.size() + " user accounts");
+    }
+
+    private void applyRecord(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case RECORD_ACCOUNT:
+                UserAccount account = readAccount(in);
+                accounts.put(account.getUsername(), account);
+                break;
+            case RECORD_LAST_LOGIN:
+                UserAccount existing = accounts.get(in.readUTF());
+                LocalDateTime lastLogin = LocalDateTime.parse(in.readUTF());
+                if (existing != null) {
+                    existing.setLastLogin(lastLogin);
+                }
+                break;
+            default:
+                throw new IOException("Unknown account journal record: " + type);
+        }
+    }
+
+    private static void writeAccount(DataOutputStream out, UserAccount account) throws IOException {
+        out.writeByte(RECORD_ACCOUNT);
+        out.writeUTF(account.getUsername());
+        out.writeUTF(account.getPasswordHash());
+        out.writeUTF(account.getFirstName());
+        out.writeUTF(account.getLastName());
+        out.writeUTF(account.getCreatedDate().toString());
+        out.writeBoolean(account.getLastLogin() != null);
+        if (account.getLastLogin() != null) {
+            out.writeUTF(account.getLastLogin().toString());
+        }
+    }
+
+    private static UserAccount readAccount(DataInputStream in) throws IOException {
+        UserAccount account = new UserAccount(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+        account.setCreatedDate(LocalDateTime.parse(in.readUTF()));
+        if (in.readBoolean()) {
+            account.setLastLogin(LocalDateTime.parse(in.readUTF()));
+        }
+        return account;
+    }
+
+    /**
+     * Flush pending updates and stop the background flusher
+     */
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushPending();
+    }
+}
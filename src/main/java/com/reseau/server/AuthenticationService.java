@@ -7,24 +7,44 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * AuthenticationService - Handles user authentication and account management
  * Uses SHA-256 with salt for secure password hashing
+ * Accounts are persisted by AccountStore (journal + periodic snapshot)
+ * Login verification runs on a bounded, CPU-sized hashing pool; when its
+ * queue is full new logins are rejected immediately instead of piling up
  */
 public class AuthenticationService {
     private static final String USER_DB_FILE = ".nexo_users.dat";
+    private static final String USER_JOURNAL_FILE = ".nexo_users.journal";
     private static final String MASTER_KEY_FILE = ".nexo_master.key";
     private static final int SALT_LENGTH = 16;
+    private static final int HASH_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final int HASH_QUEUE_LIMIT = HASH_THREADS * 16;
     
-    private Map<String, UserAccount> accounts;
+    private final AccountStore accounts;
+    private final ThreadPoolExecutor hashPool;
     private String masterPasswordHash;
     
     public AuthenticationService() {
-        this.accounts = new ConcurrentHashMap<>();
-        loadAccounts();
+        this.accounts = new AccountStore(USER_DB_FILE, USER_JOURNAL_FILE);
+        AtomicInteger threadCount = new AtomicInteger(1);
+        this.hashPool = new ThreadPoolExecutor(
+            HASH_THREADS, HASH_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(HASH_QUEUE_LIMIT),
+            r -> {
+                Thread t = new Thread(r, "PasswordHasher-" + threadCount.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
         loadMasterPassword();
     }
     
@@ -54,9 +74,11 @@ public class AuthenticationService {
     
     /**
      * Register new user account
+     * @throws IOException if the account could not be saved
      */
-    public synchronized boolean registerUser(String username, String password, String firstName, String lastName) {
-        if (accounts.containsKey(username)) {
+    public boolean registerUser(String username, String password, String firstName, String lastName)
+            throws IOException {
+        if (accounts.contains(username)) {
             return false; // Username already exists
         }
         
@@ -64,17 +86,43 @@ public class AuthenticationService {
         String passwordHash = salt + ":" + hashPassword(password, salt);
         
         UserAccount account = new UserAccount(username, passwordHash, firstName, lastName);
-        accounts.put(username, account);
-        saveAccounts();
+        if (!accounts.register(account)) {
+            return false; // Registered concurrently
+        }
         
         System.out.println("New user registered: " + username + " (" + firstName + " " + lastName + ")");
         return true;
     }
     
+    /**
+     * Queue a login verification on the hashing pool
+     * @throws RejectedExecutionException if the pool queue is full (AUTH_BUSY)
+     */
+    public Future<UserAccount> authenticateAsync(String username, String password) {
+        return hashPool.submit(() -> authenticate(username, password));
+    }
+    
+    /**
+     * Give up on a queued or running login: it leaves the pool queue and records nothing
+     */
+    public void cancel(Future<UserAccount> login) {
+        login.cancel(true);
+        hashPool.purge();
+    }
+    
+    /**
+     * Suggested client back-off when the hashing pool is saturated:
+     * roughly the time needed to drain the current queue
+     */
+    public long getBusyRetryMillis() {
+        int queued = hashPool.getQueue().size();
+        return 250L + (queued / HASH_THREADS) * 10L;
+    }
+    
     /**
      * Authenticate user login
      */
-    public synchronized UserAccount authenticate(String username, String password) {
+    public UserAccount authenticate(String username, String password) {
         UserAccount account = accounts.get(username);
         if (account == null) {
             return null;
@@ -89,20 +137,35 @@ public class AuthenticationService {
         String storedHash = parts[1];
         String providedHash = hashPassword(password, salt);
         
-        if (storedHash.equals(providedHash)) {
-            account.updateLastLogin();
-            saveAccounts();
+        if (MessageDigest.isEqual(storedHash.getBytes(StandardCharsets.UTF_8),
+                                  providedHash.getBytes(StandardCharsets.UTF_8))) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null; // Cancelled: the client was already answered AUTH_BUSY
+            }
+            // lastLogin is journaled in the background, not on the login path
+            accounts.recordLogin(account);
             return account;
         }
         
         return null;
     }
     
+    /**
+     * Accept a user whose session token was already verified (no hashing)
+     */
+    public UserAccount resumeSession(String username) {
+        UserAccount account = accounts.get(username);
+        if (account != null) {
+            accounts.recordLogin(account);
+        }
+        return account;
+    }
+    
     /**
      * Check if username exists
      */
     public boolean usernameExists(String username) {
-        return accounts.containsKey(username);
+        return accounts.contains(username);
     }
     
     /**
@@ -129,35 +192,6 @@ public class AuthenticationService {
         return storedHash.equals(providedHash);
     }
     
-    /**
-     * Save accounts to encrypted file
-     */
-    private void saveAccounts() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(USER_DB_FILE))) {
-            oos.writeObject(accounts);
-        } catch (IOException e) {
-            System.err.println("Error saving user accounts: " + e.getMessage());
-        }
-    }
-    
-    /**
-     * Load accounts from file
-     */
-    @SuppressWarnings("unchecked")
-    private void loadAccounts() {
-        File file = new File(USER_DB_FILE);
-        if (!file.exists()) {
-            return;
-        }
-        
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            accounts = (Map<String, UserAccount>) ois.readObject();
-            System.out.println("Loaded " + accounts.size() + " user accounts");
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading user accounts: " + e.getMessage());
-        }
-    }
-    
     /**
      * Save master password hash
      */
@@ -191,4 +225,12 @@ public class AuthenticationService {
     public UserAccount getAccount(String username) {
         return accounts.get(username);
     }
+    
+    /**
+     * Stop the hashing pool and flush pending account updates
+     */
+    public void shutdown() {
+        hashPool.shutdownNow();
+        accounts.shutdown();
+    }
 }
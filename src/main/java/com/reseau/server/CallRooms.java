@@ -0,0 +1,75 @@
+package com.reseau.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * CallRooms - The call room each user is in
+ * Users join with JOIN_ROOM and leave with LEAVE_ROOM or by disconnecting.
+ * The video and audio servers listen to the changes and only forward media
+ * between members of the same room.
+ *
+ * A membership belongs to the chat connection that joined: after a
+ * reconnect, the old connection closing must not end the call that the new
+ * connection has already rejoined.
+ */
+public class CallRooms {
+
+    private static class Membership {
+        final String room;
+        final Object owner;
+
+        Membership(String room, Object owner) {
+            this.room = room;
+            this.owner = owner;
+        }
+    }
+
+    private final Map<String, Membership> memberships = new ConcurrentHashMap<>();
+    // Called with (username, room), room null when the user left
+    private final List<BiConsumer<String, String>> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(BiConsumer<String, String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Move a user into a room, leaving the previous one
+     */
+    public synchronized void join(String username, String room, Object owner) {
+        Membership previous = memberships.put(username, new Membership(room, owner));
+        if (previous != null && previous.room.equals(room)) {
+            return;
+        }
+        System.out.println("Call room: " + username + " joined " + room +
+            (previous != null ? " (left " + previous.room + ")" : ""));
+        notifyListeners(username, room);
+    }
+
+    /**
+     * Take a user out of their room, if the membership belongs to this owner
+     */
+    public synchronized void leave(String username, Object owner) {
+        Membership current = memberships.get(username);
+        if (current == null || current.owner != owner) {
+            return;
+        }
+        memberships.remove(username);
+        System.out.println("Call room: " + username + " left " + current.room);
+        notifyListeners(username, null);
+    }
+
+    public String getRoom(String username) {
+        Membership current = memberships.get(username);
+        return current != null ? current.room : null;
+    }
+
+    private void notifyListeners(String username, String room) {
+        for (BiConsumer<String, String> listener : listeners) {
+            listener.accept(username, room);
+        }
+    }
+}
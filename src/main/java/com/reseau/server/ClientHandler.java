@@ -5,18 +5,33 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.reseau.common.CallRoom;
+import com.reseau.common.UserAccount;
 
 /**
  * ClientHandler - Manages individual client connection
  * Runs in separate thread from thread pool
  */
 public class ClientHandler implements Runnable {
+    private static final long AUTH_TIMEOUT_MS = 4000; // below the client's 5s AUTH read timeout
+    private static final int MAX_BATCH_USERS = 256;   // users per CHECK_FRIENDSHIPS / GET_PROFILES
+    
     private Socket socket;
     private Server server;
     private BufferedReader reader;
     private PrintWriter writer;
     private String username;
     private volatile boolean running;
+    
+    // Set while a REQ is being handled; replies from this handler's thread are tagged with it
+    private Thread handlerThread;
+    private String currentRequestId;
 
     public ClientHandler(Socket socket, Server server) {
         this.socket = socket;
@@ -40,8 +55,9 @@ public class ClientHandler implements Runnable {
 
     @Override
     public void run() {
+        handlerThread = Thread.currentThread();
         try {
-            // First message should be AUTH, REGISTER, or legacy CONNECT
+            // First message should be AUTH, RESUME_SESSION, REGISTER, or legacy CONNECT
             String firstMessage = reader.readLine();
             
             if (firstMessage == null) {
@@ -50,6 +66,8 @@ public class ClientHandler implements Runnable {
             
             if (firstMessage.startsWith("AUTH ")) {
                 handleAuth(firstMessage);
+            } else if (firstMessage.startsWith("RESUME_SESSION ")) {
+                handleResumeSession(firstMessage);
             } else if (firstMessage.startsWith("REGISTER ")) {
                 handleRegister(firstMessage);
             } else if (firstMessage.startsWith("CONNECT ")) {
@@ -79,34 +97,90 @@ public class ClientHandler implements Runnable {
         String username = parts[1];
         String password = parts[2];
         
-        com.reseau.common.UserAccount account = server.getAuthService().authenticate(username, password);
+        AuthenticationService authService = server.getAuthService();
+        // Hashing runs on the auth pool so logins for different users proceed in parallel
+        Future<UserAccount> login;
+        try {
+            login = authService.authenticateAsync(username, password);
+        } catch (RejectedExecutionException e) {
+            sendAuthBusy(authService, username);
+            return;
+        }
+        UserAccount account;
+        try {
+            account = login.get(AUTH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // The client is told this login failed: it must not keep a pool slot or record lastLogin
+            authService.cancel(login);
+            sendAuthBusy(authService, username);
+            return;
+        } catch (InterruptedException e) {
+            login.cancel(true);
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            System.err.println("Authentication error for " + username + ": " + e.getCause());
+            sendMessage("AUTH_FAILED Internal error");
+            return;
+        }
+        
         if (account != null) {
-            this.username = username;
-            sendMessage("AUTH_SUCCESS " + account.getFullName());
-            
-            System.out.println("DEBUG: ClientHandler - User authenticated: " + username);
-            
-            // Register client and start session
-            server.registerClient(username, this);
-            
-            String clientIp = socket.getInetAddress().getHostAddress();
-            server.getPresenceService().registerUser(username, "Unknown", clientIp);
-            
-            // Send message history
-            sendMessageHistory();
-            
-            System.out.println("DEBUG: ClientHandler - " + username + " fully registered, entering message loop");
-            
-            // Main message loop
-            String line;
-            while (running && (line = reader.readLine()) != null) {
-                handleMessage(line);
-            }
+            startSession(account);
         } else {
             sendMessage("AUTH_FAILED Invalid credentials");
         }
     }
 
+    private void sendAuthBusy(AuthenticationService authService, String username) {
+        System.out.println("Login rejected for " + username + ": authentication pool saturated");
+        sendMessage("AUTH_BUSY " + authService.getBusyRetryMillis());
+    }
+
+    private void handleResumeSession(String message) throws IOException {
+        // Format: RESUME_SESSION <token>
+        String token = message.substring("RESUME_SESSION ".length()).trim();
+        
+        // One HMAC check, then an in-memory account lookup
+        String tokenUser = server.getSessionTokens().verify(token);
+        UserAccount account = tokenUser != null ? server.getAuthService().resumeSession(tokenUser) : null;
+        
+        if (account != null) {
+            startSession(account);
+        } else {
+            sendMessage("SESSION_INVALID");
+        }
+    }
+
+    /**
+     * Answer AUTH_SUCCESS with a fresh session token, then run the message loop
+     */
+    private void startSession(UserAccount account) throws IOException {
+        this.username = account.getUsername();
+        sendMessage("AUTH_SUCCESS " + account.getFullName());
+        
+        // Sent before registration so no broadcast can slip in between
+        String token = server.getSessionTokens().issue(username);
+        sendMessage("SESSION_TOKEN " + username + " " + token + " " + SessionTokenService.getExpiry(token));
+        
+        System.out.println("DEBUG: ClientHandler - User authenticated: " + username);
+        
+        // Register client and start session
+        server.registerClient(username, this);
+        
+        String clientIp = socket.getInetAddress().getHostAddress();
+        server.getPresenceService().registerUser(username, "Unknown", clientIp);
+        
+        // Message history is pulled by the client with RESUME <lastSeq>
+        
+        System.out.println("DEBUG: ClientHandler - " + username + " fully registered, entering message loop");
+        
+        // Main message loop
+        String line;
+        while (running && (line = reader.readLine()) != null) {
+            handleMessage(line);
+        }
+    }
+
     private void handleRegister(String message) {
         // Format: REGISTER username password firstName lastName
         String[] parts = message.split(" ", 5);
@@ -120,7 +194,14 @@ public class ClientHandler implements Runnable {
         String firstName = parts[3];
         String lastName = parts[4];
         
-        boolean success = server.getAuthService().registerUser(username, password, firstName, lastName);
+        boolean success;
+        try {
+            success = server.getAuthService().registerUser(username, password, firstName, lastName);
+        } catch (IOException e) {
+            System.err.println("Error saving user account " + username + ": " + e.getMessage());
+            sendMessage("REGISTER_FAILED Could not save account, try again");
+            return;
+        }
         if (success) {
             sendMessage("REGISTER_SUCCESS");
         } else {
@@ -152,10 +233,35 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    /**
+     * Run a command as a request: every reply line is sent as
+     * RES <requestId> <line>, then RES_END <requestId> marks completion
+     */
+    private void handleRequest(String message) {
+        // Format: REQ <requestId> <command ...>
+        String[] parts = message.split(" ", 3);
+        if (parts.length < 3 || currentRequestId != null) {
+            return;
+        }
+        
+        currentRequestId = parts[1];
+        try {
+            handleMessage(parts[2]);
+        } finally {
+            currentRequestId = null;
+            sendMessage("RES_END " + parts[1]);
+        }
+    }
+
     /**
      * Process incoming messages based on protocol
      */
     private void handleMessage(String message) {
+        if (message.startsWith("REQ ")) {
+            handleRequest(message);
+            return;
+        }
+        
         System.out.println("Received: " + message);
         
         String[] parts = message.split(" ", 4);
@@ -169,25 +275,24 @@ public class ClientHandler implements Runnable {
             case "MESSAGE":
                 // Format: MESSAGE <sender> <recipient> <text>
                 if (parts.length >= 4) {
-                    String sender = parts[1];
-                    String recipient = parts[2];
-                    String text = parts[3];
-                    
-                    // Store message to disk (RAID-1)
-                    server.getMessageStorage().storeMessage(sender, recipient, text);
-                    
-                    if (recipient.equals("all")) {
-                        // Broadcast to all clients
-                        server.broadcast(sender, recipient, text);
-                    } else {
-                        // Private message - send to recipient
-                        System.out.println("DEBUG: Private message from " + sender + " to " + recipient);
-                        server.sendToClient(recipient, message);
-                        // Also send back to sender for confirmation (they see their own message)
-                        if (!sender.equals(recipient)) {
-                            server.sendToClient(sender, message);
-                        }
-                    }
+                    handleChatMessage(parts[1], parts[2], parts[3], null);
+                }
+                break;
+                
+            case "MESSAGE_ID":
+                // Format: MESSAGE_ID <clientMsgId> <sender> <recipient> <text>
+                String[] idParts = message.split(" ", 5);
+                if (idParts.length >= 5) {
+                    handleChatMessage(idParts[2], idParts[3], idParts[4], idParts[1]);
+                }
+                break;
+                
+            case "RESUME":
+                // Format: RESUME <lastSeq>
+                try {
+                    sendMessageHistory(Long.parseLong(parts[1]));
+                } catch (NumberFormatException e) {
+                    sendMessage("ERROR Invalid RESUME sequence");
                 }
                 break;
                 
@@ -259,6 +364,32 @@ public class ClientHandler implements Runnable {
                 }
                 break;
                 
+            case "CHECK_FRIENDSHIPS":
+                // Format: CHECK_FRIENDSHIPS <user1> <user2> ... <userN>
+                handleCheckFriendships(message.split(" "));
+                break;
+                
+            case "GET_PROFILES":
+                // Format: GET_PROFILES <user1> <user2> ... <userN>
+                handleGetProfiles(message.split(" "));
+                break;
+                
+            case "JOIN_ROOM":
+                // Format: JOIN_ROOM <room>
+                if (username != null && CallRoom.mayJoin(username, parts[1])) {
+                    server.getCallRooms().join(username, parts[1], this);
+                } else {
+                    sendMessage("ERROR Cannot join room " + parts[1]);
+                }
+                break;
+                
+            case "LEAVE_ROOM":
+                // Format: LEAVE_ROOM <room>
+                if (username != null && parts[1].equals(server.getCallRooms().getRoom(username))) {
+                    server.getCallRooms().leave(username, this);
+                }
+                break;
+                
             case "DISCONNECT":
                 running = false;
                 break;
@@ -272,6 +403,10 @@ public class ClientHandler implements Runnable {
      * Send message to this client
      */
     public void sendMessage(String message) {
+        // Other threads push through here too; only our own replies belong to the request
+        if (Thread.currentThread() == handlerThread && currentRequestId != null) {
+            message = "RES " + currentRequestId + " " + message;
+        }
         if (writer != null) {
             System.out.println("DEBUG: ClientHandler sending to " + username + ": " + message.substring(0, Math.min(50, message.length())) + "...");
             writer.println(message);
@@ -291,23 +426,74 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Send message history to client on login
+     * Store a chat message and route it to its recipients.
+     * When the client tagged the message with an id, a resend of the same id
+     * is only acknowledged again and never delivered twice.
+     */
+    private void handleChatMessage(String sender, String recipient, String text, String clientMsgId) {
+        MessageStorage storage = server.getMessageStorage();
+        
+        if (clientMsgId != null) {
+            MessageStorage.StoredMessage duplicate = storage.findByClientMessageId(sender, clientMsgId);
+            if (duplicate != null) {
+                System.out.println("DEBUG: Duplicate message " + clientMsgId + " from " + sender + ", re-acknowledging");
+                sendMessage("MESSAGE_ACK " + clientMsgId + " " + duplicate.seq);
+                return;
+            }
+        }
+        
+        // Store message to disk (RAID-1)
+        MessageStorage.StoredMessage stored;
+        try {
+            stored = storage.storeMessage(sender, recipient, text, clientMsgId);
+        } catch (IOException e) {
+            // Not acknowledged: the client keeps the message and resends it after reconnecting
+            System.err.println("WARNING: Could not store message from " + sender + ": " + e.getMessage());
+            return;
+        }
+        if (clientMsgId != null) {
+            sendMessage("MESSAGE_ACK " + clientMsgId + " " + stored.seq);
+        }
+        
+        // Format: SEQ <seq> MESSAGE <sender> <recipient> <text>
+        String line = "SEQ " + stored.seq + " MESSAGE " + sender + " " + recipient + " " + text;
+        
+        if (recipient.equals("all")) {
+            // Broadcast to all clients
+            server.broadcastRaw(line);
+        } else {
+            // Private message - send to recipient
+            System.out.println("DEBUG: Private message from " + sender + " to " + recipient);
+            server.sendToClient(recipient, line);
+            // Also send back to sender for confirmation (they see their own message)
+            if (!sender.equals(recipient)) {
+                server.sendToClient(sender, line);
+            }
+        }
+    }
+
+    /**
+     * Send message history to client.
+     * lastSeq 0 means a cold login and sends the recent history, otherwise
+     * only the messages the client missed since lastSeq are sent.
      */
-    private void sendMessageHistory() {
+    private void sendMessageHistory(long lastSeq) {
         try {
-            java.util.List<MessageStorage.StoredMessage> history = 
-                server.getMessageStorage().getRecentMessages(username, 100);
+            MessageStorage storage = server.getMessageStorage();
+            java.util.List<MessageStorage.StoredMessage> history = lastSeq <= 0
+                ? storage.getRecentMessages(username, 100)
+                : storage.getMessagesSince(username, lastSeq, 1000);
             
             if (!history.isEmpty()) {
                 sendMessage("HISTORY_START");
                 for (MessageStorage.StoredMessage msg : history) {
-                    // Format: HISTORY <timestamp> <sender> <recipient> <text>
-                    String historyLine = String.format("HISTORY %d %s %s %s",
-                        msg.timestamp, msg.sender, msg.recipient, msg.content);
+                    // Format: SEQ <seq> HISTORY <timestamp> <sender> <recipient> <text>
+                    String historyLine = String.format("SEQ %d HISTORY %d %s %s %s",
+                        msg.seq, msg.timestamp, msg.sender, msg.recipient, msg.content);
                     sendMessage(historyLine);
                 }
                 sendMessage("HISTORY_END");
-                System.out.println("Sent " + history.size() + " messages from history to " + username);
+                System.out.println("Sent " + history.size() + " messages after seq " + lastSeq + " to " + username);
             }
         } catch (Exception e) {
             System.err.println("Failed to send message history: " + e.getMessage());
@@ -341,33 +527,15 @@ public class ClientHandler implements Runnable {
      * Handle accept friend request
      */
     private void handleAcceptFriend(String requestId, String username) {
-        boolean success = server.getFriendshipService().acceptFriendRequest(requestId, username);
-        if (success) {
-            // Get request details to notify both users
-            com.reseau.common.FriendRequest request = server.getFriendshipService()
-                .getSentRequests(username).stream()
-                .filter(r -> r.getRequestId().equals(requestId))
-                .findFirst()
-                .orElse(null);
-            
-            if (request == null) {
-                // Check in received requests
-                request = server.getFriendshipService()
-                    .getPendingRequests(username).stream()
-                    .filter(r -> r.getRequestId().equals(requestId))
-                    .findFirst()
-                    .orElse(null);
-            }
+        com.reseau.common.FriendRequest request = server.getFriendshipService().acceptFriendRequest(requestId, username);
+        if (request != null) {
+            String sender = request.getSenderUsername();
+            String receiver = request.getReceiverUsername();
             
-            if (request != null) {
-                String sender = request.getSenderUsername();
-                String receiver = request.getReceiverUsername();
-                
-                // Notify both users
-                server.sendToClient(sender, "FRIEND_ACCEPTED " + receiver);
-                server.sendToClient(receiver, "FRIEND_ACCEPTED " + sender);
-                System.out.println("Friend request accepted: " + sender + " <-> " + receiver);
-            }
+            // Notify both users
+            server.sendToClient(sender, "FRIEND_ACCEPTED " + receiver);
+            server.sendToClient(receiver, "FRIEND_ACCEPTED " + sender);
+            System.out.println("Friend request accepted: " + sender + " <-> " + receiver);
         } else {
             sendMessage("FRIEND_ACCEPT_FAILED " + requestId);
         }
@@ -390,7 +558,7 @@ public class ClientHandler implements Runnable {
      * Handle get friends list
      */
     private void handleGetFriends(String username) {
-        java.util.Set<String> friends = server.getFriendshipService().getFriends(username);
+        java.util.List<String> friends = server.getFriendshipService().getFriends(username);
         StringBuilder response = new StringBuilder("FRIENDS_LIST " + username);
         for (String friend : friends) {
             response.append(" ").append(friend);
@@ -423,6 +591,70 @@ public class ClientHandler implements Runnable {
         sendMessage("FRIENDSHIP_STATUS " + user1 + " " + user2 + " " + areFriends);
     }
 
+    /**
+     * Friendship status of this user with many users, in one line
+     * Response: FRIENDSHIP_STATUSES <user1>:<0|1> <user2>:<0|1> ...
+     */
+    private void handleCheckFriendships(String[] parts) {
+        FriendshipService friendships = server.getFriendshipService();
+        StringBuilder response = new StringBuilder("FRIENDSHIP_STATUSES");
+        int end = batchEnd(parts, "CHECK_FRIENDSHIPS");
+        for (int i = 1; i < end; i++) {
+            response.append(' ').append(parts[i]).append(':')
+                    .append(friendships.areFriends(username, parts[i]) ? '1' : '0');
+        }
+        sendMessage(response.toString());
+    }
+    
+    /**
+     * Profile summary of many users, in one line
+     * Response: PROFILES;<user>|<fullName>|<friendCount>|<mutualCount>;...
+     * The full name is user input, so '%', ';' and '|' in it are percent-encoded
+     */
+    private void handleGetProfiles(String[] parts) {
+        FriendshipService friendships = server.getFriendshipService();
+        AuthenticationService authService = server.getAuthService();
+        StringBuilder response = new StringBuilder("PROFILES");
+        int end = batchEnd(parts, "GET_PROFILES");
+        for (int i = 1; i < end; i++) {
+            String other = parts[i];
+            UserAccount account = authService.getAccount(other);
+            response.append(';').append(other)
+                    .append('|').append(encodeField(account != null ? account.getFullName() : other))
+                    .append('|').append(friendships.getFriendCount(other))
+                    .append('|').append(friendships.getMutualFriendCount(username, other));
+        }
+        sendMessage(response.toString());
+    }
+
+    /**
+     * Percent-encode the characters that frame a PROFILES entry
+     */
+    private static String encodeField(String value) {
+        StringBuilder encoded = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '%': encoded.append("%25"); break;
+                case ';': encoded.append("%3B"); break;
+                case '|': encoded.append("%7C"); break;
+                default: encoded.append(c);
+            }
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * End of the usernames to answer; clients split larger batches, so extra names are only logged
+     */
+    private int batchEnd(String[] parts, String command) {
+        if (parts.length > MAX_BATCH_USERS + 1) {
+            System.err.println("WARNING: " + command + " from " + username + " with " + (parts.length - 1) +
+                    " users, answering the first " + MAX_BATCH_USERS);
+            return MAX_BATCH_USERS + 1;
+        }
+        return parts.length;
+    }
+
     /**
      * Close connection and cleanup resources
      */
@@ -430,6 +662,7 @@ public class ClientHandler implements Runnable {
         running = false;
         
         if (username != null) {
+            server.getCallRooms().leave(username, this);
             server.getPresenceService().userDisconnected(username);
             server.unregisterClient(username);
         }
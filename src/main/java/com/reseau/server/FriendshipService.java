@@ -2,133 +2,179 @@ package com.reseau.server;
 
 import com.reseau.common.FriendRequest;
 import java.io.*;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * FriendshipService - Manages friend requests and friendships
+ * Every mutation is appended to a journal that a background thread flushes;
+ * the journal is periodically compacted into a snapshot of the whole graph.
  */
 public class FriendshipService {
     private static final String FRIENDS_DB_FILE = ".nexo_friends.dat";
+    private static final String FRIENDS_JOURNAL_FILE = ".nexo_friends.journal";
+    // Legacy (Java serialization) requests file, merged into the snapshot on first compaction
     private static final String REQUESTS_DB_FILE = ".nexo_friend_requests.dat";
     
-    // Username -> Set of friend usernames
-    private Map<String, Set<String>> friendships;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final int COMPACT_THRESHOLD = 5000; // journal records
     
-    // RequestId -> FriendRequest
-    private Map<String, FriendRequest> friendRequests;
+    private static final int SNAPSHOT_MAGIC = 0x4E58464E; // "NXFN"
+    private static final int SNAPSHOT_VERSION = 2; // 1: friends as name lists
     
-    // Username -> List of pending request IDs (received)
-    private Map<String, List<String>> pendingRequests;
+    private static final byte RECORD_REQUEST = 1;
+    private static final byte RECORD_ACCEPT = 2;
+    private static final byte RECORD_REJECT = 3;
+    private static final byte RECORD_REMOVE = 4;
     
-    // Username -> List of sent request IDs
-    private Map<String, List<String>> sentRequests;
+    private final JournalFile journal = new JournalFile(FRIENDS_JOURNAL_FILE);
+    private final ScheduledExecutorService flusher;
+    
+    // Queries share the read lock; mutations and compaction take the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // Friendships as interned ids with sorted adjacency arrays
+    private final SocialGraph graph = new SocialGraph();
+    
+    // RequestId -> pending FriendRequest (answered requests are dropped)
+    private final Map<String, FriendRequest> friendRequests = new HashMap<>();
+    
+    // pairKey(senderId, receiverId) -> pending FriendRequest
+    private final Map<Long, FriendRequest> pendingByPair = new HashMap<>();
+    
+    // Username -> pending request IDs received / sent, in arrival order
+    private final Map<String, Set<String>> pendingRequests = new HashMap<>();
+    private final Map<String, Set<String>> sentRequests = new HashMap<>();
     
     public FriendshipService() {
-        this.friendships = new ConcurrentHashMap<>();
-        this.friendRequests = new ConcurrentHashMap<>();
-        this.pendingRequests = new ConcurrentHashMap<>();
-        this.sentRequests = new ConcurrentHashMap<>();
-        loadData();
+        boolean legacyData = loadData();
+        
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "FriendshipFlusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushJournal,
+            FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        
+        if (legacyData) {
+            // Convert the serialized files to the snapshot format once
+            flusher.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    System.err.println("Error converting friendship data: " + e.getMessage());
+                }
+            });
+        }
     }
     
     /**
      * Send a friend request
      */
-    public synchronized FriendRequest sendFriendRequest(String senderUsername, String receiverUsername) {
+    public FriendRequest sendFriendRequest(String senderUsername, String receiverUsername) {
         // ✅ Prevent self-friending
         if (senderUsername.equals(receiverUsername)) {
             System.out.println("Blocked self-friend request: " + senderUsername);
             return null; // Cannot add yourself
         }
         
-        // Check if already friends
-        if (areFriends(senderUsername, receiverUsername)) {
-            return null; // Already friends
-        }
-        
-        // Check if request already exists
-        if (hasPendingRequest(senderUsername, receiverUsername)) {
-            return null; // Request already sent
+        FriendRequest request;
+        lock.writeLock().lock();
+        try {
+            // Check if already friends
+            if (graph.hasEdge(senderUsername, receiverUsername)) {
+                return null; // Already friends
+            }
+            
+            // Check if request already exists
+            if (findPendingRequest(senderUsername, receiverUsername) != null) {
+                return null; // Request already sent
+            }
+            
+            // Create new request
+            request = new FriendRequest(senderUsername, receiverUsername);
+            addPendingRequest(request);
+            
+            journal.append(out -> {
+                out.writeByte(RECORD_REQUEST);
+                out.writeUTF(request.getRequestId());
+                out.writeUTF(senderUsername);
+                out.writeUTF(receiverUsername);
+                out.writeUTF(request.getSentAt().toString());
+            });
+        } finally {
+            lock.writeLock().unlock();
         }
         
-        // Create new request
-        FriendRequest request = new FriendRequest(senderUsername, receiverUsername);
-        friendRequests.put(request.getRequestId(), request);
-        
-        // Add to pending requests for receiver
-        pendingRequests.computeIfAbsent(receiverUsername, k -> new ArrayList<>())
-                       .add(request.getRequestId());
-        
-        // Add to sent requests for sender
-        sentRequests.computeIfAbsent(senderUsername, k -> new ArrayList<>())
-                    .add(request.getRequestId());
-        
-        saveData();
         System.out.println("Friend request sent: " + senderUsername + " -> " + receiverUsername);
         return request;
     }
     
     /**
      * Accept a friend request
+     * @return the accepted request, or null if it is unknown, answered, or not addressed to username
      */
-    public synchronized boolean acceptFriendRequest(String requestId, String username) {
-        FriendRequest request = friendRequests.get(requestId);
-        if (request == null || !request.isPending()) {
-            return false;
-        }
-        
-        // Verify that username is the receiver
-        if (!request.getReceiverUsername().equals(username)) {
-            return false;
-        }
-        
-        // Accept the request
-        request.accept();
-        
-        // Add friendship both ways
-        String sender = request.getSenderUsername();
-        String receiver = request.getReceiverUsername();
-        
-        friendships.computeIfAbsent(sender, k -> ConcurrentHashMap.newKeySet()).add(receiver);
-        friendships.computeIfAbsent(receiver, k -> ConcurrentHashMap.newKeySet()).add(sender);
-        
-        // Remove from pending
-        List<String> pending = pendingRequests.get(receiver);
-        if (pending != null) {
-            pending.remove(requestId);
+    public FriendRequest acceptFriendRequest(String requestId, String username) {
+        FriendRequest request;
+        lock.writeLock().lock();
+        try {
+            request = friendRequests.get(requestId);
+            
+            // Verify that username is the receiver
+            if (request == null || !request.getReceiverUsername().equals(username)) {
+                return null;
+            }
+            
+            // Accept the request
+            request.accept();
+            removePendingRequest(request);
+            graph.addEdge(request.getSenderUsername(), request.getReceiverUsername());
+            
+            journal.append(out -> {
+                out.writeByte(RECORD_ACCEPT);
+                out.writeUTF(requestId);
+                out.writeUTF(request.getSenderUsername());
+                out.writeUTF(request.getReceiverUsername());
+            });
+        } finally {
+            lock.writeLock().unlock();
         }
         
-        saveData();
-        System.out.println("Friend request accepted: " + sender + " <-> " + receiver);
-        return true;
+        System.out.println("Friend request accepted: " + request.getSenderUsername() + " <-> " + request.getReceiverUsername());
+        return request;
     }
     
     /**
      * Reject a friend request
      */
-    public synchronized boolean rejectFriendRequest(String requestId, String username) {
-        FriendRequest request = friendRequests.get(requestId);
-        if (request == null || !request.isPending()) {
-            return false;
-        }
-        
-        // Verify that username is the receiver
-        if (!request.getReceiverUsername().equals(username)) {
-            return false;
-        }
-        
-        // Reject the request
-        request.reject();
-        
-        // Remove from pending
-        List<String> pending = pendingRequests.get(username);
-        if (pending != null) {
-            pending.remove(requestId);
+    public boolean rejectFriendRequest(String requestId, String username) {
+        lock.writeLock().lock();
+        try {
+            FriendRequest request = friendRequests.get(requestId);
+            
+            // Verify that username is the receiver
+            if (request == null || !request.getReceiverUsername().equals(username)) {
+                return false;
+            }
+            
+            // Reject the request
+            request.reject();
+            removePendingRequest(request);
+            
+            journal.append(out -> {
+                out.writeByte(RECORD_REJECT);
+                out.writeUTF(requestId);
+            });
+        } finally {
+            lock.writeLock().unlock();
         }
         
-        saveData();
         System.out.println("Friend request rejected: " + requestId);
         return true;
     }
@@ -137,143 +183,388 @@ public class FriendshipService {
      * Check if two users are friends
      */
     public boolean areFriends(String username1, String username2) {
-        Set<String> friends = friendships.get(username1);
-        return friends != null && friends.contains(username2);
+        lock.readLock().lock();
+        try {
+            return graph.hasEdge(username1, username2);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
     /**
      * Get list of friends for a user
      */
-    public Set<String> getFriends(String username) {
-        return friendships.getOrDefault(username, Collections.emptySet());
+    public List<String> getFriends(String username) {
+        lock.readLock().lock();
+        try {
+            return graph.neighbors(username);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Number of friends of a user
+     */
+    public int getFriendCount(String username) {
+        lock.readLock().lock();
+        try {
+            return graph.degree(username);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Friends shared by two users
+     */
+    public List<String> getMutualFriends(String username1, String username2) {
+        lock.readLock().lock();
+        try {
+            return graph.mutualFriends(username1, username2);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Number of friends shared by two users, without listing them
+     */
+    public int getMutualFriendCount(String username1, String username2) {
+        lock.readLock().lock();
+        try {
+            return graph.mutualFriendCount(username1, username2);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
     /**
      * Get pending friend requests received by user
      */
     public List<FriendRequest> getPendingRequests(String username) {
-        List<String> requestIds = pendingRequests.getOrDefault(username, Collections.emptyList());
-        return requestIds.stream()
-                         .map(friendRequests::get)
-                         .filter(Objects::nonNull)
-                         .filter(FriendRequest::isPending)
-                         .collect(Collectors.toList());
+        return resolveRequests(pendingRequests, username);
     }
     
     /**
      * Get sent friend requests by user
      */
     public List<FriendRequest> getSentRequests(String username) {
-        List<String> requestIds = sentRequests.getOrDefault(username, Collections.emptyList());
-        return requestIds.stream()
-                         .map(friendRequests::get)
-                         .filter(Objects::nonNull)
-                         .filter(FriendRequest::isPending)
-                         .collect(Collectors.toList());
+        return resolveRequests(sentRequests, username);
+    }
+    
+    private List<FriendRequest> resolveRequests(Map<String, Set<String>> index, String username) {
+        lock.readLock().lock();
+        try {
+            Set<String> requestIds = index.getOrDefault(username, Collections.emptySet());
+            List<FriendRequest> result = new ArrayList<>(requestIds.size());
+            for (String requestId : requestIds) {
+                result.add(friendRequests.get(requestId));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
     /**
-     * Check if there's a pending request between users
+     * Pending request from sender to receiver, via the pair index
      */
-    private boolean hasPendingRequest(String sender, String receiver) {
-        List<String> sent = sentRequests.getOrDefault(sender, Collections.emptyList());
-        for (String requestId : sent) {
-            FriendRequest req = friendRequests.get(requestId);
-            if (req != null && req.isPending() && 
-                req.getSenderUsername().equals(sender) && 
-                req.getReceiverUsername().equals(receiver)) {
-                return true;
+    private FriendRequest findPendingRequest(String sender, String receiver) {
+        int senderId = graph.idOf(sender);
+        int receiverId = graph.idOf(receiver);
+        if (senderId < 0 || receiverId < 0) {
+            return null;
+        }
+        return pendingByPair.get(SocialGraph.pairKey(senderId, receiverId));
+    }
+    
+    private void addPendingRequest(FriendRequest request) {
+        int senderId = graph.intern(request.getSenderUsername());
+        int receiverId = graph.intern(request.getReceiverUsername());
+        
+        friendRequests.put(request.getRequestId(), request);
+        pendingByPair.put(SocialGraph.pairKey(senderId, receiverId), request);
+        pendingRequests.computeIfAbsent(request.getReceiverUsername(), k -> new LinkedHashSet<>())
+                       .add(request.getRequestId());
+        sentRequests.computeIfAbsent(request.getSenderUsername(), k -> new LinkedHashSet<>())
+                    .add(request.getRequestId());
+    }
+    
+    private void removePendingRequest(FriendRequest request) {
+        friendRequests.remove(request.getRequestId());
+        pendingByPair.remove(SocialGraph.pairKey(graph.idOf(request.getSenderUsername()),
+                                                 graph.idOf(request.getReceiverUsername())));
+        removeFromIndex(pendingRequests, request.getReceiverUsername(), request.getRequestId());
+        removeFromIndex(sentRequests, request.getSenderUsername(), request.getRequestId());
+    }
+    
+    private static void removeFromIndex(Map<String, Set<String>> index, String username, String requestId) {
+        Set<String> ids = index.get(username);
+        if (ids != null) {
+            ids.remove(requestId);
+            if (ids.isEmpty()) {
+                index.remove(username);
             }
         }
-        return false;
     }
     
     /**
      * Remove friendship
      */
-    public synchronized boolean removeFriend(String username1, String username2) {
-        boolean removed = false;
+    public boolean removeFriend(String username1, String username2) {
+        lock.writeLock().lock();
+        try {
+            if (!graph.removeEdge(username1, username2)) {
+                return false;
+            }
+            journal.append(out -> {
+                out.writeByte(RECORD_REMOVE);
+                out.writeUTF(username1);
+                out.writeUTF(username2);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
         
-        Set<String> friends1 = friendships.get(username1);
-        if (friends1 != null) {
-            removed = friends1.remove(username2);
+        System.out.println("Friendship removed: " + username1 + " <-> " + username2);
+        return true;
+    }
+    
+    /**
+     * Write journaled mutations to disk and compact when the journal grows
+     */
+    private void flushJournal() {
+        try {
+            journal.flush();
+            if (journal.getRecordCount() >= COMPACT_THRESHOLD) {
+                compact();
+            }
+        } catch (Exception e) {
+            System.err.println("Error flushing friendships: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Replace the snapshot with the current graph and drop the old journal.
+     * Only the in-memory encoding happens while mutations are blocked.
+     */
+    private void compact() throws IOException {
+        byte[] snapshot;
+        lock.writeLock().lock();
+        try {
+            journal.rotate();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                writeSnapshot(out);
+            }
+            snapshot = bytes.toByteArray();
+        } finally {
+            lock.writeLock().unlock();
         }
         
-        Set<String> friends2 = friendships.get(username2);
-        if (friends2 != null) {
-            friends2.remove(username1);
+        journal.writeSnapshot(FRIENDS_DB_FILE, out -> out.write(snapshot));
+        new File(REQUESTS_DB_FILE).delete();
+        System.out.println("Friendships compacted (" + snapshot.length + " bytes)");
+    }
+    
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        
+        int users = graph.getUserCount();
+        out.writeInt(users);
+        for (int id = 0; id < users; id++) {
+            out.writeUTF(graph.nameOf(id));
         }
         
-        if (removed) {
-            saveData();
-            System.out.println("Friendship removed: " + username1 + " <-> " + username2);
+        // Each edge once, from its lower id; ascending order makes reload append-only
+        for (int id = 0; id < users; id++) {
+            int[] friends = graph.neighborIds(id);
+            int degree = graph.degree(id);
+            int first = 0;
+            while (first < degree && friends[first] < id) {
+                first++;
+            }
+            out.writeInt(degree - first);
+            for (int i = first; i < degree; i++) {
+                out.writeInt(friends[i]);
+            }
         }
         
-        return removed;
+        out.writeInt(friendRequests.size());
+        for (FriendRequest request : friendRequests.values()) {
+            out.writeUTF(request.getRequestId());
+            out.writeUTF(request.getSenderUsername());
+            out.writeUTF(request.getReceiverUsername());
+            out.writeUTF(request.getSentAt().toString());
+        }
     }
     
     /**
-     * Save data to disk
+     * Load the snapshot (or the legacy serialized files), then replay the journal
+     * @return true if legacy files were loaded and should be converted
      */
-    private void saveData() {
-        try (ObjectOutputStream oos1 = new ObjectOutputStream(new FileOutputStream(FRIENDS_DB_FILE))) {
-            oos1.writeObject(friendships);
-        } catch (IOException e) {
-            System.err.println("Error saving friendships: " + e.getMessage());
+    private boolean loadData() {
+        boolean legacy = false;
+        File friendsFile = new File(FRIENDS_DB_FILE);
+        if (friendsFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(friendsFile)))) {
+                if (in.readInt() == SNAPSHOT_MAGIC) {
+                    readSnapshot(in);
+                } else {
+                    legacy = true;
+                }
+            } catch (IOException e) {
+                System.err.println("Error loading friendships: " + e.getMessage());
+            }
+        }
+        if (legacy || !friendsFile.exists()) {
+            legacy = loadLegacyData() || legacy;
         }
         
-        try (ObjectOutputStream oos2 = new ObjectOutputStream(new FileOutputStream(REQUESTS_DB_FILE))) {
-            oos2.writeObject(friendRequests);
-            oos2.writeObject(pendingRequests);
-            oos2.writeObject(sentRequests);
+        try {
+            journal.replay(this::applyRecord);
         } catch (IOException e) {
-            System.err.println("Error saving friend requests: " + e.getMessage());
+            System.err.println("Error replaying friendship journal: " + e.getMessage());
+        }
+        System.out.println("Loaded " + graph.getEdgeCount() + " friendships between " +
+                           graph.getUserCount() + " users, " + friendRequests.size() + " pending requests");
+        return legacy;
+    }
+    
+    private void readSnapshot(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != SNAPSHOT_VERSION && version != 1) {
+            throw new IOException("Unsupported friendship snapshot version " + version);
+        }
+        
+        int users = in.readInt();
+        if (version == 1) {
+            for (int i = 0; i < users; i++) {
+                String username = in.readUTF();
+                int count = in.readInt();
+                for (int j = 0; j < count; j++) {
+                    graph.addEdge(username, in.readUTF());
+                }
+            }
+        } else {
+            for (int i = 0; i < users; i++) {
+                graph.intern(in.readUTF());
+            }
+            for (int id = 0; id < users; id++) {
+                int count = in.readInt();
+                for (int j = 0; j < count; j++) {
+                    graph.addEdge(id, in.readInt());
+                }
+            }
+        }
+        
+        int requests = in.readInt();
+        for (int i = 0; i < requests; i++) {
+            addPendingRequest(new FriendRequest(in.readUTF(), in.readUTF(), in.readUTF(),
+                                                LocalDateTime.parse(in.readUTF())));
         }
     }
     
-    /**
-     * Load data from disk
-     */
     @SuppressWarnings("unchecked")
-    private void loadData() {
+    private boolean loadLegacyData() {
+        boolean loaded = false;
+        
         // Load friendships
         File friendsFile = new File(FRIENDS_DB_FILE);
         if (friendsFile.exists()) {
             try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(friendsFile))) {
-                friendships = (Map<String, Set<String>>) ois.readObject();
-                System.out.println("Loaded " + friendships.size() + " user friendships");
+                Map<String, Set<String>> friendships = (Map<String, Set<String>>) ois.readObject();
+                for (Map.Entry<String, Set<String>> entry : friendships.entrySet()) {
+                    for (String friend : entry.getValue()) {
+                        graph.addEdge(entry.getKey(), friend);
+                    }
+                }
+                loaded = true;
             } catch (IOException | ClassNotFoundException e) {
                 System.err.println("Error loading friendships: " + e.getMessage());
             }
         }
         
-        // Load friend requests
+        // Load friend requests; the per-user id lists are rebuilt from the requests
         File requestsFile = new File(REQUESTS_DB_FILE);
         if (requestsFile.exists()) {
             try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(requestsFile))) {
-                friendRequests = (Map<String, FriendRequest>) ois.readObject();
-                pendingRequests = (Map<String, List<String>>) ois.readObject();
-                sentRequests = (Map<String, List<String>>) ois.readObject();
-                System.out.println("Loaded " + friendRequests.size() + " friend requests");
+                Map<String, FriendRequest> requests = (Map<String, FriendRequest>) ois.readObject();
+                for (FriendRequest request : requests.values()) {
+                    if (request.isPending()) {
+                        addPendingRequest(request);
+                    }
+                }
+                loaded = true;
             } catch (IOException | ClassNotFoundException e) {
                 System.err.println("Error loading friend requests: " + e.getMessage());
             }
         }
+        return loaded;
+    }
+    
+    /**
+     * Apply one journal record; replaying a record twice has no further effect
+     */
+    private void applyRecord(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case RECORD_REQUEST: {
+                FriendRequest request = new FriendRequest(in.readUTF(), in.readUTF(), in.readUTF(),
+                                                          LocalDateTime.parse(in.readUTF()));
+                if (!friendRequests.containsKey(request.getRequestId())) {
+                    addPendingRequest(request);
+                }
+                break;
+            }
+            case RECORD_ACCEPT: {
+                FriendRequest request = friendRequests.get(in.readUTF());
+                if (request != null) {
+                    removePendingRequest(request);
+                }
+                graph.addEdge(in.readUTF(), in.readUTF());
+                break;
+            }
+            case RECORD_REJECT: {
+                FriendRequest request = friendRequests.get(in.readUTF());
+                if (request != null) {
+                    removePendingRequest(request);
+                }
+                break;
+            }
+            case RECORD_REMOVE:
+                graph.removeEdge(in.readUTF(), in.readUTF());
+                break;
+            default:
+                throw new IOException("Unknown friendship journal record: " + type);
+        }
+    }
+    
+    /**
+     * Flush the journal and stop the background flusher
+     */
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushJournal();
     }
     
     /**
      * Get friendship statistics
      */
     public String getStats() {
-        int totalFriendships = friendships.values().stream()
-                                          .mapToInt(Set::size)
-                                          .sum() / 2; // Divide by 2 because each friendship is counted twice
-        int pendingRequestsCount = friendRequests.values().stream()
-                                                  .filter(FriendRequest::isPending)
-                                                  .mapToInt(r -> 1)
-                                                  .sum();
-        
-        return String.format("Friendships: %d, Pending Requests: %d", 
-                           totalFriendships, pendingRequestsCount);
+        lock.readLock().lock();
+        try {
+            return String.format("Friendships: %d, Pending Requests: %d",
+                               graph.getEdgeCount(), friendRequests.size());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 }
@@ -0,0 +1,279 @@
+package com.reseau.server;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of mutations with snapshot compaction.
+ * Records are framed as [length][crc32][payload] so a torn write at the end
+ * of the file is detected on replay and cut off. The bytes of a failed flush
+ * are cut off before anything else is appended, so a torn record can only be
+ * the last one and replay never drops records written after it.
+ *
+ * Compaction protocol used by the owners of a journal:
+ *   1. rotate() under the owner's exclusive lock and copy the in-memory state
+ *   2. writeSnapshot() outside the lock: temp file, fsync, atomic rename,
+ *      then the rotated journal is deleted
+ * Records must be idempotent (last writer wins per key): after a crash between
+ * the rename and the delete, the rotated journal is replayed on top of a
+ * snapshot that already contains it.
+ */
+public class JournalFile {
+
+    /**
+     * Writes one record payload (or a whole snapshot)
+     */
+    public interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Applies one record payload during replay
+     */
+    public interface RecordReader {
+        void read(DataInputStream in) throws IOException;
+    }
+
+    private final File journal;
+    private final File rotated;
+    private final Object fileLock = new Object();
+
+    private List<byte[]> pending = new ArrayList<>();
+    private int recordCount;
+    private int failedFlushes;
+    private long tornFrom = -1; // journal length before a failed flush, under fileLock
+
+    public JournalFile(String path) {
+        this.journal = new File(path);
+        this.rotated = new File(path + ".old");
+    }
+
+    /**
+     * Queue a record; it reaches the disk on the next flush()
+     */
+    public void append(RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode journal record", e);
+        }
+        synchronized (this) {
+            pending.add(bytes.toByteArray());
+            recordCount++;
+        }
+    }
+
+    /**
+     * Write queued records to the journal and fsync it
+     */
+    public void flush() throws IOException {
+        synchronized (fileLock) {
+            List<byte[]> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+
+            try {
+                truncateTornTail();
+                tornFrom = journal.length(); // until the whole batch is synced
+                try (FileOutputStream fos = new FileOutputStream(journal, true)) {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+                    CRC32 crc = new CRC32();
+                    for (byte[] record : batch) {
+                        crc.reset();
+                        crc.update(record);
+                        out.writeInt(record.length);
+                        out.writeInt((int) crc.getValue());
+                        out.write(record);
+                    }
+                    out.flush();
+                    fos.getFD().sync();
+                }
+                tornFrom = -1;
+            } catch (IOException e) {
+                synchronized (this) {
+                    failedFlushes++;
+                }
+                // The batch counts as failed even if part of it reached the disk
+                try {
+                    truncateTornTail();
+                } catch (IOException truncateError) {
+                    System.err.println("WARNING: Could not cut a failed write off " + journal.getName() +
+                        ", retrying before the next append: " + truncateError.getMessage());
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Cut off what a failed flush left in the journal
+     */
+    private void truncateTornTail() throws IOException {
+        if (tornFrom < 0) {
+            return;
+        }
+        if (journal.length() > tornFrom) {
+            try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+                raf.setLength(tornFrom);
+                raf.getFD().sync();
+            }
+        }
+        tornFrom = -1;
+    }
+
+    /**
+     * Number of flushes that failed; their records are not on disk.
+     * A change across append() and flush() means the record may be lost,
+     * even if it went out in another thread's flush.
+     */
+    public synchronized int getFailedFlushes() {
+        return failedFlushes;
+    }
+
+    /**
+     * Replay the rotated journal (if a compaction was interrupted) and then
+     * the live journal. A corrupt or torn tail is truncated.
+     */
+    public void replay(RecordReader reader) throws IOException {
+        synchronized (fileLock) {
+            int replayed = replayFile(rotated, reader);
+            replayed += replayFile(journal, reader);
+            synchronized (this) {
+                recordCount = replayed;
+            }
+        }
+    }
+
+    private int replayFile(File file, RecordReader reader) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int count = 0;
+        long validLength = 0;
+        CRC32 crc = new CRC32();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (length < 0 || length > 1_000_000) {
+                    break;
+                }
+
+                byte[] record = new byte[length];
+                int checksum;
+                try {
+                    checksum = in.readInt();
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                reader.read(new DataInputStream(new ByteArrayInputStream(record)));
+                validLength += 8 + length;
+                count++;
+            }
+        }
+
+        if (validLength < file.length()) {
+            // Keep the cut bytes: anything after a corrupt record is not lost silently
+            File saved = new File(file.getPath() + ".corrupt");
+            System.err.println("WARNING: Truncating corrupt tail of " + file.getName() +
+                " at byte " + validLength + ", " + (file.length() - validLength) +
+                " bytes kept in " + saved.getName());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileOutputStream out = new FileOutputStream(saved, true)) {
+                raf.seek(validLength);
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = raf.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+                out.getFD().sync();
+                raf.setLength(validLength);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Flush and set the current journal aside so new records go to a fresh
+     * file. Must be called while the owner blocks mutations.
+     */
+    public void rotate() throws IOException {
+        synchronized (fileLock) {
+            flush();
+            truncateTornTail();
+            if (!journal.exists()) {
+                return;
+            }
+
+            if (rotated.exists()) {
+                // A previous snapshot failed: keep both journals in order
+                try (FileOutputStream out = new FileOutputStream(rotated, true)) {
+                    Files.copy(journal.toPath(), out);
+                    out.getFD().sync();
+                }
+                Files.delete(journal.toPath());
+            } else {
+                Files.move(journal.toPath(), rotated.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            synchronized (this) {
+                recordCount = pending.size();
+            }
+        }
+    }
+
+    /**
+     * Atomically replace the snapshot file and drop the rotated journal
+     */
+    public void writeSnapshot(String snapshotPath, RecordWriter writer) throws IOException {
+        File snapshot = new File(snapshotPath);
+        File tempFile = new File(snapshotPath + ".tmp");
+
+        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            writer.write(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+
+        Files.move(tempFile.toPath(), snapshot.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (fileLock) {
+            Files.deleteIfExists(rotated.toPath());
+        }
+    }
+
+    /**
+     * Number of records in the live journal since the last rotation
+     */
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+}
@@ -1,26 +1,51 @@
 package com.reseau.server;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Message storage with RAID-1 mirroring for fault tolerance.
  * Stores all chat messages to disk with automatic backup.
+ * Every message gets a server-side monotonic sequence number so clients
+ * can resume after a reconnect, and client-generated message ids are
+ * remembered so a resent message is stored only once.
+ *
+ * Messages reach disk every few seconds, but their sequence numbers are
+ * sent to clients at once. So that a crash never hands the same numbers out
+ * again, they are reserved in blocks: the end of the current block is synced
+ * to SEQ_FILE before any number in it is used, and a restart continues
+ * after it.
  */
 public class MessageStorage {
     private static final String PRIMARY_FILE = ".nexo_messages_primary.dat";
     private static final String MIRROR_FILE = ".nexo_messages_mirror.dat";
+    private static final String SEQ_FILE = ".nexo_messages_seq.dat";
+    private static final long SEQ_BLOCK = 1000;
     private static final int MAX_MESSAGES = 10000;
+    private static final int MAX_REMEMBERED_IDS = 4096;
     private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     
     private final DiskManager diskManager;
     private final ConcurrentLinkedQueue<StoredMessage> messageQueue;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong lastSeq = new AtomicLong(0);
+    private long reservedSeq; // highest number recorded in SEQ_FILE, under the write lock
+    
+    // "sender:clientMsgId" -> stored message, oldest evicted first
+    private final Map<String, StoredMessage> recentClientIds = new LinkedHashMap<String, StoredMessage>(256, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StoredMessage> eldest) {
+            return size() > MAX_REMEMBERED_IDS;
+        }
+    };
     private volatile boolean running = true;
     private Thread writerThread;
     
@@ -33,28 +58,68 @@ public class MessageStorage {
     
     /**
      * Store a new message (async write to disk)
+     * @throws IOException if no sequence number could be reserved on disk
      */
-    public void storeMessage(String sender, String recipient, String content) {
-        StoredMessage msg = new StoredMessage(
-            System.currentTimeMillis(),
-            sender,
-            recipient,
-            content
-        );
-        
+    public StoredMessage storeMessage(String sender, String recipient, String content) throws IOException {
+        return storeMessage(sender, recipient, content, null);
+    }
+    
+    /**
+     * Store a new message tagged with a client-generated id.
+     * If the same sender already sent this id, the original message is
+     * returned and nothing new is stored.
+     * @throws IOException if no sequence number could be reserved on disk
+     */
+    public StoredMessage storeMessage(String sender, String recipient, String content, String clientMsgId)
+            throws IOException {
         lock.writeLock().lock();
         try {
+            String dedupKey = clientMsgId != null ? sender + ":" + clientMsgId : null;
+            if (dedupKey != null) {
+                StoredMessage existing = recentClientIds.get(dedupKey);
+                if (existing != null) {
+                    return existing;
+                }
+            }
+            
+            if (lastSeq.get() + 1 > reservedSeq) {
+                reserveSeqs(lastSeq.get() + SEQ_BLOCK);
+            }
+            StoredMessage msg = new StoredMessage(
+                lastSeq.incrementAndGet(),
+                System.currentTimeMillis(),
+                sender,
+                recipient,
+                content,
+                clientMsgId
+            );
             messageQueue.offer(msg);
+            if (dedupKey != null) {
+                recentClientIds.put(dedupKey, msg);
+            }
             
             // Trim old messages if exceeds limit
             while (messageQueue.size() > MAX_MESSAGES) {
                 messageQueue.poll();
             }
+            return msg;
         } finally {
             lock.writeLock().unlock();
         }
     }
     
+    /**
+     * Find a message previously stored with the given client id
+     */
+    public StoredMessage findByClientMessageId(String sender, String clientMsgId) {
+        lock.readLock().lock();
+        try {
+            return recentClientIds.get(sender + ":" + clientMsgId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
     /**
      * Retrieve recent messages for a user (last 100)
      */
@@ -79,6 +144,41 @@ public class MessageStorage {
         return userMessages.subList(fromIndex, userMessages.size());
     }
     
+    /**
+     * Retrieve messages visible to a user with a sequence number above lastSeq.
+     * Used by RESUME so a reconnecting client only receives the gap.
+     */
+    public List<StoredMessage> getMessagesSince(String username, long lastSeq, int limit) {
+        List<StoredMessage> userMessages = new ArrayList<>();
+        
+        lock.readLock().lock();
+        try {
+            for (StoredMessage msg : messageQueue) {
+                if (msg.seq <= lastSeq) {
+                    continue;
+                }
+                if (msg.sender.equals(username) || 
+                    msg.recipient.equals(username) || 
+                    msg.recipient.equalsIgnoreCase("ALL")) {
+                    userMessages.add(msg);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        // Keep the newest messages if the gap is larger than the limit
+        int fromIndex = Math.max(0, userMessages.size() - limit);
+        return userMessages.subList(fromIndex, userMessages.size());
+    }
+    
+    /**
+     * Highest sequence number assigned so far
+     */
+    public long getLastSeq() {
+        return lastSeq.get();
+    }
+    
     /**
      * Get all messages between two users
      */
@@ -112,12 +212,64 @@ public class MessageStorage {
     private void loadExistingMessages() {
         try {
             List<StoredMessage> loaded = diskManager.loadMessages();
-            messageQueue.addAll(loaded);
-            System.out.println("Loaded " + loaded.size() + " messages from storage");
+            long seq = 0;
+            for (StoredMessage msg : loaded) {
+                // Messages written before sequence numbers existed get one on load
+                if (msg.seq <= seq) {
+                    msg = new StoredMessage(seq + 1, msg.timestamp, msg.sender, msg.recipient, msg.content, msg.clientMsgId);
+                }
+                seq = msg.seq;
+                messageQueue.add(msg);
+                if (msg.clientMsgId != null) {
+                    recentClientIds.put(msg.sender + ":" + msg.clientMsgId, msg);
+                }
+            }
+            lastSeq.set(seq);
+            System.out.println("Loaded " + loaded.size() + " messages from storage (last seq " + seq + ")");
         } catch (IOException e) {
             System.err.println("Failed to load messages: " + e.getMessage());
             System.err.println("Starting with empty message history");
         }
+        
+        // Numbers of the last block may have been sent before the crash: skip past all of them
+        reservedSeq = Math.max(lastSeq.get(), readReservedSeq());
+        lastSeq.set(reservedSeq);
+    }
+    
+    /**
+     * End of the last reserved block, 0 if none was recorded
+     */
+    private long readReservedSeq() {
+        File file = new File(SEQ_FILE);
+        if (!file.exists()) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readLong();
+        } catch (IOException e) {
+            System.err.println("WARNING: Could not read " + SEQ_FILE + ": " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    /**
+     * Record on disk that numbers up to upTo may be handed out
+     */
+    private void reserveSeqs(long upTo) throws IOException {
+        File file = new File(SEQ_FILE);
+        File tempFile = new File(SEQ_FILE + ".tmp");
+        
+        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(fos);
+            out.writeLong(upTo);
+            out.flush();
+            fos.getFD().sync();
+        }
+        
+        Files.move(tempFile.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        reservedSeq = upTo;
     }
     
     /**
@@ -173,16 +325,24 @@ public class MessageStorage {
     public static class StoredMessage implements Serializable {
         private static final long serialVersionUID = 1L;
         
+        public final long seq;
         public final long timestamp;
         public final String sender;
         public final String recipient;
         public final String content;
+        public final String clientMsgId;
         
         public StoredMessage(long timestamp, String sender, String recipient, String content) {
+            this(0, timestamp, sender, recipient, content, null);
+        }
+        
+        public StoredMessage(long seq, long timestamp, String sender, String recipient, String content, String clientMsgId) {
+            this.seq = seq;
             this.timestamp = timestamp;
             this.sender = sender;
             this.recipient = recipient;
             this.content = content;
+            this.clientMsgId = clientMsgId;
         }
         
         public String getFormattedTimestamp() {
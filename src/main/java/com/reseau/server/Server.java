@@ -28,6 +28,8 @@ public class Server {
     private AuthenticationService authService;
     private MessageStorage messageStorage;
     private FriendshipService friendshipService;
+    private SessionTokenService sessionTokens;
+    private CallRooms callRooms;
     private volatile boolean running;
 
     public Server() {
@@ -39,6 +41,8 @@ public class Server {
         this.authService = new AuthenticationService();
         this.messageStorage = new MessageStorage();
         this.friendshipService = new FriendshipService();
+        this.sessionTokens = new SessionTokenService();
+        this.callRooms = new CallRooms();
         this.running = false;
     }
 
@@ -142,6 +146,14 @@ public class Server {
         return friendshipService;
     }
 
+    public SessionTokenService getSessionTokens() {
+        return sessionTokens;
+    }
+
+    public CallRooms getCallRooms() {
+        return callRooms;
+    }
+
     /**
      * Send message to specific client
      */
@@ -168,6 +180,16 @@ public class Server {
             messageStorage.shutdown();
         }
         
+        // Flush pending account updates
+        if (authService != null) {
+            authService.shutdown();
+        }
+        
+        // Flush the friendship journal
+        if (friendshipService != null) {
+            friendshipService.shutdown();
+        }
+        
         // Close all client connections
         for (ClientHandler handler : clients.values()) {
             handler.close();
@@ -201,10 +223,14 @@ public class Server {
         
         // Start video streaming server
         VideoStreamServer videoServer = new VideoStreamServer(VideoStreamServer.DEFAULT_PORT);
+        videoServer.setTokenVerifier(server.getSessionTokens()::verify);
+        server.getCallRooms().addListener(videoServer::setUserRoom);
         videoServer.startAsync();
         
         // Start audio streaming server
         AudioStreamServer audioServer = new AudioStreamServer(AudioStreamServer.DEFAULT_PORT);
+        audioServer.setTokenVerifier(server.getSessionTokens()::verify);
+        server.getCallRooms().addListener(audioServer::setUserRoom);
         audioServer.startAsync();
         
         // Shutdown hook for graceful termination
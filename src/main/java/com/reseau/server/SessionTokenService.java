@@ -0,0 +1,168 @@
+package com.reseau.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * SessionTokenService - Signed, expiring session tokens
+ * Token format: base64url(username:expiresAtMillis).base64url(HMAC-SHA256)
+ * Verification is a single HMAC over the payload, with no lookup or disk I/O.
+ * The key is persisted so tokens survive a server restart.
+ */
+public class SessionTokenService {
+    private static final String KEY_FILE = ".nexo_session.key";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int KEY_BYTES = 32;
+    public static final long TOKEN_TTL_MS = 7L * 24 * 60 * 60 * 1000; // 7 days
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    public SessionTokenService() {
+        this.key = new SecretKeySpec(loadOrCreateKey(), HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC-SHA256 not available", e);
+            }
+        });
+    }
+
+    /**
+     * Issue a token for an authenticated user
+     */
+    public String issue(String username) {
+        return issue(username, System.currentTimeMillis() + TOKEN_TTL_MS);
+    }
+
+    private String issue(String username, long expiresAt) {
+        byte[] payload = (username + ":" + expiresAt).getBytes(StandardCharsets.UTF_8);
+        return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(macs.get().doFinal(payload));
+    }
+
+    /**
+     * Expiry timestamp (epoch millis) embedded in a token, or 0 if malformed
+     */
+    public static long getExpiry(String token) {
+        String payload = decodePayload(token);
+        if (payload == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(payload.substring(payload.lastIndexOf(':') + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Check signature and expiry
+     * @return the username, or null if the token is invalid or expired
+     */
+    public String verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot == token.length() - 1) {
+            return null;
+        }
+
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (!MessageDigest.isEqual(macs.get().doFinal(payload), signature)) {
+            return null;
+        }
+
+        String text = new String(payload, StandardCharsets.UTF_8);
+        int colon = text.lastIndexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        try {
+            if (Long.parseLong(text.substring(colon + 1)) < System.currentTimeMillis()) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return text.substring(0, colon);
+    }
+
+    private static String decodePayload(String token) {
+        int dot = token == null ? -1 : token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            return new String(DECODER.decode(token.substring(0, dot)), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create the file readable by its owner only, then write to it, so the key is never exposed
+     */
+    private static void writeOwnerOnly(Path path, byte[] bytes) throws IOException {
+        Files.deleteIfExists(path); // a replaced key file may have looser permissions
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            File file = Files.createFile(path).toFile();
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        }
+        Files.write(path, bytes);
+    }
+
+    private static byte[] loadOrCreateKey() {
+        File file = new File(KEY_FILE);
+        try {
+            if (file.exists()) {
+                byte[] existing = Files.readAllBytes(file.toPath());
+                if (existing.length == KEY_BYTES) {
+                    return existing;
+                }
+                System.err.println("WARNING: Invalid session key file, generating a new key");
+            }
+
+            byte[] fresh = new byte[KEY_BYTES];
+            new SecureRandom().nextBytes(fresh);
+            writeOwnerOnly(file.toPath(), fresh);
+            System.out.println("Generated new session signing key");
+            return fresh;
+        } catch (IOException e) {
+            // Tokens still work for this run, they just won't survive a restart
+            System.err.println("Error persisting session key: " + e.getMessage());
+            byte[] fresh = new byte[KEY_BYTES];
+            new SecureRandom().nextBytes(fresh);
+            return fresh;
+        }
+    }
+}
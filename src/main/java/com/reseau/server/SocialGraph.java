@@ -0,0 +1,223 @@
+package com.reseau.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SocialGraph - Compact undirected friendship graph
+ * Usernames are interned to dense int ids and each user's friends are kept as
+ * a sorted int[] with spare capacity: membership is a binary search, degree is
+ * O(1) and mutual friends are a linear merge of two arrays.
+ * Not thread-safe; FriendshipService guards it with its read/write lock.
+ */
+public class SocialGraph {
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[16];
+    private int[][] adjacency = new int[16][];
+    private int[] degrees = new int[16];
+    private int userCount;
+    private long edgeCount;
+
+    /**
+     * Id of a username, allocating one on first use
+     */
+    public int intern(String username) {
+        Integer id = ids.get(username);
+        if (id != null) {
+            return id;
+        }
+
+        if (userCount == names.length) {
+            int capacity = names.length + (names.length >> 1);
+            names = Arrays.copyOf(names, capacity);
+            adjacency = Arrays.copyOf(adjacency, capacity);
+            degrees = Arrays.copyOf(degrees, capacity);
+        }
+        int newId = userCount++;
+        names[newId] = username;
+        adjacency[newId] = EMPTY;
+        ids.put(username, newId);
+        return newId;
+    }
+
+    /**
+     * Id of a username, or -1 if it has never been interned
+     */
+    public int idOf(String username) {
+        Integer id = ids.get(username);
+        return id == null ? -1 : id;
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    public long getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Key for an ordered (from, to) pair of user ids
+     */
+    public static long pairKey(int from, int to) {
+        return ((long) from << 32) | (to & 0xFFFFFFFFL);
+    }
+
+    public boolean addEdge(String user1, String user2) {
+        return addEdge(intern(user1), intern(user2));
+    }
+
+    /**
+     * Add an undirected edge
+     * @return false if it already existed (or is a self-loop)
+     */
+    public boolean addEdge(int id1, int id2) {
+        if (id1 == id2 || !insert(id1, id2)) {
+            return false;
+        }
+        insert(id2, id1);
+        edgeCount++;
+        return true;
+    }
+
+    public boolean removeEdge(String user1, String user2) {
+        int id1 = idOf(user1);
+        int id2 = idOf(user2);
+        if (id1 < 0 || id2 < 0 || !remove(id1, id2)) {
+            return false;
+        }
+        remove(id2, id1);
+        edgeCount--;
+        return true;
+    }
+
+    public boolean hasEdge(String user1, String user2) {
+        int id1 = idOf(user1);
+        int id2 = idOf(user2);
+        return id1 >= 0 && id2 >= 0 && Arrays.binarySearch(adjacency[id1], 0, degrees[id1], id2) >= 0;
+    }
+
+    public int degree(String username) {
+        int id = idOf(username);
+        return id < 0 ? 0 : degrees[id];
+    }
+
+    public int degree(int id) {
+        return degrees[id];
+    }
+
+    /**
+     * Friends of a user, ordered by id
+     */
+    public List<String> neighbors(String username) {
+        int id = idOf(username);
+        if (id < 0) {
+            return new ArrayList<>();
+        }
+        List<String> result = new ArrayList<>(degrees[id]);
+        int[] adj = adjacency[id];
+        for (int i = 0; i < degrees[id]; i++) {
+            result.add(names[adj[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Sorted friend ids of a user; valid up to degree(id), do not modify
+     */
+    public int[] neighborIds(int id) {
+        return adjacency[id];
+    }
+
+    public List<String> mutualFriends(String user1, String user2) {
+        List<String> result = new ArrayList<>();
+        int id1 = idOf(user1);
+        int id2 = idOf(user2);
+        if (id1 < 0 || id2 < 0) {
+            return result;
+        }
+
+        int[] a = adjacency[id1];
+        int[] b = adjacency[id2];
+        int i = 0;
+        int j = 0;
+        while (i < degrees[id1] && j < degrees[id2]) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result.add(names[a[i]]);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public int mutualFriendCount(String user1, String user2) {
+        int id1 = idOf(user1);
+        int id2 = idOf(user2);
+        if (id1 < 0 || id2 < 0) {
+            return 0;
+        }
+
+        int[] a = adjacency[id1];
+        int[] b = adjacency[id2];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < degrees[id1] && j < degrees[id2]) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private boolean insert(int from, int to) {
+        int[] adj = adjacency[from];
+        int degree = degrees[from];
+        int pos = Arrays.binarySearch(adj, 0, degree, to);
+        if (pos >= 0) {
+            return false;
+        }
+        pos = -pos - 1;
+
+        if (degree == adj.length) {
+            adj = Arrays.copyOf(adj, Math.max(4, degree + (degree >> 1)));
+            adjacency[from] = adj;
+        }
+        System.arraycopy(adj, pos, adj, pos + 1, degree - pos);
+        adj[pos] = to;
+        degrees[from] = degree + 1;
+        return true;
+    }
+
+    private boolean remove(int from, int to) {
+        int[] adj = adjacency[from];
+        int degree = degrees[from];
+        int pos = Arrays.binarySearch(adj, 0, degree, to);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(adj, pos + 1, adj, pos, degree - pos - 1);
+        degrees[from] = degree - 1;
+        return true;
+    }
+}
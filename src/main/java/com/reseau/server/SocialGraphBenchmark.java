@@ -0,0 +1,101 @@
+package com.reseau.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * SocialGraphBenchmark - Heap and query cost of the friendship graph at scale
+ * Builds a random graph of the given size, then reports the live heap it
+ * takes (after GC), build time and the cost of degree, hasEdge and
+ * mutual-friend queries. With --baseline it also builds the former
+ * Map<String, Set<String>> representation of the same edges to compare.
+ *
+ * Usage (after mvn compile):
+ *   java -Xmx3g -cp target/classes com.reseau.server.SocialGraphBenchmark [users] [edges] [--baseline]
+ * Defaults: 1000000 users, 50000000 edges.
+ */
+public class SocialGraphBenchmark {
+    private static final int QUERIES = 1_000_000;
+    private static final int MUTUAL_QUERIES = 100_000;
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long edges = args.length > 1 ? Long.parseLong(args[1]) : 50_000_000L;
+        boolean baseline = args.length > 2 && args[2].equals("--baseline");
+        Random random = new Random(42);
+
+        long before = usedHeap();
+        long start = System.nanoTime();
+        SocialGraph graph = new SocialGraph();
+        for (int i = 0; i < users; i++) {
+            graph.intern("user" + i);
+        }
+        long interned = usedHeap();
+        while (graph.getEdgeCount() < edges) {
+            graph.addEdge(random.nextInt(users), random.nextInt(users));
+        }
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        long after = usedHeap();
+
+        System.out.printf("SocialGraph: %,d users, %,d edges built in %.1f s%n", users, edges, buildSeconds);
+        System.out.printf("  heap: %,d MB total, %,d MB for usernames and ids, %,d MB adjacency (%.1f bytes/edge)%n",
+            mb(after - before), mb(interned - before), mb(after - interned), (double) (after - interned) / edges);
+
+        long sink = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            sink += graph.degree(random.nextInt(users));
+        }
+        System.out.printf("  degree:        %,.0f ns/query%n", (System.nanoTime() - start) / (double) QUERIES);
+
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            sink += graph.hasEdge("user" + random.nextInt(users), "user" + random.nextInt(users)) ? 1 : 0;
+        }
+        System.out.printf("  hasEdge:       %,.0f ns/query (including name lookup)%n",
+            (System.nanoTime() - start) / (double) QUERIES);
+
+        start = System.nanoTime();
+        for (int i = 0; i < MUTUAL_QUERIES; i++) {
+            sink += graph.mutualFriendCount("user" + random.nextInt(users), "user" + random.nextInt(users));
+        }
+        System.out.printf("  mutual count:  %,.0f ns/query (average degree %.0f)%n",
+            (System.nanoTime() - start) / (double) MUTUAL_QUERIES, 2.0 * edges / users);
+
+        if (baseline) {
+            long graphHeap = after - before;
+            long baseBefore = usedHeap();
+            Map<String, Set<String>> friendships = new HashMap<>();
+            for (int id = 0; id < users; id++) {
+                Set<String> friends = new HashSet<>();
+                int[] adjacency = graph.neighborIds(id);
+                for (int i = 0; i < graph.degree(id); i++) {
+                    friends.add(graph.nameOf(adjacency[i]));
+                }
+                friendships.put(graph.nameOf(id), friends);
+            }
+            long baseHeap = usedHeap() - baseBefore;
+            System.out.printf("Map<String, Set<String>> baseline: %,d MB (%.1f bytes/edge), %.1fx the graph%n",
+                mb(baseHeap), (double) baseHeap / edges, (double) baseHeap / graphHeap);
+            sink += friendships.size();
+        }
+        System.out.println("  (checksum " + sink + ")");
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long mb(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+}
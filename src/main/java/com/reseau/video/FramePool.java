@@ -0,0 +1,106 @@
+package com.reseau.video;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FramePool - Reference-counted direct buffers for the media relays
+ * Buffers come in power-of-two sizes from 1 KB to 4 MB. A frame goes back
+ * to the free list of its size when its last reference is released, unless
+ * the free lists already hold maxFreeBytes. Larger frames are plain heap
+ * buffers and are not pooled.
+ * Not thread-safe: a relay uses its pool from its selector thread only.
+ */
+final class FramePool {
+    private static final int MIN_SHIFT = 10;
+    private static final int MAX_SHIFT = 22;
+
+    /**
+     * A pooled buffer; every holder retains it and releases it when done
+     */
+    static final class Frame {
+        final ByteBuffer buffer;
+        private final FramePool pool;
+        private final int sizeClass; // -1: not pooled
+        private int refs;
+        int sender;
+        int sequence;
+        int timestamp;
+
+        private Frame(ByteBuffer buffer, FramePool pool, int sizeClass) {
+            this.buffer = buffer;
+            this.pool = pool;
+            this.sizeClass = sizeClass;
+        }
+
+        Frame retain() {
+            refs++;
+            return this;
+        }
+
+        void release() {
+            if (--refs == 0) {
+                pool.recycle(this);
+            }
+        }
+    }
+
+    private final List<ArrayDeque<Frame>> free = new ArrayList<>();
+    private final long maxFreeBytes;
+    private long freeBytes;
+    private long created;
+    private long reused;
+
+    FramePool(long maxFreeBytes) {
+        this.maxFreeBytes = maxFreeBytes;
+        for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++) {
+            free.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * A frame with one reference, position 0 and limit size
+     */
+    Frame acquire(int size) {
+        int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(size - 1));
+        Frame frame;
+        if (shift > MAX_SHIFT) {
+            frame = new Frame(ByteBuffer.allocate(size), this, -1);
+        } else {
+            frame = free.get(shift - MIN_SHIFT).poll();
+            if (frame != null) {
+                freeBytes -= frame.buffer.capacity();
+                reused++;
+            } else {
+                frame = new Frame(ByteBuffer.allocateDirect(1 << shift), this, shift - MIN_SHIFT);
+                created++;
+            }
+        }
+        frame.refs = 1;
+        frame.sender = 0;
+        frame.buffer.clear().limit(size);
+        return frame;
+    }
+
+    private void recycle(Frame frame) {
+        if (frame.sizeClass < 0 || freeBytes + frame.buffer.capacity() > maxFreeBytes) {
+            return;
+        }
+        free.get(frame.sizeClass).push(frame);
+        freeBytes += frame.buffer.capacity();
+    }
+
+    long getCreated() {
+        return created;
+    }
+
+    long getReused() {
+        return reused;
+    }
+
+    long getFreeBytes() {
+        return freeBytes;
+    }
+}
@@ -0,0 +1,1091 @@
+package com.reseau.video;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+import com.reseau.common.AudioCodec;
+import com.reseau.common.AudioCodecs;
+import com.reseau.common.ComfortNoise;
+import com.reseau.common.FrameReassembler;
+import com.reseau.common.MediaPacket;
+
+/**
+ * MediaRelay - Non-blocking frame relay behind the video and audio servers
+ *
+ * One selector thread does all the I/O, so a slow receiver never holds up
+ * a sender. Frames are forwarded to the other members of the sender's call
+ * room. A client whose session token was verified but who is in no call
+ * (before JOIN_ROOM, after LEAVE_ROOM) is parked alone: it neither sends nor
+ * receives. Only older clients without a token share the lobby. An audio
+ * connection joins nothing until its first frame says which it is, or until
+ * it has been silent for LEGACY_GRACE_MS (an older client that only listens).
+ *
+ * Each frame is read once, straight into a pooled direct buffer laid out
+ * as the record receivers get: [senderId][length][payload]. Every receiver
+ * holds a reference to that same buffer, and it goes back to the pool after
+ * the last write. Each receiver has one slot per sender with the latest
+ * frame not yet written to it. A newer frame replaces it and counts as a
+ * drop for that receiver only. Waiting slots are written in turn with
+ * gathering writes, and the rest waits for OP_WRITE.
+ *
+ * Clients may also move their media to UDP on the same port (see
+ * MediaPacket): a HELLO with the session token binds the source address to
+ * the TCP connection of that user. Their frames are then reassembled into
+ * pooled records like TCP ones. Frames to them are split into packets and
+ * sent right away: a datagram never blocks, and what the socket cannot
+ * take is dropped. Control records stay on TCP.
+ *
+ * All state below is confined to the selector thread. Per receiver state is
+ * kept in arrays indexed by sender, so relaying a frame allocates nothing.
+ *
+ * Audio clients may negotiate a codec in their token frame (AudioCodecs).
+ * A frame goes out in each receiver's codec, transcoded once per codec
+ * when sender and receiver differ. Comfort noise markers (ComfortNoise)
+ * are forwarded as they are.
+ *
+ * With -Dnexo.audio.mixing=true the audio relay mixes instead of
+ * forwarding: each room's RoomMixer sends every member one stream, the
+ * others' voices mixed, as records from sender 0.
+ *
+ * -Dnexo.<video|audio>.statsMs=<ms> logs fps per receiver, relay thread
+ * CPU, allocation and GC time at that interval. -Dnexo.media.poolMb sets
+ * the free buffers kept by each relay (default 64).
+ */
+final class MediaRelay {
+
+    /**
+     * How clients open a connection
+     */
+    enum Protocol {
+        /** Client sends its session token (or username) first, then gets its id and participant counts */
+        VIDEO,
+        /** Server sends the id first, and the client's first frame may be its session token */
+        AUDIO
+    }
+
+    static final int SYSTEM_SENDER = 0;
+    static final int RECORD_HEADER = 8;
+
+    // Mixed audio: marks the frames for the stats (their records say SYSTEM_SENDER), and their receiver slot
+    private static final int MIX_SENDER = -1;
+    private static final int MIX_SLOT = 0;
+
+    private static final int MAX_HANDSHAKE = 4096;
+    private static final int MAX_BATCH = 16;
+    private static final int MAX_READS_PER_WAKEUP = 32;
+    private static final String LOBBY = "";
+    private static final String TOKEN_PREFIX = "TOKEN ";
+    private static final long LEGACY_GRACE_MS = 2000;
+    private static final int UDP_SOCKET_BUFFER = 4 * 1024 * 1024;
+    private static final long POOL_BYTES = Long.getLong("nexo.media.poolMb", 64) << 20;
+
+    private final String name;
+    private final int port;
+    private final int maxFrame;
+    private final Protocol protocol;
+    private final long statsIntervalMs;
+    private final boolean mixing;
+    private final FramePool pool = new FramePool(POOL_BYTES);
+    private final Transcoder transcoder; // audio only
+    private final FrameReassembler.Buffers<FramePool.Frame> poolBuffers = new FrameReassembler.Buffers<>() {
+        @Override
+        public FramePool.Frame allocate(int capacity) {
+            return pool.acquire(capacity);
+        }
+
+        @Override
+        public ByteBuffer view(FramePool.Frame frame) {
+            return frame.buffer;
+        }
+
+        @Override
+        public void discard(FramePool.Frame frame) {
+            frame.release();
+        }
+    };
+
+    private volatile boolean running;
+    private volatile Selector selector;
+    private volatile int connectedCount;
+
+    private DatagramChannel udp;
+    private final ByteBuffer udpIn = ByteBuffer.allocateDirect(MediaPacket.MAX_PACKET + 1);
+    private final ByteBuffer udpOut = ByteBuffer.allocateDirect(MediaPacket.MAX_PACKET);
+
+    private final Map<Integer, Peer> peers = new HashMap<>();
+    private final List<Peer> closed = new ArrayList<>();
+    private final List<Peer> unclassified = new ArrayList<>(); // audio peers waiting for their first frame
+    private final Map<String, List<Peer>> rooms = new HashMap<>();
+    private final BitSet usedSlots = new BitSet();
+    private Peer[] bySlot = new Peer[8];
+    private int nextClientId = 1;
+
+    private final List<RoomMixer> mixers = new ArrayList<>();
+    private final RoomMixer.Output mixOutput = (slot, mix) -> deliver(bySlot[slot], MIX_SLOT, mix);
+
+    // Maps a session token to its username (null if invalid); set by the chat server
+    private volatile Function<String, String> tokenVerifier;
+
+    // Room of each user as signaled on the chat connection; moves are applied on the selector thread
+    private final Map<String, String> userRooms = new ConcurrentHashMap<>();
+    private final Queue<String> movedUsers = new ConcurrentLinkedQueue<>();
+
+    private long lastStatsAt;
+    private long lastCpuNanos;
+    private long lastAllocatedBytes;
+    private long lastGcMillis;
+    private long lastGcCount;
+
+    /**
+     * Latest frame of one sender not yet written to one receiver
+     */
+    private static final class Slot {
+        FramePool.Frame frame;
+        Slot next;
+        boolean queued;
+    }
+
+    /**
+     * One connection: its read state and what is still to be written to it
+     */
+    private static final class Peer {
+        final int id;
+        final int slot; // small index of this peer in the receivers' slot arrays
+        final SocketChannel channel;
+        final SelectionKey key;
+        String username;
+        boolean verified; // username comes from a session token; only then is the peer roomed
+        boolean greeted; // first message handled
+        long acceptedAt; // ms
+        String roomName; // null: parked alone
+        List<Peer> room; // null until registered
+        RoomMixer mixer; // the room's, in mixing mode
+        AudioCodec codec = AudioCodecs.PCM;
+
+        // Reading: 4-byte length, then the payload into a pooled record
+        final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        FramePool.Frame reading;
+
+        // Writing: system records first, then the waiting slots in turn
+        final ArrayDeque<FramePool.Frame> control = new ArrayDeque<>();
+        Slot[] slots = new Slot[8];
+        Slot head;
+        Slot tail;
+        int nextSequence;
+
+        // UDP: bound by a HELLO, then frames go both ways as packets
+        SocketAddress udpAddress;
+        FrameReassembler<FramePool.Frame> udpFrames;
+
+        final FramePool.Frame[] out = new FramePool.Frame[MAX_BATCH];
+        final ByteBuffer[] outBuffers = new ByteBuffer[MAX_BATCH];
+        final int[] outPositions = new int[MAX_BATCH];
+        int outCount;
+
+        long framesSent;
+        long framesDropped;
+        long statsSent;
+        long statsDropped;
+
+        Peer(int id, int slot, SocketChannel channel, SelectionKey key) {
+            this.id = id;
+            this.slot = slot;
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    /**
+     * @param name "Video" or "Audio", used in logs and property names
+     */
+    MediaRelay(String name, int port, int maxFrame, Protocol protocol) {
+        this.name = name;
+        this.port = port;
+        this.maxFrame = maxFrame;
+        this.protocol = protocol;
+        this.statsIntervalMs = Long.getLong("nexo." + name.toLowerCase() + ".statsMs", 0);
+        this.mixing = protocol == Protocol.AUDIO && Boolean.getBoolean("nexo.audio.mixing");
+        this.transcoder = protocol == Protocol.AUDIO ? new Transcoder(pool) : null;
+    }
+
+    void setTokenVerifier(Function<String, String> tokenVerifier) {
+        this.tokenVerifier = tokenVerifier;
+    }
+
+    /**
+     * Called by the chat server when a user joins a call room (room null: left it)
+     */
+    void setUserRoom(String username, String room) {
+        if (room != null) {
+            userRooms.put(username, room);
+        } else {
+            userRooms.remove(username);
+        }
+        movedUsers.add(username);
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    void stop() {
+        running = false;
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    int getConnectedCount() {
+        return connectedCount;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Run the selector loop on the calling thread until stop()
+     */
+    void run() {
+        running = true;
+
+        try (Selector sel = Selector.open();
+             ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(sel, SelectionKey.OP_ACCEPT);
+            openUdp(sel);
+            this.selector = sel;
+            System.out.println(name + " server listening on port " + port + (mixing ? " (mixing)" : ""));
+
+            startStats();
+            while (running) {
+                select(sel);
+                Iterator<SelectionKey> keys = sel.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(server, sel);
+                        continue;
+                    }
+                    if (key.channel() == udp) {
+                        receiveUdp();
+                        continue;
+                    }
+                    Peer peer = (Peer) key.attachment();
+                    if (key.isWritable()) {
+                        flush(peer);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(peer);
+                    }
+                }
+                removeClosed();
+                admitSilentPeers();
+                applyRoomMoves();
+                mixRooms();
+                if (statsIntervalMs > 0 && System.currentTimeMillis() - lastStatsAt >= statsIntervalMs) {
+                    logStats();
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.err.println(name + " server error: " + e.getMessage());
+            }
+        } finally {
+            for (Peer peer : peers.values()) {
+                closeQuietly(peer);
+            }
+            peers.clear();
+            unclassified.clear();
+            rooms.clear();
+            mixers.clear();
+            connectedCount = 0;
+            if (udp != null) {
+                try {
+                    udp.close();
+                } catch (IOException ignored) {
+                }
+                udp = null;
+            }
+        }
+    }
+
+    /**
+     * Wait for I/O, but no longer than the next mixing tick or stats line
+     */
+    private void select(Selector sel) throws IOException {
+        long timeoutMs = statsIntervalMs;
+        if (!mixers.isEmpty()) {
+            long now = System.nanoTime();
+            long wait = Long.MAX_VALUE;
+            for (int i = 0; i < mixers.size(); i++) {
+                wait = Math.min(wait, mixers.get(i).nanosUntilTick(now));
+            }
+            if (wait <= 0) {
+                sel.selectNow();
+                return;
+            }
+            long waitMs = Math.max(1, (wait + 999_999) / 1_000_000);
+            timeoutMs = timeoutMs > 0 ? Math.min(timeoutMs, waitMs) : waitMs;
+        }
+        if (!unclassified.isEmpty()) {
+            long graceMs = Math.max(1, unclassified.get(0).acceptedAt + LEGACY_GRACE_MS - System.currentTimeMillis());
+            timeoutMs = timeoutMs > 0 ? Math.min(timeoutMs, graceMs) : graceMs;
+        }
+        sel.select(timeoutMs);
+    }
+
+    private void mixRooms() {
+        long now = System.nanoTime();
+        for (int i = 0; i < mixers.size(); i++) {
+            mixers.get(i).tickIfDue(now, mixOutput);
+        }
+    }
+
+    private void openUdp(Selector sel) {
+        try {
+            udp = DatagramChannel.open();
+            // A video frame leaves as a burst of packets
+            udp.setOption(StandardSocketOptions.SO_RCVBUF, UDP_SOCKET_BUFFER);
+            udp.setOption(StandardSocketOptions.SO_SNDBUF, UDP_SOCKET_BUFFER);
+            udp.bind(new InetSocketAddress(port));
+            udp.configureBlocking(false);
+            udp.register(sel, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            System.err.println("WARNING: " + name + " server without UDP transport: " + e.getMessage());
+            udp = null;
+        }
+    }
+
+    private void accept(ServerSocketChannel server, Selector sel) throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            System.out.println("New " + name.toLowerCase() + " client connected: " + channel.socket().getInetAddress());
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(sel, SelectionKey.OP_READ);
+            int slot = usedSlots.nextClearBit(1);
+            usedSlots.set(slot);
+            Peer peer = new Peer(nextClientId++, slot, channel, key);
+            key.attach(peer);
+            peers.put(peer.id, peer);
+            if (slot >= bySlot.length) {
+                bySlot = Arrays.copyOf(bySlot, Math.max(slot + 1, bySlot.length * 2));
+            }
+            bySlot[slot] = peer;
+
+            if (protocol == Protocol.AUDIO) {
+                // Handshake: inform client of its assigned id
+                sendId(peer);
+                peer.acceptedAt = System.currentTimeMillis();
+                unclassified.add(peer);
+            }
+        }
+    }
+
+    private void read(Peer peer) {
+        try {
+            for (int i = 0; i < MAX_READS_PER_WAKEUP; i++) {
+                if (peer.reading == null) {
+                    if (peer.channel.read(peer.lengthBuffer) < 0) {
+                        disconnect(peer);
+                        return;
+                    }
+                    if (peer.lengthBuffer.hasRemaining()) {
+                        return;
+                    }
+                    peer.lengthBuffer.flip();
+                    int len = peer.lengthBuffer.getInt();
+                    peer.lengthBuffer.clear();
+                    int max = !peer.greeted && protocol == Protocol.VIDEO ? MAX_HANDSHAKE : maxFrame;
+                    if (len <= 0 || len > max) {
+                        disconnect(peer);
+                        return;
+                    }
+                    peer.reading = pool.acquire(RECORD_HEADER + len);
+                    peer.reading.sender = peer.id;
+                    peer.reading.buffer.putInt(peer.id).putInt(len);
+                }
+
+                ByteBuffer buffer = peer.reading.buffer;
+                if (peer.channel.read(buffer) < 0) {
+                    disconnect(peer);
+                    return;
+                }
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+                FramePool.Frame frame = peer.reading;
+                peer.reading = null;
+                frame.sequence = peer.nextSequence++;
+                frame.timestamp = (int) System.currentTimeMillis();
+                buffer.position(0);
+                try {
+                    onMessage(peer, frame);
+                } finally {
+                    frame.release();
+                }
+                if (!peer.key.isValid()) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            disconnect(peer);
+        }
+    }
+
+    private void onMessage(Peer peer, FramePool.Frame frame) {
+        if (!peer.greeted) {
+            peer.greeted = true;
+            unclassified.remove(peer);
+            if (protocol == Protocol.VIDEO) {
+                // "TOKEN <sessionToken>"; a bare username from older clients stays in the lobby
+                String handshake = payloadText(frame);
+                boolean tokenFrame = handshake.startsWith(TOKEN_PREFIX);
+                String username = tokenFrame ? verifyToken(handshake) : handshake;
+                if (username == null) {
+                    reject(peer);
+                    return;
+                }
+                peer.username = username;
+                peer.verified = tokenFrame;
+                sendId(peer);
+                register(peer);
+                return;
+            }
+            // Clients with a session send "TOKEN <sessionToken> [CODECS <names>]" as their first frame
+            if (isTokenFrame(frame)) {
+                String handshake = payloadText(frame);
+                int offerAt = handshake.indexOf(AudioCodecs.OFFER_PREFIX);
+                String username = verifyToken(offerAt >= 0 ? handshake.substring(0, offerAt) : handshake);
+                if (username == null) {
+                    reject(peer);
+                    return;
+                }
+                peer.username = username;
+                peer.verified = true;
+                System.out.println(name + " client " + peer.id + " authenticated as " + username);
+                if (offerAt >= 0) {
+                    setCodec(peer, AudioCodecs.choose(handshake.substring(offerAt + AudioCodecs.OFFER_PREFIX.length())));
+                }
+                register(peer);
+                return;
+            }
+            // Older clients send audio right away without a token: to the lobby, frame included
+            register(peer);
+        }
+        if (peer.room != null) {
+            forward(peer, frame);
+        }
+    }
+
+    private void receiveUdp() {
+        try {
+            for (int i = 0; i < MAX_READS_PER_WAKEUP * 4; i++) {
+                udpIn.clear();
+                SocketAddress from = udp.receive(udpIn);
+                if (from == null) {
+                    return;
+                }
+                udpIn.flip();
+                if (!MediaPacket.isValid(udpIn)) {
+                    continue;
+                }
+                Peer peer = peers.get(MediaPacket.getSender(udpIn));
+                if (peer == null || peer.room == null || peer.username == null || !peer.key.isValid()) {
+                    continue;
+                }
+                if (MediaPacket.getType(udpIn) == MediaPacket.TYPE_HELLO) {
+                    udpHello(peer, from);
+                } else if (from.equals(peer.udpAddress)) {
+                    FramePool.Frame frame = peer.udpFrames.add(udpIn);
+                    if (frame != null) {
+                        int length = peer.udpFrames.getLastLength();
+                        try {
+                            // An empty frame is invalid, as on TCP: receivers would drop the call
+                            if (length > 0) {
+                                frame.sender = peer.id;
+                                frame.sequence = peer.udpFrames.getLastSequence();
+                                frame.timestamp = peer.udpFrames.getLastTimestamp();
+                                frame.buffer.putInt(0, peer.id).putInt(4, length);
+                                forward(peer, frame);
+                            }
+                        } finally {
+                            frame.release();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(name + " UDP receive error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bind the packet's source address to the peer if the token is its user's, and echo the HELLO
+     */
+    private void udpHello(Peer peer, SocketAddress from) throws IOException {
+        ByteBuffer payload = udpIn.duplicate();
+        payload.position(MediaPacket.HEADER);
+        String hello = StandardCharsets.UTF_8.decode(payload).toString();
+        if (!hello.startsWith(TOKEN_PREFIX) || !peer.username.equals(verifyToken(hello))) {
+            return;
+        }
+        if (!from.equals(peer.udpAddress)) {
+            peer.udpAddress = from;
+            if (peer.udpFrames == null) {
+                peer.udpFrames = new FrameReassembler<>(poolBuffers, RECORD_HEADER, maxFrame);
+            }
+            System.out.println(name + " client " + peer.username + " (ID: " + peer.id + ") on UDP from " + from);
+        }
+        udpOut.clear();
+        MediaPacket.putHeader(udpOut, MediaPacket.TYPE_HELLO, 0, 1, peer.id, 0, 0);
+        udpOut.flip();
+        udp.send(udpOut, from);
+    }
+
+    /**
+     * Send a frame to a UDP peer as packets; a full socket buffer drops the rest of the frame
+     */
+    private void sendUdp(Peer peer, FramePool.Frame frame) {
+        int length = frame.buffer.limit() - RECORD_HEADER;
+        int count = MediaPacket.fragmentCount(length);
+        try {
+            for (int i = 0; i < count; i++) {
+                int offset = i * MediaPacket.MAX_PAYLOAD;
+                int size = Math.min(MediaPacket.MAX_PAYLOAD, length - offset);
+                udpOut.clear();
+                MediaPacket.putHeader(udpOut, MediaPacket.TYPE_MEDIA, i, count,
+                    frame.buffer.getInt(0), frame.sequence, frame.timestamp);
+                udpOut.put(MediaPacket.HEADER, frame.buffer, RECORD_HEADER + offset, size);
+                udpOut.position(0).limit(MediaPacket.HEADER + size);
+                if (udp.send(udpOut, peer.udpAddress) == 0) {
+                    peer.framesDropped++;
+                    return;
+                }
+            }
+            peer.framesSent++;
+        } catch (IOException e) {
+            peer.framesDropped++;
+        }
+    }
+
+    private static String payloadText(FramePool.Frame frame) {
+        ByteBuffer payload = frame.buffer.duplicate();
+        payload.position(RECORD_HEADER);
+        return StandardCharsets.UTF_8.decode(payload).toString();
+    }
+
+    private static boolean isTokenFrame(FramePool.Frame frame) {
+        ByteBuffer buffer = frame.buffer;
+        int len = buffer.limit() - RECORD_HEADER;
+        if (len <= TOKEN_PREFIX.length() || len >= MAX_HANDSHAKE) {
+            return false;
+        }
+        for (int i = 0; i < TOKEN_PREFIX.length(); i++) {
+            if (buffer.get(RECORD_HEADER + i) != TOKEN_PREFIX.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String verifyToken(String handshake) {
+        Function<String, String> verifier = tokenVerifier;
+        return verifier != null ? verifier.apply(handshake.substring(TOKEN_PREFIX.length())) : null;
+    }
+
+    /**
+     * Answer a codec offer; what was queued in the old codec is dropped
+     */
+    private void setCodec(Peer peer, AudioCodec codec) {
+        peer.codec = codec;
+        releaseSlots(peer);
+        if (peer.mixer != null) {
+            peer.mixer.setCodec(peer.slot, codec);
+        }
+        byte[] reply = (AudioCodecs.REPLY_PREFIX + codec.getName()).getBytes(StandardCharsets.UTF_8);
+        FramePool.Frame record = pool.acquire(RECORD_HEADER + reply.length);
+        record.buffer.putInt(0, SYSTEM_SENDER).putInt(4, reply.length).put(RECORD_HEADER, reply);
+        peer.control.add(record);
+        flush(peer);
+        System.out.println(name + " client " + peer.username + " (ID: " + peer.id + ") uses codec " + codec.getName());
+    }
+
+    private void reject(Peer peer) {
+        System.out.println(name + " client rejected: invalid session token (ID: " + peer.id + ")");
+        disconnect(peer);
+    }
+
+    /**
+     * Send the client its id
+     */
+    private void sendId(Peer peer) {
+        FramePool.Frame hello = pool.acquire(4);
+        hello.buffer.putInt(0, peer.id);
+        peer.control.add(hello);
+        flush(peer);
+    }
+
+    /**
+     * Put a peer in its room once its first frame has said who it is
+     */
+    private void register(Peer peer) {
+        connectedCount++;
+        System.out.println(name + " client registered" + (peer.username != null ? ": " + peer.username : "") +
+            " (ID: " + peer.id + ")");
+        enterRoom(peer, roomOf(peer));
+    }
+
+    /**
+     * Older audio clients that only listen never send a first frame: after the grace period they join the lobby
+     */
+    private void admitSilentPeers() {
+        long now = System.currentTimeMillis();
+        while (!unclassified.isEmpty() && now - unclassified.get(0).acceptedAt >= LEGACY_GRACE_MS) {
+            Peer peer = unclassified.remove(0);
+            if (peer.key.isValid()) {
+                peer.greeted = true;
+                register(peer);
+            }
+        }
+    }
+
+    /**
+     * The call room of a verified user (null when in none), the lobby for clients without a token
+     */
+    private String roomOf(Peer peer) {
+        return peer.verified ? userRooms.get(peer.username) : LOBBY;
+    }
+
+    /**
+     * Offer a frame to every other member of the sender's room, or to the room's mix
+     */
+    private void forward(Peer sender, FramePool.Frame frame) {
+        if (sender.mixer != null) {
+            sender.mixer.add(sender.slot, frame);
+            return;
+        }
+        boolean marker = ComfortNoise.isMarker(frame.buffer.limit() - RECORD_HEADER);
+        List<Peer> room = sender.room;
+        for (int i = 0; i < room.size(); i++) {
+            Peer peer = room.get(i);
+            if (peer == sender) {
+                continue;
+            }
+            if (peer.codec == sender.codec || marker) {
+                deliver(peer, sender.slot, frame);
+            } else {
+                FramePool.Frame copy = transcoder.get(frame, sender.codec, peer.codec);
+                if (copy != null) {
+                    deliver(peer, sender.slot, copy);
+                }
+            }
+        }
+        if (transcoder != null) {
+            transcoder.reset();
+        }
+    }
+
+    /**
+     * Send right away over UDP, or leave in the receiver's slot for that sender
+     */
+    private void deliver(Peer peer, int senderSlot, FramePool.Frame frame) {
+        if (!peer.key.isValid()) {
+            return;
+        }
+        if (peer.udpAddress != null
+                && MediaPacket.fragmentCount(frame.buffer.limit() - RECORD_HEADER) <= MediaPacket.MAX_FRAGMENTS) {
+            sendUdp(peer, frame);
+            return;
+        }
+        offer(peer, senderSlot, frame);
+        if (peer.outCount == 0) {
+            flush(peer);
+        }
+    }
+
+    private static void offer(Peer peer, int senderSlot, FramePool.Frame frame) {
+        if (senderSlot >= peer.slots.length) {
+            peer.slots = Arrays.copyOf(peer.slots, Math.max(senderSlot + 1, peer.slots.length * 2));
+        }
+        Slot slot = peer.slots[senderSlot];
+        if (slot == null) {
+            slot = new Slot();
+            peer.slots[senderSlot] = slot;
+        }
+        if (slot.frame != null) {
+            slot.frame.release();
+            peer.framesDropped++;
+        }
+        slot.frame = frame.retain();
+        if (!slot.queued) {
+            slot.queued = true;
+            if (peer.tail == null) {
+                peer.head = slot;
+            } else {
+                peer.tail.next = slot;
+            }
+            peer.tail = slot;
+        }
+    }
+
+    /**
+     * Oldest waiting sender's frame; it goes to the back once it sends again
+     */
+    private static FramePool.Frame nextFrame(Peer peer) {
+        while (peer.head != null) {
+            Slot slot = peer.head;
+            peer.head = slot.next;
+            if (peer.head == null) {
+                peer.tail = null;
+            }
+            slot.next = null;
+            slot.queued = false;
+            if (slot.frame != null) {
+                FramePool.Frame frame = slot.frame;
+                slot.frame = null;
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write as much as the socket takes without blocking; the rest waits for OP_WRITE
+     */
+    private void flush(Peer peer) {
+        try {
+            while (true) {
+                fillBatch(peer);
+                if (peer.outCount == 0) {
+                    setWriteInterest(peer, false);
+                    return;
+                }
+
+                // Buffers are shared by all receivers: restore this peer's positions
+                for (int i = 0; i < peer.outCount; i++) {
+                    peer.outBuffers[i].position(peer.outPositions[i]);
+                }
+                peer.channel.write(peer.outBuffers, 0, peer.outCount);
+
+                int done = 0;
+                while (done < peer.outCount && !peer.outBuffers[done].hasRemaining()) {
+                    if (peer.out[done].sender != SYSTEM_SENDER) {
+                        peer.framesSent++;
+                    }
+                    peer.out[done].release();
+                    done++;
+                }
+                int left = peer.outCount - done;
+                for (int i = 0; i < left; i++) {
+                    peer.out[i] = peer.out[done + i];
+                    peer.outBuffers[i] = peer.outBuffers[done + i];
+                    peer.outPositions[i] = peer.outBuffers[i].position();
+                }
+                for (int i = left; i < peer.outCount; i++) {
+                    peer.out[i] = null;
+                    peer.outBuffers[i] = null;
+                }
+                peer.outCount = left;
+                if (left > 0) {
+                    setWriteInterest(peer, true);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            disconnect(peer);
+        }
+    }
+
+    private static void fillBatch(Peer peer) {
+        while (peer.outCount < MAX_BATCH) {
+            FramePool.Frame frame = peer.control.poll();
+            if (frame == null) {
+                frame = nextFrame(peer);
+            }
+            if (frame == null) {
+                return;
+            }
+            peer.out[peer.outCount] = frame;
+            peer.outBuffers[peer.outCount] = frame.buffer;
+            peer.outPositions[peer.outCount] = 0;
+            peer.outCount++;
+        }
+    }
+
+    private static void setWriteInterest(Peer peer, boolean write) {
+        if (peer.key.isValid()) {
+            peer.key.interestOps(write ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Tell the members of a room how many they are (video protocol only)
+     */
+    private void broadcastParticipantCount(List<Peer> room) {
+        if (protocol != Protocol.VIDEO || room.isEmpty()) {
+            return;
+        }
+        FramePool.Frame record = pool.acquire(12);
+        record.buffer.putInt(0, SYSTEM_SENDER).putInt(4, 4).putInt(8, room.size());
+        for (int i = 0; i < room.size(); i++) {
+            Peer peer = room.get(i);
+            if (peer.key.isValid()) {
+                peer.control.add(record.retain());
+                flush(peer);
+            }
+        }
+        record.release();
+    }
+
+    private void enterRoom(Peer peer, String roomName) {
+        peer.roomName = roomName;
+        if (roomName == null) {
+            // Parked: a room of its own, so its frames reach no one and nothing reaches it
+            peer.room = new ArrayList<>(1);
+            peer.room.add(peer);
+            return;
+        }
+        peer.room = rooms.computeIfAbsent(roomName, k -> new ArrayList<>());
+        if (mixing) {
+            if (peer.room.isEmpty()) {
+                mixers.add(new RoomMixer(pool, MIX_SENDER));
+            }
+            peer.mixer = peer.room.isEmpty() ? mixers.get(mixers.size() - 1) : peer.room.get(0).mixer;
+            peer.mixer.addMember(peer.slot, peer.codec);
+        }
+        peer.room.add(peer);
+        if (!roomName.equals(LOBBY)) {
+            System.out.println(name + " client " + peer.username + " (ID: " + peer.id + ") in room " + roomName);
+        }
+        broadcastParticipantCount(peer.room);
+    }
+
+    /**
+     * Take a peer out of its room, with the frames still waiting between it and the others
+     */
+    private void exitRoom(Peer peer) {
+        List<Peer> room = peer.room;
+        room.remove(peer);
+        for (int i = 0; i < room.size(); i++) {
+            Slot[] slots = room.get(i).slots;
+            if (peer.slot < slots.length && slots[peer.slot] != null && slots[peer.slot].frame != null) {
+                slots[peer.slot].frame.release();
+                slots[peer.slot].frame = null;
+            }
+        }
+        releaseSlots(peer);
+        if (peer.mixer != null) {
+            peer.mixer.removeMember(peer.slot);
+            if (peer.mixer.isEmpty()) {
+                mixers.remove(peer.mixer);
+            }
+            peer.mixer = null;
+        }
+        peer.room = null;
+        if (peer.roomName == null) {
+            return;
+        }
+        if (room.isEmpty()) {
+            rooms.remove(peer.roomName);
+        } else {
+            broadcastParticipantCount(room);
+        }
+    }
+
+    private static void releaseSlots(Peer peer) {
+        for (Slot slot : peer.slots) {
+            if (slot != null && slot.frame != null) {
+                slot.frame.release();
+                slot.frame = null;
+            }
+        }
+    }
+
+    private void moveToRoom(Peer peer, String roomName) {
+        if (peer.room != null && !Objects.equals(roomName, peer.roomName)) {
+            exitRoom(peer);
+            enterRoom(peer, roomName);
+        }
+    }
+
+    private void applyRoomMoves() {
+        String username;
+        while ((username = movedUsers.poll()) != null) {
+            String roomName = userRooms.get(username);
+            for (Peer peer : peers.values()) {
+                if (peer.verified && username.equals(peer.username)) {
+                    moveToRoom(peer, roomName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Close a connection; the rest of the cleanup waits for removeClosed()
+     * so that peers and rooms are never changed while being iterated
+     */
+    private void disconnect(Peer peer) {
+        if (peer.key.isValid()) {
+            closeQuietly(peer);
+            closed.add(peer);
+        }
+    }
+
+    private void removeClosed() {
+        // Announcing the new count can close more peers, hence the loop
+        for (int i = 0; i < closed.size(); i++) {
+            Peer peer = closed.get(i);
+            peers.remove(peer.id);
+            if (peer.room != null) {
+                connectedCount--;
+                exitRoom(peer);
+                System.out.println(name + " client disconnected: " + peer.username + " (ID: " + peer.id + "), " +
+                    peer.framesSent + " frames sent, " + peer.framesDropped + " dropped");
+            }
+            releaseSlots(peer);
+            if (peer.udpFrames != null) {
+                peer.udpFrames.reset();
+            }
+            if (peer.reading != null) {
+                peer.reading.release();
+                peer.reading = null;
+            }
+            FramePool.Frame frame;
+            while ((frame = peer.control.poll()) != null) {
+                frame.release();
+            }
+            for (int j = 0; j < peer.outCount; j++) {
+                peer.out[j].release();
+                peer.out[j] = null;
+            }
+            peer.outCount = 0;
+            usedSlots.clear(peer.slot);
+            if (bySlot[peer.slot] == peer) {
+                bySlot[peer.slot] = null;
+            }
+        }
+        closed.clear();
+    }
+
+    private static void closeQuietly(Peer peer) {
+        peer.key.cancel();
+        try {
+            peer.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void startStats() {
+        lastStatsAt = System.currentTimeMillis();
+        lastCpuNanos = cpuNanos();
+        lastAllocatedBytes = allocatedBytes();
+        long[] gc = gcTotals();
+        lastGcCount = gc[0];
+        lastGcMillis = gc[1];
+    }
+
+    private void logStats() {
+        long now = System.currentTimeMillis();
+        double seconds = (now - lastStatsAt) / 1000.0;
+        for (Peer peer : peers.values()) {
+            if (peer.room == null) {
+                continue;
+            }
+            long sent = peer.framesSent - peer.statsSent;
+            long dropped = peer.framesDropped - peer.statsDropped;
+            peer.statsSent = peer.framesSent;
+            peer.statsDropped = peer.framesDropped;
+            System.out.println(String.format("%s stats: %s (ID: %d) %.1f fps sent, %.1f fps dropped",
+                name, peer.username, peer.id, sent / seconds, dropped / seconds));
+        }
+
+        if (transcoder != null) {
+            System.out.println(name + " codecs: " + transcoder.getTranscoded() + " frames transcoded");
+        }
+        for (int i = 0; i < mixers.size(); i++) {
+            RoomMixer mixer = mixers.get(i);
+            System.out.println(String.format("%s mixer: %d members, %d ticks, %d restarts, " +
+                    "%d frames dropped (queue full), %d missing", name, mixer.getMemberCount(), mixer.getTicks(),
+                mixer.getLateTicks(), mixer.getFramesDropped(), mixer.getFramesMissing()));
+        }
+
+        long cpu = cpuNanos();
+        long allocated = allocatedBytes();
+        long[] gc = gcTotals();
+        System.out.println(String.format("%s relay: CPU %.1f ms/s, %.1f KB/s allocated on the relay thread, " +
+                "GC %d ms in %d collections, pool %d buffers created / %d reused, %d KB free",
+            name, (cpu - lastCpuNanos) / 1e6 / seconds, (allocated - lastAllocatedBytes) / 1024.0 / seconds,
+            gc[1] - lastGcMillis, gc[0] - lastGcCount, pool.getCreated(), pool.getReused(), pool.getFreeBytes() / 1024));
+        lastStatsAt = now;
+        lastCpuNanos = cpu;
+        lastAllocatedBytes = allocated;
+        lastGcCount = gc[0];
+        lastGcMillis = gc[1];
+    }
+
+    /**
+     * CPU time of the relay thread so far, -1 if the JVM cannot tell
+     */
+    private static long cpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Bytes allocated by the relay thread so far, -1 if the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * JVM-wide collection count and time
+     */
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] {count, millis};
+    }
+}
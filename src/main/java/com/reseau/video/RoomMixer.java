@@ -0,0 +1,274 @@
+package com.reseau.video;
+
+import java.util.Arrays;
+
+import com.reseau.common.AudioCodec;
+
+/**
+ * RoomMixer - Server-side audio mix of one call room (MCU mode)
+ * Every FRAME_MS the room's clock takes one frame from each member that
+ * sent one, sums them into an int accumulator and sends each member the
+ * sum minus its own voice, so a client gets one stream however large the
+ * call. Members that were silent this tick all get the same mix, built
+ * once and shared. Sums go through a soft limiter instead of clipping.
+ *
+ * Frames are 20 ms of 16 kHz mono audio, what the clients capture, in each
+ * member's negotiated codec. Each member keeps up to MAX_DEPTH decoded frames to
+ * absorb jitter between its clock and the room's; beyond that the oldest
+ * is dropped. Members whose mic is off or who are between talk-spurts send
+ * nothing, or a comfort noise marker, which is ignored: they count as
+ * silent. After setup nothing is allocated: samples live in int
+ * arrays and mixes in pooled frames.
+ * Not thread-safe: used from the relay's selector thread.
+ */
+final class RoomMixer {
+    static final int SAMPLE_RATE = 16000;
+    static final int FRAME_MS = 20;
+    static final int SAMPLES = SAMPLE_RATE * FRAME_MS / 1000;
+    static final long FRAME_NANOS = FRAME_MS * 1_000_000L;
+
+    private static final int MAX_DEPTH = 4;
+    private static final int MAX_LATE_TICKS = 5;
+
+
+    // Soft limiter: linear up to the knee, then compressed towards full scale
+    private static final int KNEE = 24576;
+    private static final int HEADROOM = Short.MAX_VALUE - KNEE;
+
+    /**
+     * Receives each member's mix for the tick; retain the frame to keep it
+     */
+    interface Output {
+        void send(int member, FramePool.Frame mix);
+    }
+
+    private static final class Member {
+        AudioCodec codec;
+        final int[][] ring = new int[MAX_DEPTH][SAMPLES];
+        int head;
+        int size;
+        int[] current; // this tick's frame, null if the member was silent
+    }
+
+    private final FramePool pool;
+    private final int mixSender;
+    private final int[] total = new int[SAMPLES];
+    private final int[] mixed = new int[SAMPLES];
+    // The tick's mix for silent members, once per codec
+    private AudioCodec[] sharedCodecs = new AudioCodec[4];
+    private FramePool.Frame[] sharedFrames = new FramePool.Frame[4];
+    private int sharedCount;
+    private Member[] members = new Member[8]; // by relay slot
+    private int[] memberSlots = new int[8];
+    private int memberCount;
+    private long nextTick;
+
+    private long ticks;
+    private long lateTicks;
+    private long framesDropped;
+    private long framesMissing;
+
+    /**
+     * @param mixSender sender id marked on mixed frames
+     */
+    RoomMixer(FramePool pool, int mixSender) {
+        this.pool = pool;
+        this.mixSender = mixSender;
+        this.nextTick = System.nanoTime() + FRAME_NANOS;
+    }
+
+    void addMember(int slot, AudioCodec codec) {
+        if (slot >= members.length) {
+            members = Arrays.copyOf(members, Math.max(slot + 1, members.length * 2));
+        }
+        if (members[slot] != null) {
+            return;
+        }
+        members[slot] = new Member();
+        members[slot].codec = codec;
+        if (memberCount == memberSlots.length) {
+            memberSlots = Arrays.copyOf(memberSlots, memberCount * 2);
+        }
+        memberSlots[memberCount++] = slot;
+    }
+
+    void removeMember(int slot) {
+        if (slot >= members.length || members[slot] == null) {
+            return;
+        }
+        members[slot] = null;
+        for (int i = 0; i < memberCount; i++) {
+            if (memberSlots[i] == slot) {
+                memberSlots[i] = memberSlots[--memberCount];
+                break;
+            }
+        }
+    }
+
+    /**
+     * The codec a member's frames come and go in, after negotiation
+     */
+    void setCodec(int slot, AudioCodec codec) {
+        if (slot < members.length && members[slot] != null) {
+            members[slot].codec = codec;
+            members[slot].size = 0;
+        }
+    }
+
+    boolean isEmpty() {
+        return memberCount == 0;
+    }
+
+    /**
+     * Queue a member's frame ([id][len][audio] record) for the next ticks
+     */
+    void add(int slot, FramePool.Frame frame) {
+        Member member = slot < members.length ? members[slot] : null;
+        int length = frame.buffer.limit() - MediaRelay.RECORD_HEADER;
+        if (member == null || member.codec.decodedSamples(length) != SAMPLES) {
+            return;
+        }
+        if (member.size == MAX_DEPTH) {
+            member.head = (member.head + 1) % MAX_DEPTH;
+            member.size--;
+            framesDropped++;
+        }
+        int[] samples = member.ring[(member.head + member.size) % MAX_DEPTH];
+        member.size++;
+        member.codec.decode(frame.buffer, MediaRelay.RECORD_HEADER, length, samples);
+    }
+
+    /**
+     * Nanos until the next tick is due (0 or less: due now)
+     */
+    long nanosUntilTick(long now) {
+        return nextTick - now;
+    }
+
+    /**
+     * Mix and send one frame if the room's clock is due
+     */
+    void tickIfDue(long now, Output output) {
+        if (now - nextTick < 0) {
+            return;
+        }
+        if (now - nextTick > MAX_LATE_TICKS * FRAME_NANOS) {
+            // The relay stalled: restart the clock rather than sending a burst
+            lateTicks++;
+            nextTick = now;
+        }
+        int sequence = (int) (nextTick / FRAME_NANOS);
+        nextTick += FRAME_NANOS;
+        ticks++;
+
+        Arrays.fill(total, 0);
+        int activeCount = 0;
+        for (int m = 0; m < memberCount; m++) {
+            Member member = members[memberSlots[m]];
+            if (member.size == 0) {
+                member.current = null;
+                framesMissing++;
+                continue;
+            }
+            int[] samples = member.ring[member.head];
+            member.head = (member.head + 1) % MAX_DEPTH;
+            member.size--;
+            member.current = samples;
+            activeCount++;
+            for (int i = 0; i < SAMPLES; i++) {
+                total[i] += samples[i];
+            }
+        }
+        if (activeCount == 0) {
+            return;
+        }
+
+        for (int m = 0; m < memberCount; m++) {
+            int slot = memberSlots[m];
+            Member member = members[slot];
+            if (member.current == null) {
+                output.send(slot, sharedMix(member.codec, sequence));
+            } else if (activeCount > 1) {
+                FramePool.Frame mix = encode(member.current, member.codec, sequence);
+                output.send(slot, mix);
+                mix.release();
+            }
+        }
+        for (int s = 0; s < sharedCount; s++) {
+            sharedFrames[s].release();
+            sharedFrames[s] = null;
+            sharedCodecs[s] = null;
+        }
+        sharedCount = 0;
+    }
+
+    /**
+     * The tick's whole mix in that codec, encoded once for all silent members
+     */
+    private FramePool.Frame sharedMix(AudioCodec codec, int sequence) {
+        for (int s = 0; s < sharedCount; s++) {
+            if (sharedCodecs[s] == codec) {
+                return sharedFrames[s];
+            }
+        }
+        if (sharedCount == sharedCodecs.length) {
+            sharedCodecs = Arrays.copyOf(sharedCodecs, sharedCount * 2);
+            sharedFrames = Arrays.copyOf(sharedFrames, sharedCount * 2);
+        }
+        sharedCodecs[sharedCount] = codec;
+        sharedFrames[sharedCount] = encode(null, codec, sequence);
+        return sharedFrames[sharedCount++];
+    }
+
+    /**
+     * The tick's total minus one member's own frame, as a pooled [id][len][audio] record
+     */
+    private FramePool.Frame encode(int[] own, AudioCodec codec, int sequence) {
+        for (int i = 0; i < SAMPLES; i++) {
+            mixed[i] = limit(own != null ? total[i] - own[i] : total[i]);
+        }
+        int length = codec.encodedLength(SAMPLES);
+        FramePool.Frame frame = pool.acquire(MediaRelay.RECORD_HEADER + length);
+        frame.sender = mixSender;
+        frame.sequence = sequence;
+        frame.timestamp = (int) System.currentTimeMillis();
+        frame.buffer.putInt(0, MediaRelay.SYSTEM_SENDER).putInt(4, length);
+        codec.encode(mixed, SAMPLES, frame.buffer, MediaRelay.RECORD_HEADER);
+        return frame;
+    }
+
+    /**
+     * Pass samples below the knee, bend louder ones smoothly towards full scale
+     */
+    static int limit(int sample) {
+        if (sample > KNEE) {
+            long excess = sample - KNEE;
+            return KNEE + (int) (excess * HEADROOM / (excess + HEADROOM));
+        }
+        if (sample < -KNEE) {
+            long excess = -KNEE - (long) sample;
+            return -KNEE - (int) (excess * HEADROOM / (excess + HEADROOM));
+        }
+        return sample;
+    }
+
+    int getMemberCount() {
+        return memberCount;
+    }
+
+    long getTicks() {
+        return ticks;
+    }
+
+    long getLateTicks() {
+        return lateTicks;
+    }
+
+    long getFramesDropped() {
+        return framesDropped;
+    }
+
+    long getFramesMissing() {
+        return framesMissing;
+    }
+}
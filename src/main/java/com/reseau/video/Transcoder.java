@@ -0,0 +1,79 @@
+package com.reseau.video;
+
+import com.reseau.common.AudioCodec;
+
+/**
+ * Transcoder - Re-encodes one audio frame for receivers using other codecs
+ * The frame is decoded once, and encoded once per codec asked for; the
+ * copies are shared by all receivers of that codec until reset().
+ * Not thread-safe: used from the relay's selector thread.
+ */
+final class Transcoder {
+    private static final int MAX_SAMPLES = 16000; // 1 s at 16 kHz
+    private static final int MAX_CODECS = 4;
+
+    private final FramePool pool;
+    private final int[] samples = new int[MAX_SAMPLES];
+    private final AudioCodec[] codecs = new AudioCodec[MAX_CODECS];
+    private final FramePool.Frame[] frames = new FramePool.Frame[MAX_CODECS];
+    private int count;
+    private int decodedSamples; // 0 until the current frame is decoded
+
+    private long transcoded;
+
+    Transcoder(FramePool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * The frame in the target codec, null if it cannot be transcoded; valid until reset()
+     */
+    FramePool.Frame get(FramePool.Frame frame, AudioCodec from, AudioCodec to) {
+        for (int i = 0; i < count; i++) {
+            if (codecs[i] == to) {
+                return frames[i];
+            }
+        }
+        if (count == MAX_CODECS) {
+            return null;
+        }
+        if (decodedSamples == 0) {
+            int length = frame.buffer.limit() - MediaRelay.RECORD_HEADER;
+            int n = from.decodedSamples(length);
+            if (n <= 0 || n > MAX_SAMPLES) {
+                return null;
+            }
+            from.decode(frame.buffer, MediaRelay.RECORD_HEADER, length, samples);
+            decodedSamples = n;
+        }
+
+        int encoded = to.encodedLength(decodedSamples);
+        FramePool.Frame copy = pool.acquire(MediaRelay.RECORD_HEADER + encoded);
+        copy.sender = frame.sender;
+        copy.sequence = frame.sequence;
+        copy.timestamp = frame.timestamp;
+        copy.buffer.putInt(0, frame.buffer.getInt(0)).putInt(4, encoded);
+        to.encode(samples, decodedSamples, copy.buffer, MediaRelay.RECORD_HEADER);
+        codecs[count] = to;
+        frames[count++] = copy;
+        transcoded++;
+        return copy;
+    }
+
+    /**
+     * Release the copies of the current frame
+     */
+    void reset() {
+        for (int i = 0; i < count; i++) {
+            frames[i].release();
+            frames[i] = null;
+            codecs[i] = null;
+        }
+        count = 0;
+        decodedSamples = 0;
+    }
+
+    long getTranscoded() {
+        return transcoded;
+    }
+}
@@ -0,0 +1,156 @@
+package com.reseau.video;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * VideoLoadTest - Load generator for the video relay
+ * For each call size, connects that many loopback clients that all send
+ * fixed-size frames at a steady rate and read everything they receive.
+ * Participant 0 is a slow receiver that reads only SLOW_RECORDS_PER_SECOND
+ * records: the others should still get every sender's full frame rate.
+ * Reports the per-sender fps seen by the normal receivers (min/avg/max)
+ * and what the slow one managed.
+ *
+ * Usage (after mvn compile):
+ *   java -cp target/classes com.reseau.video.VideoLoadTest [sizes] [frameBytes] [seconds] [host:port]
+ * Defaults: 4,16,64 participants, 2048-byte frames, 20 s each. Without
+ * host:port a VideoStreamServer is started in this JVM; pass one to load a
+ * server running elsewhere (clients send bare usernames and share the lobby).
+ */
+public class VideoLoadTest {
+    private static final int FPS = 30;
+    private static final int SLOW_RECORDS_PER_SECOND = 100;
+    private static final long WARMUP_MS = 2000;
+    private static final int LOCAL_PORT = 15000;
+
+    public static void main(String[] args) throws Exception {
+        String sizes = args.length > 0 ? args[0] : "4,16,64";
+        int frameBytes = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        String host = "localhost";
+        int port = LOCAL_PORT;
+        VideoStreamServer server = null;
+        if (args.length > 3) {
+            host = args[3].substring(0, args[3].lastIndexOf(':'));
+            port = Integer.parseInt(args[3].substring(args[3].lastIndexOf(':') + 1));
+        } else {
+            server = new VideoStreamServer(port);
+            server.startAsync();
+            Thread.sleep(500);
+        }
+
+        for (String size : sizes.split(",")) {
+            run(host, port, Integer.parseInt(size.trim()), frameBytes, seconds);
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private static void run(String host, int port, int participants, int frameBytes, int seconds)
+            throws IOException, InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLongArray received = new AtomicLongArray(participants);
+        List<Socket> sockets = new ArrayList<>();
+        for (int i = 0; i < participants; i++) {
+            Socket socket = new Socket(host, port);
+            sockets.add(socket);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            byte[] name = ("load" + i).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            out.flush();
+            in.readInt(); // our id
+
+            int index = i;
+            startDaemon("load-reader-" + i, () -> read(in, received, index, index == 0, stop));
+            startDaemon("load-writer-" + i, () -> write(out, frameBytes, stop));
+        }
+
+        Thread.sleep(WARMUP_MS);
+        long[] start = new long[participants];
+        for (int i = 0; i < participants; i++) {
+            start[i] = received.get(i);
+        }
+        long startNanos = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        double sum = 0;
+        for (int i = 1; i < participants; i++) {
+            double fps = (received.get(i) - start[i]) / elapsed / (participants - 1);
+            min = Math.min(min, fps);
+            max = Math.max(max, fps);
+            sum += fps;
+        }
+        System.out.printf("%d participants, %d-byte frames at %d fps: per-sender fps at normal receivers "
+                + "min %.1f avg %.1f max %.1f; slow receiver %.1f records/s%n",
+            participants, frameBytes, FPS, min, sum / (participants - 1), max,
+            (received.get(0) - start[0]) / elapsed);
+
+        stop.set(true);
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        Thread.sleep(1000);
+    }
+
+    private static void read(DataInputStream in, AtomicLongArray received, int index, boolean slow,
+                             AtomicBoolean stop) {
+        try {
+            byte[] buffer = new byte[1 << 20];
+            while (!stop.get()) {
+                int sender = in.readInt();
+                int length = in.readInt();
+                if (length > buffer.length) {
+                    buffer = new byte[length];
+                }
+                in.readFully(buffer, 0, length);
+                if (sender != 0) {
+                    received.incrementAndGet(index);
+                }
+                if (slow) {
+                    Thread.sleep(1000 / SLOW_RECORDS_PER_SECOND);
+                }
+            }
+        } catch (IOException | InterruptedException ignored) {
+        }
+    }
+
+    private static void write(DataOutputStream out, int frameBytes, AtomicBoolean stop) {
+        try {
+            byte[] frame = new byte[frameBytes];
+            long next = System.nanoTime();
+            while (!stop.get()) {
+                out.writeInt(frame.length);
+                out.write(frame);
+                out.flush();
+                next += 1_000_000_000L / FPS;
+                long delay = next - System.nanoTime();
+                if (delay > 0) {
+                    Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+                }
+            }
+        } catch (IOException | InterruptedException ignored) {
+        }
+    }
+
+    private static void startDaemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
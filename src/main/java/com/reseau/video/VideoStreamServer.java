@@ -1,40 +1,45 @@
 package com.reseau.video;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedInputStream;
-import java.io.DataOutputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import org.opencv.core.Core;
 
 /**
  * VideoStreamServer - Handles video streaming for NEXO video calls
- * Receives video frames from clients and broadcasts to all other clients in the same room
+ * Receives video frames from clients and forwards them to the other members
+ * of their call room; the relaying itself is done by MediaRelay.
+ *
+ * Protocol: the client sends "TOKEN <sessionToken>" (or a bare username),
+ * gets its id, then sends [length][jpeg] frames and receives
+ * [senderId][length][jpeg] records. Sender 0 carries the participant count.
+ * Token clients may move their frames to UDP on the same port (MediaPacket).
  */
 public class VideoStreamServer {
 
     public static final int DEFAULT_PORT = 5000;
 
-    private final int port;
-    private volatile boolean running;
-    private ServerSocket serverSocket;
-    private final ExecutorService clientPool;
+    private static final int MAX_FRAME = 50_000_000;
 
-    private final Map<Integer, DataOutputStream> clientOutputs = new ConcurrentHashMap<>();
-    private final Map<Integer, String> clientUsernames = new ConcurrentHashMap<>();
-    private final AtomicInteger nextClientId = new AtomicInteger(1);
+    private final int port;
+    private final MediaRelay relay;
 
     public VideoStreamServer(int port) {
         this.port = port;
-        this.clientPool = Executors.newCachedThreadPool();
+        this.relay = new MediaRelay("Video", port, MAX_FRAME, MediaRelay.Protocol.VIDEO);
+    }
+
+    /**
+     * Accept "TOKEN <sessionToken>" handshakes checked by this verifier
+     */
+    public void setTokenVerifier(Function<String, String> tokenVerifier) {
+        relay.setTokenVerifier(tokenVerifier);
+    }
+
+    /**
+     * Called by the chat server when a user joins a call room (room null: left it)
+     */
+    public void setUserRoom(String username, String room) {
+        relay.setUserRoom(username, room);
     }
 
     public void startAsync() {
@@ -45,120 +50,13 @@ public class VideoStreamServer {
     }
 
     public void stop() {
-        running = false;
-        try {
-            if (serverSocket != null) {
-                serverSocket.close();
-            }
-        } catch (IOException ignored) {
-        }
-        clientPool.shutdownNow();
+        relay.stop();
         System.out.println("Video Stream Server stopped");
     }
 
     private void runServer() {
-        running = true;
         loadOpenCvNative();
-
-        try (ServerSocket ss = new ServerSocket(port)) {
-            this.serverSocket = ss;
-            System.out.println("Video server listening on port " + port);
-            
-            while (running) {
-                Socket socket = ss.accept();
-                System.out.println("New video client connected: " + socket.getInetAddress());
-                clientPool.submit(() -> handleClient(socket));
-            }
-        } catch (IOException e) {
-            if (running) {
-                System.err.println("Video server error: " + e.getMessage());
-            }
-        }
-    }
-
-    private void handleClient(Socket socket) {
-        final int clientId = nextClientId.getAndIncrement();
-
-        try (Socket s = socket;
-             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
-             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
-
-            // Read username from client
-            int usernameLen = in.readInt();
-            byte[] usernameBytes = new byte[usernameLen];
-            in.readFully(usernameBytes);
-            String username = new String(usernameBytes, "UTF-8");
-            
-            clientOutputs.put(clientId, out);
-            clientUsernames.put(clientId, username);
-            
-            // Send client ID back
-            out.writeInt(clientId);
-            out.flush();
-            
-            System.out.println("Video client registered: " + username + " (ID: " + clientId + ")");
-            broadcastClientCount();
-
-            while (running && !s.isClosed()) {
-                int len;
-                try {
-                    len = in.readInt();
-                } catch (IOException e) {
-                    break;
-                }
-
-                if (len <= 0 || len > 50_000_000) {
-                    break;
-                }
-
-                byte[] bytes = new byte[len];
-                in.readFully(bytes);
-
-                broadcastFrame(clientId, bytes);
-            }
-        } catch (IOException ignored) {
-        } finally {
-            String username = clientUsernames.remove(clientId);
-            clientOutputs.remove(clientId);
-            System.out.println("Video client disconnected: " + username + " (ID: " + clientId + ")");
-            broadcastClientCount();
-        }
-    }
-
-    private void broadcastClientCount() {
-        int count = clientOutputs.size();
-        for (DataOutputStream out : clientOutputs.values()) {
-            synchronized (out) {
-                try {
-                    out.writeInt(0); // senderId 0 = system message
-                    out.writeInt(4);
-                    out.writeInt(count);
-                    out.flush();
-                } catch (IOException e) {
-                    // ignore
-                }
-            }
-        }
-    }
-
-    private void broadcastFrame(int senderId, byte[] bytes) {
-        for (Map.Entry<Integer, DataOutputStream> entry : clientOutputs.entrySet()) {
-            if (entry.getKey() == senderId) {
-                continue;
-            }
-
-            DataOutputStream out = entry.getValue();
-            synchronized (out) {
-                try {
-                    out.writeInt(senderId);
-                    out.writeInt(bytes.length);
-                    out.write(bytes);
-                    out.flush();
-                } catch (IOException e) {
-                    // ignore; client cleanup happens on its own read/write failure
-                }
-            }
-        }
+        relay.run();
     }
 
     private void loadOpenCvNative() {
@@ -172,12 +70,12 @@ public class VideoStreamServer {
             }
         }
     }
-    
+
     public int getConnectedClientsCount() {
-        return clientOutputs.size();
+        return relay.getConnectedCount();
     }
-    
+
     public boolean isRunning() {
-        return running;
+        return relay.isRunning();
     }
 }